@@ -0,0 +1,185 @@
+package com.infocam.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.infocam.mapa.DatosMapa;
+import com.infocam.model.Camara;
+import com.infocam.model.Incidencia;
+import com.infocam.network.AdaptadoresJson;
+import com.infocam.network.InfocamRemoteApi;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+
+/* Recorre el camino de la caché del mapa como lo hace MapaFragment, con un MockWebServer en lugar del servidor: se carga la copia de
+ * SQLite en DatosMapa, se deja caducar (con una vigencia corta), se revalida en un hilo aparte y se guarda solo lo que ha cambiado,
+ * renovando los momentos de la tabla "frescura".
+ * Usa la BBDD real de la aplicación y vacía la copia del mapa al empezar y al terminar (como al cerrar sesión).
+ * Se ejecuta en un dispositivo o emulador con ./gradlew connectedAndroidTest. */
+@RunWith(AndroidJUnit4.class)
+public class CacheMapaTest {
+    private static final long VIGENCIA_PRUEBA_MS = 300;
+
+    private MockWebServer servidor;
+    private InfocamRemoteApi api;
+    private DataRepository repositorio;
+    private ExecutorService hiloBaseDatos;
+    private volatile String camarasServidor = "[]";
+    private volatile String incidenciasServidor = "[]";
+
+    @Before
+    public void preparar() throws IOException {
+        Context contexto = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        repositorio = new DataRepository(contexto);
+        repositorio.vaciarCacheMapa();
+        hiloBaseDatos = Executors.newSingleThreadExecutor();
+
+        servidor = new MockWebServer();
+        servidor.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest peticion) {
+                String ruta = peticion.getPath();
+                if (ruta.startsWith("/api/camaras/activas"))
+                    return new MockResponse().setBody(camarasServidor);
+                if (ruta.startsWith("/api/incidencias/activas"))
+                    return new MockResponse().setBody(incidenciasServidor);
+                return new MockResponse().setResponseCode(404);
+            }
+        });
+        servidor.start();
+        api = new Retrofit.Builder()
+                .baseUrl(servidor.url("/api/"))
+                .addConverterFactory(GsonConverterFactory.create(AdaptadoresJson.obtenerGson()))
+                .build()
+                .create(InfocamRemoteApi.class);
+    }
+
+    @After
+    public void terminar() throws IOException {
+        hiloBaseDatos.shutdownNow();
+        servidor.shutdown();
+        repositorio.vaciarCacheMapa();
+    }
+
+    @Test
+    public void cargaLaCopiaYRevalidaSoloLosCambios() throws Exception {
+        repositorio.guardarCamaras(Arrays.asList(camara(1, "M-30"), camara(2, "A-6"), camara(3, "A-1")));
+        repositorio.guardarIncidencias(Arrays.asList(incidencia(10, "Obras"), incidencia(11, "Accidente")));
+        long frescuraCamaras = repositorio.obtenerMomentoDescarga(DatabaseHelper.TABLA_CAMARAS);
+        long frescuraIncidencias = repositorio.obtenerMomentoDescarga(DatabaseHelper.TABLA_INCIDENCIAS);
+        assertTrue(frescuraCamaras > 0 && frescuraIncidencias > 0);
+
+        // Al abrir el mapa: se pinta la copia y, mientras no caduque, no se pide nada
+        DatosMapa datos = new DatosMapa(VIGENCIA_PRUEBA_MS);
+        datos.cargarDesdeCache(repositorio.obtenerCamarasGuardadas(), frescuraCamaras,
+                repositorio.obtenerIncidenciasGuardadas(), frescuraIncidencias);
+        assertEquals(3, datos.getCamaras().getElementos().size());
+        assertEquals(2, datos.getIncidencias().getElementos().size());
+        assertFalse(datos.estaCaducado());
+        SystemClock.sleep(VIGENCIA_PRUEBA_MS + 50);
+        assertTrue(datos.estaCaducado());
+
+        // El servidor ha cambiado el nombre de la 2, ha quitado la 3 y ha añadido la 4; y ha cerrado la incidencia 11 y abierto la 12
+        camarasServidor = "[" + json(camara(1, "M-30")) + "," + json(camara(2, "A-6 (km 12)")) + "," + json(camara(4, "M-40")) + "]";
+        incidenciasServidor = "[" + json(incidencia(10, "Obras")) + "," + json(incidencia(12, "Retención")) + "]";
+        int[] cambios = revalidar(datos);
+
+        assertEquals(2, servidor.getRequestCount());
+        assertEquals(3, cambios[0]); // La 2 actualizada, la 4 nueva y la 3 borrada; la 1 no se toca
+        assertEquals(2, cambios[1]); // La 12 nueva y la 11 borrada
+        assertFalse(datos.estaCaducado());
+        assertEquals(3, datos.getCamaras().getElementos().size());
+
+        List<Camara> guardadas = repositorio.obtenerCamarasGuardadas();
+        List<Integer> ids = new ArrayList<>();
+        for (Camara c : guardadas) {
+            ids.add(c.getId());
+            if (c.getId() == 2)
+                assertEquals("A-6 (km 12)", c.getNombre());
+        }
+        Collections.sort(ids);
+        assertEquals(Arrays.asList(1, 2, 4), ids);
+        List<Integer> idsIncidencias = new ArrayList<>();
+        for (Incidencia i : repositorio.obtenerIncidenciasGuardadas())
+            idsIncidencias.add(i.getId());
+        Collections.sort(idsIncidencias);
+        assertEquals(Arrays.asList(10, 12), idsIncidencias);
+
+        assertTrue(repositorio.obtenerMomentoDescarga(DatabaseHelper.TABLA_CAMARAS) > frescuraCamaras);
+        assertTrue(repositorio.obtenerMomentoDescarga(DatabaseHelper.TABLA_INCIDENCIAS) > frescuraIncidencias);
+    }
+
+    // Si el servidor devuelve lo mismo no se escribe ninguna fila, pero la copia cuenta como revisada: su momento se renueva.
+    @Test
+    public void sinCambiosSoloSeRenuevaLaFrescura() throws Exception {
+        List<Camara> camaras = Arrays.asList(camara(1, "M-30"), camara(2, "A-6"));
+        repositorio.guardarCamaras(camaras);
+        repositorio.guardarIncidencias(Collections.singletonList(incidencia(10, "Obras")));
+        long frescuraCamaras = repositorio.obtenerMomentoDescarga(DatabaseHelper.TABLA_CAMARAS);
+        long frescuraIncidencias = repositorio.obtenerMomentoDescarga(DatabaseHelper.TABLA_INCIDENCIAS);
+        SystemClock.sleep(10);
+
+        camarasServidor = "[" + json(camaras.get(0)) + "," + json(camaras.get(1)) + "]";
+        incidenciasServidor = "[" + json(incidencia(10, "Obras")) + "]";
+        int[] cambios = revalidar(new DatosMapa(VIGENCIA_PRUEBA_MS));
+
+        assertEquals(0, cambios[0]);
+        assertEquals(0, cambios[1]);
+        assertTrue(repositorio.obtenerMomentoDescarga(DatabaseHelper.TABLA_CAMARAS) > frescuraCamaras);
+        assertTrue(repositorio.obtenerMomentoDescarga(DatabaseHelper.TABLA_INCIDENCIAS) > frescuraIncidencias);
+    }
+
+    // Lo que hace sincronizarYDescargar(): pide las dos capas, las pasa a DatosMapa y las guarda en el hilo de la BBDD.
+    private int[] revalidar(DatosMapa datos) throws Exception {
+        return hiloBaseDatos.submit(() -> {
+            List<Camara> camaras = api.getCamarasActivas("Bearer prueba").execute().body();
+            List<Incidencia> incidencias = api.getIncidenciasActivas("Bearer prueba", "2025-01-27T10:15", null).execute().body();
+            assertNotNull(camaras);
+            assertNotNull(incidencias);
+            datos.setCamaras(camaras);
+            datos.setIncidencias(incidencias);
+            return new int[] { repositorio.guardarCamaras(camaras), repositorio.guardarIncidencias(incidencias) };
+        }).get();
+    }
+
+    private static Camara camara(int id, String nombre) {
+        return new Camara(id, nombre, 40.4 + id / 1000.0, -3.7, "https://example.org/" + id + ".jpg", true);
+    }
+
+    private static Incidencia incidencia(int id, String nombre) {
+        Incidencia i = new Incidencia(1, nombre, "Obras", "Obras", "2025-01-27T09:00:00+01:00", null, 40.4, -3.7 + id / 1000.0,
+                null);
+        i.setId(id);
+        return i;
+    }
+
+    private static String json(Object modelo) {
+        return AdaptadoresJson.obtenerGson().toJson(modelo);
+    }
+}
@@ -0,0 +1,145 @@
+package com.infocam.data;
+
+import static org.junit.Assert.assertEquals;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.infocam.model.Camara;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* Mide cuánto tarda en sincronizarse una lista de 1000 cámaras favoritas, antes y después de compartir una única conexión con WAL.
+ * "Antes" reproduce el código original sobre un fichero aparte: abrir y cerrar la BBDD en cada operación, sin WAL, borrando todos los
+ * favoritos del usuario e insertándolos uno a uno. "Después" es DataRepository.sincronizarConServidor() tal cual (conexión compartida
+ * con WAL y, además, la comparación dentro de una sola transacción), sobre la BBDD real y con un usuario que no existe (ID_PRUEBA),
+ * que se borra al terminar.
+ * Se ejecuta en un dispositivo o emulador con ./gradlew connectedAndroidTest y los tiempos (mediana de REPETICIONES) salen en el
+ * Logcat con la etiqueta TAG. */
+@RunWith(AndroidJUnit4.class)
+public class SincronizacionFavoritosMedicionTest {
+    private static final String TAG = "MedicionSincronizacion";
+    private static final int ID_PRUEBA = -1000;
+    private static final int FAVORITOS = 1000;
+    private static final int REPETICIONES = 5;
+
+    private Context contexto;
+    private DataRepository repositorio;
+    private File ficheroAntes;
+
+    @Before
+    public void preparar() {
+        contexto = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        repositorio = new DataRepository(contexto);
+        repositorio.vaciarFavoritosDeUsuario(ID_PRUEBA);
+        ficheroAntes = contexto.getDatabasePath("medicion-antes.db");
+        SQLiteDatabase.deleteDatabase(ficheroAntes);
+        ficheroAntes.getParentFile().mkdirs();
+        SQLiteDatabase bd = SQLiteDatabase.openOrCreateDatabase(ficheroAntes, null);
+        bd.execSQL("CREATE TABLE " + DatabaseHelper.TABLA_FAVORITOS + " (" + DatabaseHelper.COL_ID
+                + " INTEGER PRIMARY KEY AUTOINCREMENT, " + DatabaseHelper.COL_ID_USUARIO + " INTEGER, "
+                + DatabaseHelper.COL_NOMBRE + " TEXT, " + DatabaseHelper.COL_DIRECCION + " TEXT, " + DatabaseHelper.COL_LAT
+                + " REAL, " + DatabaseHelper.COL_LNG + " REAL, " + DatabaseHelper.COL_ID_CAMARA + " INTEGER, "
+                + DatabaseHelper.COL_IMAGEN + " TEXT)");
+        bd.close();
+    }
+
+    @After
+    public void limpiar() {
+        repositorio.vaciarFavoritosDeUsuario(ID_PRUEBA);
+        FavoritosEnMemoria.obtenerInstancia().vaciar();
+        SQLiteDatabase.deleteDatabase(ficheroAntes);
+    }
+
+    @Test
+    public void sincronizarMilFavoritos() {
+        List<Camara> iniciales = camaras(0);
+        List<Camara> conCambios = camaras(10); // Una de cada diez cambia de nombre
+
+        long[] antesPrimera = new long[REPETICIONES], antesIgual = new long[REPETICIONES], antesCambios = new long[REPETICIONES];
+        long[] despuesPrimera = new long[REPETICIONES], despuesIgual = new long[REPETICIONES],
+                despuesCambios = new long[REPETICIONES];
+
+        for (int r = 0; r < REPETICIONES; r++) {
+            vaciarAntes();
+            antesPrimera[r] = medir(() -> sincronizarComoAntes(iniciales));
+            antesIgual[r] = medir(() -> sincronizarComoAntes(iniciales));
+            antesCambios[r] = medir(() -> sincronizarComoAntes(conCambios));
+
+            repositorio.vaciarFavoritosDeUsuario(ID_PRUEBA);
+            despuesPrimera[r] = medir(() -> repositorio.sincronizarConServidor(ID_PRUEBA, iniciales));
+            despuesIgual[r] = medir(() -> repositorio.sincronizarConServidor(ID_PRUEBA, iniciales));
+            despuesCambios[r] = medir(() -> repositorio.sincronizarConServidor(ID_PRUEBA, conCambios));
+            assertEquals(FAVORITOS, repositorio.obtenerFavoritosPorUsuario(ID_PRUEBA).size());
+        }
+
+        informar("primera sincronización", antesPrimera, despuesPrimera);
+        informar("sin cambios", antesIgual, despuesIgual);
+        informar("10% cambiados", antesCambios, despuesCambios);
+    }
+
+    // El sincronizarConServidor() original: vaciar y volver a insertar, abriendo y cerrando la BBDD en cada sentencia.
+    private void sincronizarComoAntes(List<Camara> camaras) {
+        vaciarAntes();
+        for (Camara c : camaras) {
+            SQLiteDatabase bd = SQLiteDatabase.openOrCreateDatabase(ficheroAntes, null);
+            ContentValues valores = new ContentValues();
+            valores.put(DatabaseHelper.COL_ID_USUARIO, ID_PRUEBA);
+            valores.put(DatabaseHelper.COL_NOMBRE, c.getNombre());
+            valores.put(DatabaseHelper.COL_DIRECCION, "Vía pública");
+            valores.put(DatabaseHelper.COL_LAT, c.getLatitud());
+            valores.put(DatabaseHelper.COL_LNG, c.getLongitud());
+            valores.put(DatabaseHelper.COL_ID_CAMARA, c.getId());
+            valores.put(DatabaseHelper.COL_IMAGEN, c.getImagen());
+            bd.insert(DatabaseHelper.TABLA_FAVORITOS, null, valores);
+            bd.close();
+        }
+    }
+
+    private void vaciarAntes() {
+        SQLiteDatabase bd = SQLiteDatabase.openOrCreateDatabase(ficheroAntes, null);
+        bd.delete(DatabaseHelper.TABLA_FAVORITOS, DatabaseHelper.COL_ID_USUARIO + " = ?",
+                new String[] { String.valueOf(ID_PRUEBA) });
+        bd.close();
+    }
+
+    private static List<Camara> camaras(int cadaCuantasCambia) {
+        List<Camara> lista = new ArrayList<>(FAVORITOS);
+        for (int i = 1; i <= FAVORITOS; i++) {
+            String nombre = (cadaCuantasCambia > 0 && i % cadaCuantasCambia == 0) ? "Cámara " + i + " (nueva)" : "Cámara " + i;
+            lista.add(new Camara(i, nombre, 43 + i / 10000.0, -2.9 - i / 10000.0, "https://example.org/" + i + ".jpg", true));
+        }
+        return lista;
+    }
+
+    private static long medir(Runnable tarea) {
+        long inicio = SystemClock.elapsedRealtimeNanos();
+        tarea.run();
+        return SystemClock.elapsedRealtimeNanos() - inicio;
+    }
+
+    private static void informar(String caso, long[] antes, long[] despues) {
+        Log.i(TAG, String.format("%d favoritos, %s: antes %.1f ms, después %.1f ms", FAVORITOS, caso, mediana(antes) / 1e6,
+                mediana(despues) / 1e6));
+    }
+
+    private static long mediana(long[] tiempos) {
+        long[] ordenados = tiempos.clone();
+        Arrays.sort(ordenados);
+        return ordenados[ordenados.length / 2];
+    }
+}
@@ -0,0 +1,230 @@
+package com.infocam.mapa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Point;
+import android.os.Debug;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.test.annotation.UiThreadTest;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osmdroid.config.Configuration;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/* Dibuja CapaPuntos sobre un bitmap con un MapView de verdad (sin ponerlo en pantalla ni descargar teselas) y comprueba:
+ * 1. Que dibujar no crea objetos: los creados en muchas pasadas no crecen con el número de pasadas ni con el de puntos.
+ * 2. Que al pulsar se encuentra, a través del índice espacial, el punto que hay bajo el dedo, y nada al lado.
+ * Robolectric no está en el proyecto, así que se ejecuta en un dispositivo o emulador con ./gradlew connectedAndroidTest; el número
+ * de objetos creados sale también en el Logcat con la etiqueta TAG. Las pruebas se ejecutan en el hilo principal, como en la aplicación. */
+@RunWith(AndroidJUnit4.class)
+public class CapaPuntosTest {
+    private static final String TAG = "MedicionCapaPuntos";
+    private static final int ANCHO = 1080, ALTO = 1920;
+    private static final GeoPoint CENTRO = new GeoPoint(40.4167, -3.7037);
+
+    private Context contexto;
+    private IconosMapa iconos;
+
+    @Before
+    public void preparar() {
+        contexto = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        Configuration.getInstance().load(contexto, contexto.getSharedPreferences("osmdroid", Context.MODE_PRIVATE));
+        iconos = IconosMapa.obtenerInstancia(contexto);
+    }
+
+    private MapView crearMapa() {
+        MapView mapa = new MapView(contexto);
+        mapa.setUseDataConnection(false);
+        mapa.measure(View.MeasureSpec.makeMeasureSpec(ANCHO, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(ALTO, View.MeasureSpec.EXACTLY));
+        mapa.layout(0, 0, ANCHO, ALTO);
+        mapa.getController().setZoom(14.0);
+        mapa.getController().setCenter(CENTRO);
+        return mapa;
+    }
+
+    // Puntos repartidos por lo que se ve (y un poco más, como la zona consultada): {latitudes, longitudes}.
+    private static double[][] posiciones(int cuantos) {
+        Random azar = new Random(12);
+        double[] lat = new double[cuantos], lng = new double[cuantos];
+        for (int k = 0; k < cuantos; k++) {
+            lat[k] = CENTRO.getLatitude() + (azar.nextDouble() - 0.5) * 0.08;
+            lng[k] = CENTRO.getLongitude() + (azar.nextDouble() - 0.5) * 0.06;
+        }
+        return new double[][] { lat, lng };
+    }
+
+    // Con los cuatro tipos de icono, uno detrás de otro.
+    private static CapaPuntos.Lote lote(double[][] posiciones) {
+        int cuantos = posiciones[0].length;
+        List<Object> elementos = new ArrayList<>(cuantos);
+        int[] tipos = new int[cuantos];
+        for (int k = 0; k < cuantos; k++) {
+            elementos.add("punto " + k);
+            tipos[k] = k % 4;
+        }
+        return new CapaPuntos.Lote(elementos, posiciones[0], posiciones[1], tipos);
+    }
+
+    @Test
+    @UiThreadTest
+    @SuppressWarnings("deprecation") // Debug.*AllocCount: sigue siendo la única forma de contar los objetos de un hilo
+    public void dibujarNoCreaObjetos() {
+        MapView mapa = crearMapa();
+        Canvas lienzo = new Canvas(Bitmap.createBitmap(ANCHO, ALTO, Bitmap.Config.ARGB_8888));
+        CapaPuntos pocos = new CapaPuntos(iconos), muchos = new CapaPuntos(iconos);
+        pocos.setLote(lote(posiciones(10)));
+        muchos.setLote(lote(posiciones(5000)));
+
+        // La primera pasada crea la proyección y el atlas; a partir de ahí no debería crear nada
+        for (int i = 0; i < 5; i++) {
+            pocos.draw(lienzo, mapa, false);
+            muchos.draw(lienzo, mapa, false);
+        }
+
+        long contados, pocosCien, muchosCien, muchosMil;
+        Debug.startAllocCounting();
+        try {
+            // Comprobamos que el contador funciona en este dispositivo
+            Debug.resetThreadAllocCount();
+            Object[] comprobacion = new Object[10];
+            for (int i = 0; i < comprobacion.length; i++)
+                comprobacion[i] = new Object();
+            contados = Debug.getThreadAllocCount();
+
+            pocosCien = contarObjetos(pocos, mapa, lienzo, 100);
+            muchosCien = contarObjetos(muchos, mapa, lienzo, 100);
+            muchosMil = contarObjetos(muchos, mapa, lienzo, 1000);
+        } finally {
+            Debug.stopAllocCounting();
+        }
+        assumeTrue("este dispositivo no cuenta los objetos creados", contados >= 10);
+
+        Log.i(TAG, String.format("objetos creados: 100 pasadas x 10 puntos = %d, 100 x 5000 = %d, 1000 x 5000 = %d",
+                pocosCien, muchosCien, muchosMil));
+        // Lo que pueda crear el propio lienzo o la proyección es fijo: no depende de cuántos puntos ni de cuántas pasadas
+        assertTrue(muchosCien <= pocosCien + 10);
+        assertTrue(muchosMil <= muchosCien + 10);
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long contarObjetos(CapaPuntos capa, MapView mapa, Canvas lienzo, int pasadas) {
+        Debug.resetThreadAllocCount();
+        for (int i = 0; i < pasadas; i++)
+            capa.draw(lienzo, mapa, false);
+        return Debug.getThreadAllocCount();
+    }
+
+    @Test
+    @UiThreadTest
+    public void alPulsarSeEncuentraElPuntoBajoElDedo() {
+        MapView mapa = crearMapa();
+        IconosMapa.Atlas atlas = iconos.obtenerAtlas();
+        int alto = atlas.getZona(IconosMapa.CAMARA).height(), ancho = atlas.getZona(IconosMapa.CAMARA).width();
+
+        // Tres puntos: uno solo y dos casi en el mismo sitio (se ve encima el último)
+        List<Object> elementos = new ArrayList<>();
+        elementos.add("solo");
+        elementos.add("debajo");
+        elementos.add("encima");
+        double[] lat = { CENTRO.getLatitude(), CENTRO.getLatitude() + 0.01, CENTRO.getLatitude() + 0.01 };
+        double[] lng = { CENTRO.getLongitude(), CENTRO.getLongitude() + 0.01, CENTRO.getLongitude() + 0.01 };
+        CapaPuntos capa = new CapaPuntos(iconos);
+        capa.setLote(new CapaPuntos.Lote(elementos, lat, lng, new int[] { IconosMapa.CAMARA, IconosMapa.CAMARA,
+                IconosMapa.CAMARA }));
+        Object[] pulsado = new Object[1];
+        int[] altoRecibido = new int[1];
+        capa.setAlPulsar((elemento, posicion, altoIcono) -> {
+            pulsado[0] = elemento;
+            altoRecibido[0] = altoIcono;
+        });
+
+        Point solo = mapa.getProjection().toPixels(new GeoPoint(lat[0], lng[0]), null);
+        // En el centro del icono (que queda por encima de la coordenada)
+        assertTrue(pulsar(capa, mapa, solo.x, solo.y - alto / 2));
+        assertEquals("solo", pulsado[0]);
+        assertEquals(alto, altoRecibido[0]);
+        // Justo sobre la punta
+        pulsado[0] = null;
+        assertTrue(pulsar(capa, mapa, solo.x, solo.y - 1));
+        assertEquals("solo", pulsado[0]);
+
+        // Al lado del icono, por debajo de la punta y por encima de su borde no hay nada
+        pulsado[0] = null;
+        assertFalse(pulsar(capa, mapa, solo.x + ancho, solo.y - alto / 2));
+        assertFalse(pulsar(capa, mapa, solo.x, solo.y + ancho));
+        assertFalse(pulsar(capa, mapa, solo.x, solo.y - alto - 2));
+        assertNull(pulsado[0]);
+
+        // Si se solapan, gana el que se dibuja encima
+        Point doble = mapa.getProjection().toPixels(new GeoPoint(lat[1], lng[1]), null);
+        assertTrue(pulsar(capa, mapa, doble.x, doble.y - alto / 2));
+        assertSame(elementos.get(2), pulsado[0]);
+    }
+
+    // Con muchos puntos, el índice devuelve lo mismo que comprobar todos uno a uno.
+    @Test
+    @UiThreadTest
+    public void conMuchosPuntosCoincideConRecorrerlosTodos() {
+        MapView mapa = crearMapa();
+        double[][] posiciones = posiciones(3000);
+        CapaPuntos capa = new CapaPuntos(iconos);
+        capa.setLote(lote(posiciones));
+        Object[] pulsado = new Object[1];
+        capa.setAlPulsar((elemento, posicion, altoIcono) -> pulsado[0] = elemento);
+
+        IconosMapa.Atlas atlas = iconos.obtenerAtlas();
+        Point[] enPantalla = new Point[posiciones[0].length];
+        for (int k = 0; k < enPantalla.length; k++)
+            enPantalla[k] = mapa.getProjection().toPixels(new GeoPoint(posiciones[0][k], posiciones[1][k]), null);
+        Random azar = new Random(3);
+        int acertados = 0;
+        for (int intento = 0; intento < 500; intento++) {
+            int x = azar.nextInt(ANCHO), y = azar.nextInt(ALTO);
+            // El último punto cuyo icono contiene (x, y), igual que se dibujan
+            Object esperado = null;
+            for (int k = 0; k < enPantalla.length; k++) {
+                int ancho = atlas.getZona(k % 4).width(), alto = atlas.getZona(k % 4).height();
+                if (Math.abs(x - enPantalla[k].x) <= ancho / 2 && y <= enPantalla[k].y && y >= enPantalla[k].y - alto)
+                    esperado = "punto " + k;
+            }
+            if (esperado != null)
+                acertados++;
+            pulsado[0] = null;
+            assertEquals(esperado != null, pulsar(capa, mapa, x, y));
+            assertEquals(esperado, pulsado[0]);
+        }
+        assertTrue("ninguna pulsación ha caído sobre un punto", acertados > 0);
+    }
+
+    private static boolean pulsar(CapaPuntos capa, MapView mapa, int x, int y) {
+        long ahora = SystemClock.uptimeMillis();
+        MotionEvent evento = MotionEvent.obtain(ahora, ahora, MotionEvent.ACTION_UP, x, y, 0);
+        try {
+            return capa.onSingleTapConfirmed(evento, mapa);
+        } finally {
+            evento.recycle();
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.infocam.mapa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.os.SystemClock;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.infocam.data.ArchivoTeselas;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.osmdroid.tileprovider.tilesource.TileSourcePolicy;
+import org.osmdroid.tileprovider.tilesource.XYTileSource;
+import org.osmdroid.util.BoundingBox;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+
+/* Descarga una zona pequeña de teselas desde un MockWebServer (una fuente XYZ que admite descargas masivas) y comprueba:
+ * 1. Que se piden todas las teselas de la zona, una vez cada una, y que el progreso llega en orden hasta el total.
+ * 2. Que las que ya están en el archivo no se vuelven a pedir y que las que fallan se cuentan aparte.
+ * 3. Que con un presupuesto pequeño el recorte se lleva primero las teselas menos usadas, no las que se acaban de bajar, y que la
+ *    descarga no pide más de lo que cabe.
+ * 4. Que al cancelar se para.
+ * Usa el ArchivoTeselas real de la aplicación: lo vacía al empezar y al terminar, y le devuelve el presupuesto por defecto.
+ * Se ejecuta en un dispositivo o emulador con ./gradlew connectedAndroidTest. */
+@RunWith(AndroidJUnit4.class)
+public class DescargadorTeselasTest {
+    private static final int TESELA = DescargadorTeselas.TAMANO_TESELA_ESTIMADO;
+    // Unas pocas teselas del centro de Madrid: 4 en el zoom 14 y 9 en el 15
+    private static final BoundingBox ZONA = new BoundingBox(40.420, -3.695, 40.405, -3.715);
+    private static final int ZOOM = 15;
+
+    private ArchivoTeselas archivo;
+    private MockWebServer servidor;
+    private DescargadorTeselas descargador;
+    private volatile int tamanoServido = TESELA;
+    private volatile String rutaQueFalla = null;
+    private volatile long retrasoMs = 0;
+
+    // Lo que llega al Progreso, en el hilo principal.
+    private static class Resultado {
+        final List<int[]> avances = new ArrayList<>();
+        int descargadas = -1, fallidas = -1;
+        boolean cancelada;
+        final CountDownLatch terminada = new CountDownLatch(1);
+    }
+
+    @Before
+    public void preparar() throws IOException {
+        Context contexto = InstrumentationRegistry.getInstrumentation().getTargetContext();
+        archivo = ArchivoTeselas.obtenerInstancia(contexto);
+        archivo.vaciar();
+
+        servidor = new MockWebServer();
+        servidor.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest peticion) {
+                if (peticion.getPath().equals(rutaQueFalla))
+                    return new MockResponse().setResponseCode(500);
+                return new MockResponse().setBody(new Buffer().write(new byte[tamanoServido]))
+                        .setBodyDelay(retrasoMs, TimeUnit.MILLISECONDS);
+            }
+        });
+        servidor.start();
+        XYTileSource fuente = new XYTileSource("Prueba", 0, 19, 256, ".png",
+                new String[] { servidor.url("/teselas/").toString() }, "", new TileSourcePolicy());
+        descargador = new DescargadorTeselas(archivo, fuente);
+    }
+
+    @After
+    public void terminar() throws IOException {
+        descargador.cerrarYEsperar(2000);
+        servidor.shutdown();
+        archivo.setPresupuestoBytes(ArchivoTeselas.PRESUPUESTO_BYTES);
+        archivo.vaciar();
+    }
+
+    @Test
+    public void descargaTodaLaZonaYAvisaDelProgreso() throws Exception {
+        int total = DescargadorTeselas.contarTeselas(ZONA, 14, ZOOM);
+        Resultado resultado = new Resultado();
+        assertEquals(ZOOM, descargador.descargar(ZONA, 14, ZOOM, progreso(resultado, -1)));
+        esperar(resultado);
+
+        assertEquals(total, resultado.descargadas);
+        assertEquals(0, resultado.fallidas);
+        assertFalse(resultado.cancelada);
+        assertEquals(total, servidor.getRequestCount());
+        // Un aviso por tesela, en orden y siempre con el mismo total
+        assertEquals(total, resultado.avances.size());
+        for (int i = 0; i < total; i++) {
+            assertEquals(i + 1, resultado.avances.get(i)[0]);
+            assertEquals(total, resultado.avances.get(i)[1]);
+        }
+        for (int z = 14; z <= ZOOM; z++)
+            for (int[] xy : teselas(z))
+                assertTrue(archivo.contiene(z, xy[0], xy[1]));
+        assertEquals((long) total * TESELA, archivo.getBytesOcupados());
+    }
+
+    @Test
+    public void saltaLasQueYaTieneYCuentaLasQueFallan() throws Exception {
+        List<int[]> zona = teselas(ZOOM);
+        int[] guardada = zona.get(0), rota = zona.get(1);
+        archivo.guardar(ZOOM, guardada[0], guardada[1], new byte[TESELA]);
+        rutaQueFalla = "/teselas/" + ZOOM + "/" + rota[0] + "/" + rota[1] + ".png";
+
+        Resultado resultado = new Resultado();
+        descargador.descargar(ZONA, ZOOM, ZOOM, progreso(resultado, -1));
+        esperar(resultado);
+
+        assertEquals(zona.size() - 2, resultado.descargadas);
+        assertEquals(1, resultado.fallidas);
+        assertEquals(zona.size() - 1, servidor.getRequestCount()); // La que ya estaba no se pide
+        assertEquals(zona.size(), resultado.avances.size()); // Pero cuenta en el progreso
+        assertFalse(archivo.contiene(ZOOM, rota[0], rota[1]));
+    }
+
+    /* El archivo tiene seis teselas viejas de otra zona y solo caben unas pocas más que las de la descarga: al llenarse, el recorte se
+     * lleva primero las viejas, de la más antigua a la más reciente, y ninguna de las nuevas. */
+    @Test
+    public void alLlenarseBorraPrimeroLasMenosUsadas() throws Exception {
+        List<int[]> zona = teselas(ZOOM);
+        int viejas = 6;
+        archivo.setPresupuestoBytes((long) (zona.size() + 4) * TESELA);
+        for (int i = 0; i < viejas; i++) {
+            archivo.guardar(10, i, 0, new byte[TESELA]);
+            SystemClock.sleep(5); // Para que cada una tenga su propio ultimo_uso
+        }
+
+        Resultado resultado = new Resultado();
+        descargador.descargar(ZONA, ZOOM, ZOOM, progreso(resultado, -1));
+        esperar(resultado);
+
+        assertEquals(zona.size(), resultado.descargadas);
+        for (int[] xy : zona)
+            assertTrue(archivo.contiene(ZOOM, xy[0], xy[1]));
+        assertFalse(archivo.contiene(10, 0, 0));
+        assertTrue(archivo.contiene(10, viejas - 1, 0));
+        // Las que quedan son siempre las más recientes: si está una, están todas las posteriores
+        boolean anterior = false;
+        for (int i = 0; i < viejas; i++) {
+            boolean esta = archivo.contiene(10, i, 0);
+            assertTrue("se ha borrado la vieja " + i + " antes que otra más antigua", esta || !anterior);
+            anterior = esta;
+        }
+        assertTrue(archivo.getBytesOcupados() <= archivo.getPresupuestoBytes());
+    }
+
+    /* Con sitio para diez teselas estimadas se piden como mucho nueve (el 90 %), bajando el zoom si hace falta; y como el servidor las
+     * da del doble de lo estimado, la descarga para antes de que el recorte tenga que borrar ninguna de las suyas. */
+    @Test
+    public void noPideMasDeLoQueCabe() throws Exception {
+        archivo.setPresupuestoBytes(10L * TESELA);
+        tamanoServido = 2 * TESELA;
+        assertTrue(DescargadorTeselas.contarTeselas(ZONA, ZOOM, ZOOM + 1) > 9);
+
+        Resultado resultado = new Resultado();
+        int zoomHasta = descargador.descargar(ZONA, ZOOM, ZOOM + 1, progreso(resultado, -1));
+        esperar(resultado);
+
+        assertEquals(ZOOM, zoomHasta);
+        assertEquals(Math.min(DescargadorTeselas.contarTeselas(ZONA, ZOOM, ZOOM), 9), resultado.avances.get(0)[1]);
+        assertEquals(4, resultado.descargadas); // Con cuatro ya hay 8 de los 9 que caben: la quinta no entra
+        assertEquals(4, servidor.getRequestCount());
+        assertFalse(resultado.cancelada);
+        assertEquals(8L * TESELA, archivo.getBytesOcupados()); // No se ha borrado nada
+    }
+
+    @Test
+    public void alCancelarSePara() throws Exception {
+        retrasoMs = 100;
+        int total = DescargadorTeselas.contarTeselas(ZONA, 14, ZOOM);
+        Resultado resultado = new Resultado();
+        descargador.descargar(ZONA, 14, ZOOM, progreso(resultado, 2));
+        esperar(resultado);
+
+        assertTrue(resultado.cancelada);
+        // Como mucho se termina la que se estaba bajando cuando llegó el aviso
+        assertTrue(resultado.descargadas <= 3);
+        assertTrue(servidor.getRequestCount() < total);
+        assertEquals(resultado.descargadas + resultado.fallidas, resultado.avances.size()); // La cortada cuenta como fallida
+    }
+
+    // Si cancelarEn >= 0, cancela la descarga al recibir ese avance.
+    private DescargadorTeselas.Progreso progreso(Resultado resultado, int cancelarEn) {
+        return new DescargadorTeselas.Progreso() {
+            @Override
+            public void alAvanzar(int hechas, int total) {
+                resultado.avances.add(new int[] { hechas, total });
+                if (hechas == cancelarEn)
+                    descargador.cancelar();
+            }
+
+            @Override
+            public void alTerminar(int descargadas, int fallidas, boolean cancelada) {
+                resultado.descargadas = descargadas;
+                resultado.fallidas = fallidas;
+                resultado.cancelada = cancelada;
+                resultado.terminada.countDown();
+            }
+        };
+    }
+
+    private static void esperar(Resultado resultado) throws InterruptedException {
+        assertTrue("la descarga no ha terminado", resultado.terminada.await(30, TimeUnit.SECONDS));
+    }
+
+    // Las teselas {x, y} de la zona en ese zoom, en el mismo orden en que se descargan.
+    private static List<int[]> teselas(int zoom) {
+        List<int[]> teselas = new ArrayList<>();
+        for (int x = DescargadorTeselas.columna(ZONA.getLonWest(), zoom); x <= DescargadorTeselas.columna(ZONA.getLonEast(), zoom); x++)
+            for (int y = DescargadorTeselas.fila(ZONA.getLatNorth(), zoom); y <= DescargadorTeselas.fila(ZONA.getLatSouth(), zoom); y++)
+                teselas.add(new int[] { x, y });
+        return teselas;
+    }
+}
@@ -0,0 +1,67 @@
+package com.infocam.ui;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.android.material.bottomnavigation.BottomNavigationView;
+import com.infocam.R;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+
+/* Mide cuánto tarda un cambio de pestaña en MainActivity: desde que se selecciona en el menú inferior hasta que el FragmentManager ha
+ * terminado la transacción (ahí es donde se crea o se recupera la vista de cada pestaña, con el MapView incluido).
+ * Solo usa el menú, así que sirve igual para la versión anterior (replace() con un Fragment nuevo en cada toque) copiando este fichero
+ * a ese commit. Se ejecuta con ./gradlew connectedAndroidTest y la mediana de cada cambio sale en el Logcat con la etiqueta TAG. */
+@RunWith(AndroidJUnit4.class)
+public class CambioPestanasMedicionTest {
+    private static final String TAG = "MedicionPestanas";
+    private static final int VUELTAS = 10;
+
+    private static final int[] RECORRIDO = { R.id.nav_favoritos, R.id.nav_perfil, R.id.nav_map };
+    private static final String[] NOMBRES = { "mapa -> favoritos", "favoritos -> perfil", "perfil -> mapa" };
+
+    @Test
+    public void cambiarDePestana() {
+        long[][] tiempos = new long[RECORRIDO.length][VUELTAS];
+        try (ActivityScenario<MainActivity> escenario = ActivityScenario.launch(MainActivity.class)) {
+            // La primera vuelta crea las pestañas que aún no existían: la medimos aparte
+            long[] primeraVuelta = new long[RECORRIDO.length];
+            for (int p = 0; p < RECORRIDO.length; p++)
+                primeraVuelta[p] = cambiarA(escenario, RECORRIDO[p]);
+
+            for (int v = 0; v < VUELTAS; v++)
+                for (int p = 0; p < RECORRIDO.length; p++)
+                    tiempos[p][v] = cambiarA(escenario, RECORRIDO[p]);
+
+            for (int p = 0; p < RECORRIDO.length; p++)
+                Log.i(TAG, String.format("%s: primera vez %.1f ms, después %.1f ms (mediana de %d)", NOMBRES[p],
+                        primeraVuelta[p] / 1e6, mediana(tiempos[p]) / 1e6, VUELTAS));
+        }
+    }
+
+    private static long cambiarA(ActivityScenario<MainActivity> escenario, int idPestana) {
+        long[] duracion = new long[1];
+        escenario.onActivity(actividad -> {
+            BottomNavigationView menu = actividad.findViewById(R.id.bottom_navigation);
+            long inicio = SystemClock.elapsedRealtimeNanos();
+            menu.setSelectedItemId(idPestana);
+            actividad.getSupportFragmentManager().executePendingTransactions();
+            duracion[0] = SystemClock.elapsedRealtimeNanos() - inicio;
+        });
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync(); // Que termine de pintarse antes del siguiente cambio
+        return duracion[0];
+    }
+
+    private static long mediana(long[] tiempos) {
+        long[] ordenados = tiempos.clone();
+        Arrays.sort(ordenados);
+        return ordenados[ordenados.length / 2];
+    }
+}
@@ -0,0 +1,16 @@
+package com.infocam;
+
+import android.app.Application;
+
+import com.infocam.network.RetrofitClient;
+
+/* Se crea antes que cualquier Activity, también cuando Android restaura el proceso directamente en una pantalla interior (sin pasar por
+ * el login). Por eso lo que tiene que estar listo antes de la primera petición se prepara aquí. */
+public class InfocamApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        RetrofitClient.activarCache(this); // Las respuestas de la API se guardan en disco (ver CacheRespuestas)
+    }
+}
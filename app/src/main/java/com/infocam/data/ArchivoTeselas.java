@@ -0,0 +1,225 @@
+package com.infocam.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+/* Archivo local de teselas (los "cuadraditos" de imagen con los que se compone el mapa) descargadas por adelantado.
+ * Es un fichero SQLite aparte de InfoCam.db con el esquema de MBTiles (tabla "tiles" con zoom_level, tile_column, tile_row y
+ * tile_data, con la fila en formato TMS), así que se puede abrir con cualquier visor de MBTiles. Añadimos dos columnas propias:
+ * 1. ultimo_uso: cuándo se pintó por última vez, para borrar primero las que llevan más tiempo sin usarse (LRU).
+ * 2. tamano: bytes de la imagen, para llevar la cuenta del espacio ocupado sin tener que leer las imágenes.
+ * Cuando el total supera el presupuesto (presupuestoBytes) se eliminan las menos usadas hasta bajar del 90 %.
+ * Igual que DatabaseHelper, hay una única instancia con la conexión abierta y modo WAL, porque osmdroid lee desde varios hilos. */
+public class ArchivoTeselas extends SQLiteOpenHelper {
+    private static final String NOMBRE_BD = "teselas.mbtiles";
+    private static final int VERSION_BD = 1;
+    private static ArchivoTeselas instanciaUnica;
+
+    public static final long PRESUPUESTO_BYTES = 64L * 1024 * 1024;
+    // Para no escribir en cada lectura, solo actualizamos ultimo_uso si la última vez fue hace más de esto.
+    private static final long PRECISION_USO_MS = 60 * 60 * 1000;
+
+    private static final String TABLA_TESELAS = "tiles";
+    private static final String COL_ZOOM = "zoom_level";
+    private static final String COL_COLUMNA = "tile_column";
+    private static final String COL_FILA = "tile_row";
+    private static final String COL_DATOS = "tile_data";
+    private static final String COL_ULTIMO_USO = "ultimo_uso";
+    private static final String COL_TAMANO = "tamano";
+
+    private static final String SQL_CREACION_TESELAS = "CREATE TABLE " + TABLA_TESELAS + " (" +
+            COL_ZOOM + " INTEGER, " +
+            COL_COLUMNA + " INTEGER, " +
+            COL_FILA + " INTEGER, " +
+            COL_DATOS + " BLOB, " +
+            COL_ULTIMO_USO + " INTEGER, " +
+            COL_TAMANO + " INTEGER, " +
+            "PRIMARY KEY (" + COL_ZOOM + ", " + COL_COLUMNA + ", " + COL_FILA + "));";
+    private static final String SQL_CREACION_INDICE_USO = "CREATE INDEX idx_tiles_ultimo_uso ON " + TABLA_TESELAS +
+            " (" + COL_ULTIMO_USO + ");";
+    // Tabla de metadatos que exige el formato MBTiles.
+    private static final String SQL_CREACION_METADATOS = "CREATE TABLE metadata (name TEXT, value TEXT);";
+
+    private final Object cerrojoEspacio = new Object();
+    private long presupuestoBytes = PRESUPUESTO_BYTES;
+    private long bytesOcupados = -1; // -1 hasta que se calcule por primera vez
+
+    private ArchivoTeselas(Context contexto) {
+        super(contexto, NOMBRE_BD, null, VERSION_BD);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    public static synchronized ArchivoTeselas obtenerInstancia(Context contexto) {
+        if (instanciaUnica == null) {
+            instanciaUnica = new ArchivoTeselas(contexto.getApplicationContext());
+        }
+        return instanciaUnica;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase bd) {
+        bd.execSQL(SQL_CREACION_TESELAS);
+        bd.execSQL(SQL_CREACION_INDICE_USO);
+        bd.execSQL(SQL_CREACION_METADATOS);
+        bd.execSQL("INSERT INTO metadata (name, value) VALUES ('name', 'InfoCam'), ('format', 'png');");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase bd, int versionAntigua, int versionNueva) {
+        // Es solo una caché: si cambia el esquema, empezamos de cero.
+        bd.execSQL("DROP TABLE IF EXISTS " + TABLA_TESELAS);
+        bd.execSQL("DROP TABLE IF EXISTS metadata");
+        onCreate(bd);
+    }
+
+    public void setPresupuestoBytes(long presupuestoBytes) {
+        synchronized (cerrojoEspacio) {
+            this.presupuestoBytes = presupuestoBytes;
+            recortar();
+        }
+    }
+
+    public long getPresupuestoBytes() {
+        synchronized (cerrojoEspacio) {
+            return presupuestoBytes;
+        }
+    }
+
+    // Devuelve la imagen de la tesela o null si no la tenemos. La "y" es la de osmdroid (XYZ); aquí se pasa a TMS.
+    public byte[] leer(int zoom, int x, int y) {
+        SQLiteDatabase bd = getReadableDatabase();
+        String[] clave = claveTesela(zoom, x, y);
+        byte[] datos = null;
+        long ultimoUso = 0;
+        try (Cursor c = bd.query(TABLA_TESELAS, new String[] { COL_DATOS, COL_ULTIMO_USO },
+                COL_ZOOM + " = ? AND " + COL_COLUMNA + " = ? AND " + COL_FILA + " = ?", clave, null, null, null)) {
+            if (c.moveToFirst()) {
+                datos = c.getBlob(0);
+                ultimoUso = c.getLong(1);
+            }
+        }
+
+        long ahora = System.currentTimeMillis();
+        if (datos != null && ahora - ultimoUso > PRECISION_USO_MS) {
+            ContentValues valores = new ContentValues();
+            valores.put(COL_ULTIMO_USO, ahora);
+            getWritableDatabase().update(TABLA_TESELAS, valores,
+                    COL_ZOOM + " = ? AND " + COL_COLUMNA + " = ? AND " + COL_FILA + " = ?", clave);
+        }
+        return datos;
+    }
+
+    public boolean contiene(int zoom, int x, int y) {
+        SQLiteStatement consulta = getReadableDatabase().compileStatement("SELECT COUNT(*) FROM " + TABLA_TESELAS +
+                " WHERE " + COL_ZOOM + " = ? AND " + COL_COLUMNA + " = ? AND " + COL_FILA + " = ?");
+        try {
+            consulta.bindAllArgsAsStrings(claveTesela(zoom, x, y));
+            return consulta.simpleQueryForLong() > 0;
+        } finally {
+            consulta.close();
+        }
+    }
+
+    /* Si la tesela está guardada, la marca como recién usada y devuelve su tamaño; si no, devuelve -1. Lo usa DescargadorTeselas con las
+     * que ya tiene: así el recorte que provoque esa misma descarga se lleva antes las de otras zonas que las que se acaban de pedir. */
+    public long marcarUsada(int zoom, int x, int y) {
+        String[] clave = claveTesela(zoom, x, y);
+        SQLiteDatabase bd = getWritableDatabase();
+        long tamano;
+        try (Cursor c = bd.query(TABLA_TESELAS, new String[] { COL_TAMANO },
+                COL_ZOOM + " = ? AND " + COL_COLUMNA + " = ? AND " + COL_FILA + " = ?", clave, null, null, null)) {
+            if (!c.moveToFirst())
+                return -1;
+            tamano = c.getLong(0);
+        }
+        ContentValues valores = new ContentValues();
+        valores.put(COL_ULTIMO_USO, System.currentTimeMillis());
+        bd.update(TABLA_TESELAS, valores, COL_ZOOM + " = ? AND " + COL_COLUMNA + " = ? AND " + COL_FILA + " = ?", clave);
+        return tamano;
+    }
+
+    // Guarda (o sustituye) una tesela y, si nos pasamos del presupuesto, borra las menos usadas.
+    public void guardar(int zoom, int x, int y, byte[] datos) {
+        String[] clave = claveTesela(zoom, x, y);
+        ContentValues valores = new ContentValues();
+        valores.put(COL_ZOOM, zoom);
+        valores.put(COL_COLUMNA, x);
+        valores.put(COL_FILA, Integer.parseInt(clave[2]));
+        valores.put(COL_DATOS, datos);
+        valores.put(COL_ULTIMO_USO, System.currentTimeMillis());
+        valores.put(COL_TAMANO, datos.length);
+
+        synchronized (cerrojoEspacio) {
+            calcularOcupadoSiHaceFalta();
+            SQLiteDatabase bd = getWritableDatabase();
+            long anterior = tamanoGuardado(bd, clave);
+            bd.insertWithOnConflict(TABLA_TESELAS, null, valores, SQLiteDatabase.CONFLICT_REPLACE);
+            bytesOcupados += datos.length - anterior;
+            recortar();
+        }
+    }
+
+    public long getBytesOcupados() {
+        synchronized (cerrojoEspacio) {
+            calcularOcupadoSiHaceFalta();
+            return bytesOcupados;
+        }
+    }
+
+    // Borra las teselas que llevan más tiempo sin usarse hasta dejar el archivo por debajo del 90 % del presupuesto.
+    public void recortar() {
+        synchronized (cerrojoEspacio) {
+            calcularOcupadoSiHaceFalta();
+            if (bytesOcupados <= presupuestoBytes)
+                return;
+            long objetivo = presupuestoBytes * 9 / 10;
+            SQLiteDatabase bd = getWritableDatabase();
+            bd.beginTransaction();
+            try (Cursor c = bd.query(TABLA_TESELAS, new String[] { "rowid", COL_TAMANO }, null, null, null, null,
+                    COL_ULTIMO_USO + " ASC")) {
+                SQLiteStatement borrar = bd.compileStatement("DELETE FROM " + TABLA_TESELAS + " WHERE rowid = ?");
+                while (bytesOcupados > objetivo && c.moveToNext()) {
+                    borrar.bindLong(1, c.getLong(0));
+                    borrar.executeUpdateDelete();
+                    bytesOcupados -= c.getLong(1);
+                }
+                borrar.close();
+                bd.setTransactionSuccessful();
+            } finally {
+                bd.endTransaction();
+            }
+        }
+    }
+
+    public void vaciar() {
+        synchronized (cerrojoEspacio) {
+            getWritableDatabase().delete(TABLA_TESELAS, null, null);
+            bytesOcupados = 0;
+        }
+    }
+
+    private void calcularOcupadoSiHaceFalta() {
+        if (bytesOcupados >= 0)
+            return;
+        try (Cursor c = getReadableDatabase().rawQuery("SELECT TOTAL(" + COL_TAMANO + ") FROM " + TABLA_TESELAS, null)) {
+            bytesOcupados = c.moveToFirst() ? (long) c.getDouble(0) : 0;
+        }
+    }
+
+    private long tamanoGuardado(SQLiteDatabase bd, String[] clave) {
+        try (Cursor c = bd.query(TABLA_TESELAS, new String[] { COL_TAMANO },
+                COL_ZOOM + " = ? AND " + COL_COLUMNA + " = ? AND " + COL_FILA + " = ?", clave, null, null, null)) {
+            return c.moveToFirst() ? c.getLong(0) : 0;
+        }
+    }
+
+    // MBTiles numera las filas de abajo arriba (TMS) y osmdroid de arriba abajo (XYZ).
+    private static String[] claveTesela(int zoom, int x, int y) {
+        int filaTms = (1 << zoom) - 1 - y;
+        return new String[] { String.valueOf(zoom), String.valueOf(x), String.valueOf(filaTms) };
+    }
+}
@@ -0,0 +1,136 @@
+package com.infocam.data;
+
+import java.util.Arrays;
+
+/* Conjunto de números enteros (int) pensado para responder muy rápido a la pregunta "¿está este id dentro?".
+ * Un HashSet<Integer> convertiría cada id en un objeto Integer (boxing), lo que ocupa más memoria y es más lento. Aquí guardamos los ids
+ * directamente en un array de int con "direccionamiento abierto": cada número tiene una casilla preferida y, si está ocupada, probamos
+ * la siguiente. Como el array nunca se llena más de la mitad, casi siempre lo encontramos a la primera.
+ * El valor 0 lo usamos para marcar casillas vacías, por eso si alguien guarda un 0 lo apuntamos aparte en "contieneCero". */
+public class ConjuntoEnteros {
+    private static final int VACIO = 0;
+
+    private int[] casillas;
+    private int tamano = 0;
+    private boolean contieneCero = false;
+
+    public ConjuntoEnteros() {
+        this(16);
+    }
+
+    public ConjuntoEnteros(int capacidadEsperada) {
+        casillas = new int[capacidadPara(capacidadEsperada)];
+    }
+
+    public boolean contiene(int valor) {
+        if (valor == VACIO)
+            return contieneCero;
+        int mascara = casillas.length - 1;
+        int i = posicion(valor, mascara);
+        while (true) {
+            int actual = casillas[i];
+            if (actual == valor)
+                return true;
+            if (actual == VACIO)
+                return false;
+            i = (i + 1) & mascara;
+        }
+    }
+
+    // Devuelve true si el valor no estaba y se ha añadido.
+    public boolean anadir(int valor) {
+        if (valor == VACIO) {
+            if (contieneCero)
+                return false;
+            contieneCero = true;
+            tamano++;
+            return true;
+        }
+        // Mantenemos el array como mucho medio lleno para que las búsquedas sigan siendo cortas.
+        if ((tamano + 1) * 2 > casillas.length)
+            redimensionar(casillas.length * 2);
+
+        int mascara = casillas.length - 1;
+        int i = posicion(valor, mascara);
+        while (casillas[i] != VACIO) {
+            if (casillas[i] == valor)
+                return false;
+            i = (i + 1) & mascara;
+        }
+        casillas[i] = valor;
+        tamano++;
+        return true;
+    }
+
+    // Devuelve true si el valor estaba y se ha quitado.
+    public boolean quitar(int valor) {
+        if (valor == VACIO) {
+            if (!contieneCero)
+                return false;
+            contieneCero = false;
+            tamano--;
+            return true;
+        }
+        int mascara = casillas.length - 1;
+        int i = posicion(valor, mascara);
+        while (casillas[i] != valor) {
+            if (casillas[i] == VACIO)
+                return false;
+            i = (i + 1) & mascara;
+        }
+
+        /* Al borrar no podemos dejar un hueco sin más: un valor que se colocó más adelante por una colisión dejaría de encontrarse.
+         * Por eso recorremos los siguientes y movemos hacia atrás los que tenían su casilla preferida antes del hueco. */
+        int hueco = i;
+        int j = (i + 1) & mascara;
+        while (casillas[j] != VACIO) {
+            int preferida = posicion(casillas[j], mascara);
+            if (((j - preferida) & mascara) >= ((j - hueco) & mascara)) {
+                casillas[hueco] = casillas[j];
+                hueco = j;
+            }
+            j = (j + 1) & mascara;
+        }
+        casillas[hueco] = VACIO;
+        tamano--;
+        return true;
+    }
+
+    public void vaciar() {
+        Arrays.fill(casillas, VACIO);
+        contieneCero = false;
+        tamano = 0;
+    }
+
+    public int tamano() {
+        return tamano;
+    }
+
+    private void redimensionar(int nuevaCapacidad) {
+        int[] anteriores = casillas;
+        casillas = new int[nuevaCapacidad];
+        int mascara = nuevaCapacidad - 1;
+        for (int valor : anteriores) {
+            if (valor == VACIO)
+                continue;
+            int i = posicion(valor, mascara);
+            while (casillas[i] != VACIO)
+                i = (i + 1) & mascara;
+            casillas[i] = valor;
+        }
+    }
+
+    // Mezclamos los bits del número para que ids consecutivos (1, 2, 3...) no se amontonen en casillas contiguas.
+    private static int posicion(int valor, int mascara) {
+        int h = valor * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mascara;
+    }
+
+    // La capacidad siempre es potencia de 2 (así podemos usar "& mascara" en vez del módulo) y al menos el doble de lo esperado.
+    private static int capacidadPara(int esperados) {
+        int capacidad = 16;
+        while (capacidad < esperados * 2)
+            capacidad <<= 1;
+        return capacidad;
+    }
+}
@@ -4,21 +4,28 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 import com.infocam.model.Camara;
 import com.infocam.model.Favorito;
+import com.infocam.model.Incidencia;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 /* Esta clase funcionará como "mediador" entre la base de datos de SQLite y el servidor. A través de operaciones CRUD
  * (Create, Read, Update, Delete) sincronizará los datos con la BBDD. */
 public class DataRepository {
     private final DatabaseHelper gestorBD;
 
+    // Todas las instancias de DataRepository comparten la misma conexión, que no cerramos tras cada operación.
     public DataRepository(Context contexto) {
-        gestorBD = new DatabaseHelper(contexto);
+        gestorBD = DatabaseHelper.obtenerInstancia(contexto);
     }
 
-    // Guardamos un nuevo favorito en la BBDD de SQLite.
+    /* Guardamos un favorito en la BBDD de SQLite. Como hay un índice único por (usuario, cámara), si la cámara ya estaba guardada se
+     * sustituye la fila en la misma sentencia en vez de duplicarla. */
     public long insertarFavorito(Favorito favorito) {
         SQLiteDatabase bd = gestorBD.getWritableDatabase();
         ContentValues valores = new ContentValues();
@@ -32,8 +39,13 @@ public class DataRepository {
         valores.put(DatabaseHelper.COL_IMAGEN, favorito.getUrlImagen());
 
         // Inyectamos los datos con el ContentValues.
-        long idGenerado = bd.insert(DatabaseHelper.TABLA_FAVORITOS, null, valores);
-        bd.close();
+        long idGenerado = bd.insertWithOnConflict(DatabaseHelper.TABLA_FAVORITOS, null, valores,
+                SQLiteDatabase.CONFLICT_REPLACE);
+
+        // Mantenemos al día la copia en memoria que consulta el mapa.
+        FavoritosEnMemoria enMemoria = FavoritosEnMemoria.obtenerInstancia();
+        if (idGenerado != -1 && enMemoria.perteneceA(favorito.getIdUsuario()))
+            enMemoria.anadir(favorito.getIdCamara());
         return idGenerado;
     }
 
@@ -74,17 +86,40 @@ public class DataRepository {
         }
 
         cursor.close();
-        bd.close();
         return listaResultados;
     }
 
     // Eliminamos un registro de favorito específico usando su ID de autoincremento. Esto nos servirá cuando queramos borrar un favorito concreto, ya sea del mapa como de la lista.
     public void eliminarFavorito(int idFavoritoLocal) {
+        SQLiteDatabase bd = gestorBD.getWritableDatabase();
+        String[] argumentosWhere = { String.valueOf(idFavoritoLocal) };
+
+        // Antes de borrar la fila miramos de qué usuario y cámara era, para quitarla también de la copia en memoria.
+        Cursor cursor = bd.query(DatabaseHelper.TABLA_FAVORITOS,
+                new String[] { DatabaseHelper.COL_ID_USUARIO, DatabaseHelper.COL_ID_CAMARA },
+                DatabaseHelper.COL_ID + " = ?", argumentosWhere, null, null, null);
+        boolean existia = cursor.moveToFirst();
+        int idUsuario = existia ? cursor.getInt(0) : -1;
+        int idCamara = existia ? cursor.getInt(1) : -1;
+        cursor.close();
+
+        bd.delete(DatabaseHelper.TABLA_FAVORITOS, DatabaseHelper.COL_ID + " = ?", argumentosWhere);
+
+        FavoritosEnMemoria enMemoria = FavoritosEnMemoria.obtenerInstancia();
+        if (existia && enMemoria.perteneceA(idUsuario))
+            enMemoria.quitar(idCamara);
+    }
+
+    // Borramos el favorito de una cámara concreta directamente, sin tener que buscar antes su idLocal. El índice único hace que sea inmediato.
+    public void eliminarFavoritoPorCamara(int idUsuario, int idCamara) {
         SQLiteDatabase bd = gestorBD.getWritableDatabase();
         bd.delete(DatabaseHelper.TABLA_FAVORITOS,
-                DatabaseHelper.COL_ID + " = ?",
-                new String[] { String.valueOf(idFavoritoLocal) });
-        bd.close();
+                DatabaseHelper.COL_ID_USUARIO + " = ? AND " + DatabaseHelper.COL_ID_CAMARA + " = ?",
+                new String[] { String.valueOf(idUsuario), String.valueOf(idCamara) });
+
+        FavoritosEnMemoria enMemoria = FavoritosEnMemoria.obtenerInstancia();
+        if (enMemoria.perteneceA(idUsuario))
+            enMemoria.quitar(idCamara);
     }
 
     // También podremos borrar todos los favoritos locales del usuario. Así, podremos forzar una sincronización con el servidor tras volver a iniciar sesión.
@@ -93,29 +128,313 @@ public class DataRepository {
         bd.delete(DatabaseHelper.TABLA_FAVORITOS,
                 DatabaseHelper.COL_ID_USUARIO + " = ?",
                 new String[] { String.valueOf(idUsuario) });
-        bd.close();
+
+        if (FavoritosEnMemoria.obtenerInstancia().perteneceA(idUsuario))
+            FavoritosEnMemoria.obtenerInstancia().vaciar();
+    }
+
+    // Si la copia en memoria de los favoritos no es de este usuario (por ejemplo, al abrir la app con la sesión ya iniciada), la rellenamos desde SQLite.
+    public void cargarFavoritosEnMemoria(int idUsuario) {
+        FavoritosEnMemoria enMemoria = FavoritosEnMemoria.obtenerInstancia();
+        if (!enMemoria.perteneceA(idUsuario))
+            enMemoria.reemplazarConFavoritos(idUsuario, obtenerFavoritosPorUsuario(idUsuario));
     }
 
-    // Cuando hagamos login, lanzaremos una sincronización para actualizar la BBDD local y mantener la aplicación actualizada con los mismos datos que el servidor.
+    /* Cuando hagamos login, lanzaremos una sincronización para actualizar la BBDD local y mantener la aplicación actualizada con los mismos datos que el servidor.
+     * En vez de borrar todo e insertar fila a fila, comparamos lo que ya hay en SQLite con lo que manda el servidor y solo tocamos lo necesario:
+     * insertamos las cámaras nuevas, actualizamos las que han cambiado y borramos las que ya no son favoritas. Todo ocurre dentro de una
+     * única transacción y con sentencias precompiladas (SQLiteStatement), que reutilizamos cambiando solo los valores. */
     public void sincronizarConServidor(int idUsuario, List<Camara> camarasFavoritasApi) {
-        // Primero limpiamos la base de datos local para este usuario.
-        vaciarFavoritosDeUsuario(idUsuario);
-
-        // En caso de no tener ninguna cámara en favoritos (servidor), no seguiremos con esta sincronización.
-        if (camarasFavoritasApi == null || camarasFavoritasApi.isEmpty())
-            return;
-
-        // Luego insertamos la información nueva que viene del API.
-        for (Camara c : camarasFavoritasApi) {
-            Favorito f = new Favorito();
-            f.setIdUsuario(idUsuario);
-            f.setIdCamara(c.getId());
-            f.setNombre(c.getNombre());
-            f.setDireccion("Vía pública");
-            f.setLatitud(c.getLatitud());
-            f.setLongitud(c.getLongitud());
-            f.setUrlImagen(c.getImagen());
-            insertarFavorito(f);
+        // La copia en memoria pasa a ser exactamente lo que dice el servidor.
+        FavoritosEnMemoria.obtenerInstancia().reemplazarConCamaras(idUsuario, camarasFavoritasApi);
+
+        // Agrupamos los favoritos locales por cámara. Si hubiese filas repetidas de la misma cámara, las sobrantes se borrarán.
+        Map<Integer, Favorito> localesPorCamara = new HashMap<>();
+        List<Favorito> sobrantes = new ArrayList<>();
+        for (Favorito f : obtenerFavoritosPorUsuario(idUsuario)) {
+            if (localesPorCamara.containsKey(f.getIdCamara()))
+                sobrantes.add(f);
+            else
+                localesPorCamara.put(f.getIdCamara(), f);
+        }
+
+        SQLiteDatabase bd = gestorBD.getWritableDatabase();
+        SQLiteStatement insertar = bd.compileStatement("INSERT INTO " + DatabaseHelper.TABLA_FAVORITOS + " ("
+                + DatabaseHelper.COL_ID_USUARIO + ", " + DatabaseHelper.COL_NOMBRE + ", " + DatabaseHelper.COL_DIRECCION + ", "
+                + DatabaseHelper.COL_LAT + ", " + DatabaseHelper.COL_LNG + ", " + DatabaseHelper.COL_ID_CAMARA + ", "
+                + DatabaseHelper.COL_IMAGEN + ") VALUES (?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement actualizar = bd.compileStatement("UPDATE " + DatabaseHelper.TABLA_FAVORITOS + " SET "
+                + DatabaseHelper.COL_NOMBRE + " = ?, " + DatabaseHelper.COL_LAT + " = ?, " + DatabaseHelper.COL_LNG + " = ?, "
+                + DatabaseHelper.COL_IMAGEN + " = ? WHERE " + DatabaseHelper.COL_ID + " = ?");
+        SQLiteStatement borrar = bd.compileStatement("DELETE FROM " + DatabaseHelper.TABLA_FAVORITOS + " WHERE "
+                + DatabaseHelper.COL_ID + " = ?");
+
+        // Si el servidor repite una cámara, solo la tratamos la primera vez: insertarla dos veces chocaría con el índice único y
+        // desharía toda la transacción.
+        ConjuntoEnteros procesadas = new ConjuntoEnteros(camarasFavoritasApi != null ? camarasFavoritasApi.size() : 0);
+
+        bd.beginTransaction();
+        try {
+            if (camarasFavoritasApi != null) {
+                for (Camara c : camarasFavoritasApi) {
+                    if (!procesadas.anadir(c.getId()))
+                        continue;
+                    Favorito local = localesPorCamara.remove(c.getId());
+                    if (local == null) {
+                        // Cámara nueva: la insertamos.
+                        insertar.clearBindings();
+                        insertar.bindLong(1, idUsuario);
+                        vincularTexto(insertar, 2, c.getNombre());
+                        insertar.bindString(3, "Vía pública");
+                        insertar.bindDouble(4, c.getLatitud());
+                        insertar.bindDouble(5, c.getLongitud());
+                        insertar.bindLong(6, c.getId());
+                        vincularTexto(insertar, 7, c.getImagen());
+                        insertar.executeInsert();
+                    } else if (haCambiado(local, c)) {
+                        // Ya la teníamos, pero el servidor trae datos distintos: la actualizamos.
+                        actualizar.clearBindings();
+                        vincularTexto(actualizar, 1, c.getNombre());
+                        actualizar.bindDouble(2, c.getLatitud());
+                        actualizar.bindDouble(3, c.getLongitud());
+                        vincularTexto(actualizar, 4, c.getImagen());
+                        actualizar.bindLong(5, local.getIdLocal());
+                        actualizar.executeUpdateDelete();
+                    }
+                }
+            }
+
+            // Lo que queda en el mapa ya no es favorito en el servidor, así que lo borramos.
+            sobrantes.addAll(localesPorCamara.values());
+            for (Favorito f : sobrantes) {
+                borrar.bindLong(1, f.getIdLocal());
+                borrar.executeUpdateDelete();
+            }
+            bd.setTransactionSuccessful();
+        } finally {
+            bd.endTransaction();
+            insertar.close();
+            actualizar.close();
+            borrar.close();
+        }
+    }
+
+    /* A partir de aquí está la copia local de las cámaras e incidencias del mapa. Con ella el mapa se pinta nada más abrirlo (o sin
+     * conexión) y, mientras tanto, se piden los datos al servidor. Cuando llegan, guardarCamaras() y guardarIncidencias() solo escriben las
+     * filas que han cambiado y apuntan en la tabla "frescura" el momento de la descarga. */
+    public List<Camara> obtenerCamarasGuardadas() {
+        List<Camara> listaResultados = new ArrayList<>();
+        SQLiteDatabase bd = gestorBD.getReadableDatabase();
+        Cursor cursor = bd.query(DatabaseHelper.TABLA_CAMARAS, null, null, null, null, null, null);
+
+        if (cursor.moveToFirst()) {
+            int colId = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_CAM_ID);
+            int colNombre = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_NOMBRE);
+            int colLat = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_LAT);
+            int colLng = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_LNG);
+            int colImagen = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_IMAGEN);
+            int colActiva = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_CAM_ACTIVA);
+            do {
+                listaResultados.add(new Camara(cursor.getInt(colId), cursor.getString(colNombre), cursor.getDouble(colLat),
+                        cursor.getDouble(colLng), cursor.getString(colImagen), cursor.getInt(colActiva) != 0));
+            } while (cursor.moveToNext());
         }
+
+        cursor.close();
+        return listaResultados;
+    }
+
+    public List<Incidencia> obtenerIncidenciasGuardadas() {
+        List<Incidencia> listaResultados = new ArrayList<>();
+        SQLiteDatabase bd = gestorBD.getReadableDatabase();
+        Cursor cursor = bd.query(DatabaseHelper.TABLA_INCIDENCIAS, null, null, null, null, null, null);
+
+        if (cursor.moveToFirst()) {
+            int colId = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_INC_ID);
+            int colUsuario = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_ID_USUARIO);
+            int colExterno = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_INC_EXTERNAL_ID);
+            int colNombre = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_NOMBRE);
+            int colTipo = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_INC_TIPO);
+            int colCausa = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_INC_CAUSA);
+            int colInicio = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_INC_FECHA_INICIO);
+            int colFin = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_INC_FECHA_FIN);
+            int colLat = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_LAT);
+            int colLng = cursor.getColumnIndexOrThrow(DatabaseHelper.COL_LNG);
+            do {
+                Incidencia i = new Incidencia(cursor.getInt(colUsuario), cursor.getString(colNombre),
+                        cursor.getString(colTipo), cursor.getString(colCausa), cursor.getString(colInicio),
+                        cursor.getString(colFin), cursor.getDouble(colLat), cursor.getDouble(colLng),
+                        cursor.getString(colExterno));
+                if (!cursor.isNull(colId))
+                    i.setId(cursor.getInt(colId));
+                listaResultados.add(i);
+            } while (cursor.moveToNext());
+        }
+
+        cursor.close();
+        return listaResultados;
+    }
+
+    // Devuelve cuándo se guardó por última vez la tabla indicada (0 si nunca).
+    public long obtenerMomentoDescarga(String tabla) {
+        SQLiteDatabase bd = gestorBD.getReadableDatabase();
+        Cursor cursor = bd.query(DatabaseHelper.TABLA_FRESCURA, new String[] { DatabaseHelper.COL_FRE_MOMENTO },
+                DatabaseHelper.COL_FRE_TABLA + " = ?", new String[] { tabla }, null, null, null);
+        long momento = cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        cursor.close();
+        return momento;
+    }
+
+    // Guarda las cámaras descargadas escribiendo solo las que son nuevas o han cambiado. Devuelve el número de filas tocadas.
+    public int guardarCamaras(List<Camara> camaras) {
+        Map<Integer, Camara> guardadas = new HashMap<>();
+        for (Camara c : obtenerCamarasGuardadas())
+            guardadas.put(c.getId(), c);
+
+        SQLiteDatabase bd = gestorBD.getWritableDatabase();
+        SQLiteStatement escribir = bd.compileStatement("INSERT OR REPLACE INTO " + DatabaseHelper.TABLA_CAMARAS + " ("
+                + DatabaseHelper.COL_CAM_ID + ", " + DatabaseHelper.COL_NOMBRE + ", " + DatabaseHelper.COL_LAT + ", "
+                + DatabaseHelper.COL_LNG + ", " + DatabaseHelper.COL_IMAGEN + ", " + DatabaseHelper.COL_CAM_ACTIVA
+                + ") VALUES (?, ?, ?, ?, ?, ?)");
+        SQLiteStatement borrar = bd.compileStatement("DELETE FROM " + DatabaseHelper.TABLA_CAMARAS + " WHERE "
+                + DatabaseHelper.COL_CAM_ID + " = ?");
+        int cambios = 0;
+
+        bd.beginTransaction();
+        try {
+            for (Camara c : camaras) {
+                Camara anterior = guardadas.remove(c.getId());
+                if (anterior != null && !camaraDistinta(anterior, c))
+                    continue;
+                escribir.clearBindings();
+                escribir.bindLong(1, c.getId());
+                vincularTexto(escribir, 2, c.getNombre());
+                escribir.bindDouble(3, c.getLatitud());
+                escribir.bindDouble(4, c.getLongitud());
+                vincularTexto(escribir, 5, c.getImagen());
+                escribir.bindLong(6, c.isActiva() ? 1 : 0);
+                escribir.executeInsert();
+                cambios++;
+            }
+            // Las que quedan ya no las devuelve el servidor.
+            for (Camara c : guardadas.values()) {
+                borrar.bindLong(1, c.getId());
+                borrar.executeUpdateDelete();
+                cambios++;
+            }
+            apuntarMomentoDescarga(bd, DatabaseHelper.TABLA_CAMARAS);
+            bd.setTransactionSuccessful();
+        } finally {
+            bd.endTransaction();
+            escribir.close();
+            borrar.close();
+        }
+        return cambios;
+    }
+
+    // Igual que guardarCamaras(), pero para las incidencias (identificadas por Incidencia.obtenerClave()).
+    public int guardarIncidencias(List<Incidencia> incidencias) {
+        Map<String, Incidencia> guardadas = new HashMap<>();
+        for (Incidencia i : obtenerIncidenciasGuardadas())
+            guardadas.put(i.obtenerClave(), i);
+
+        SQLiteDatabase bd = gestorBD.getWritableDatabase();
+        SQLiteStatement escribir = bd.compileStatement("INSERT OR REPLACE INTO " + DatabaseHelper.TABLA_INCIDENCIAS + " ("
+                + DatabaseHelper.COL_INC_CLAVE + ", " + DatabaseHelper.COL_INC_ID + ", " + DatabaseHelper.COL_ID_USUARIO + ", "
+                + DatabaseHelper.COL_INC_EXTERNAL_ID + ", " + DatabaseHelper.COL_NOMBRE + ", " + DatabaseHelper.COL_INC_TIPO + ", "
+                + DatabaseHelper.COL_INC_CAUSA + ", " + DatabaseHelper.COL_INC_FECHA_INICIO + ", "
+                + DatabaseHelper.COL_INC_FECHA_FIN + ", " + DatabaseHelper.COL_LAT + ", " + DatabaseHelper.COL_LNG
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        SQLiteStatement borrar = bd.compileStatement("DELETE FROM " + DatabaseHelper.TABLA_INCIDENCIAS + " WHERE "
+                + DatabaseHelper.COL_INC_CLAVE + " = ?");
+        int cambios = 0;
+
+        bd.beginTransaction();
+        try {
+            for (Incidencia i : incidencias) {
+                String clave = i.obtenerClave();
+                Incidencia anterior = guardadas.remove(clave);
+                if (anterior != null && !incidenciaDistinta(anterior, i))
+                    continue;
+                escribir.clearBindings();
+                escribir.bindString(1, clave);
+                if (i.getId() != null)
+                    escribir.bindLong(2, i.getId());
+                escribir.bindLong(3, i.getIdUsuario());
+                vincularTexto(escribir, 4, i.getExternalId());
+                vincularTexto(escribir, 5, i.getNombre());
+                vincularTexto(escribir, 6, i.getTipoIncidencia());
+                vincularTexto(escribir, 7, i.getCausa());
+                vincularTexto(escribir, 8, i.getFechaInicio());
+                vincularTexto(escribir, 9, i.getFechaFin());
+                escribir.bindDouble(10, i.getLatitud());
+                escribir.bindDouble(11, i.getLongitud());
+                escribir.executeInsert();
+                cambios++;
+            }
+            for (String clave : guardadas.keySet()) {
+                borrar.bindString(1, clave);
+                borrar.executeUpdateDelete();
+                cambios++;
+            }
+            apuntarMomentoDescarga(bd, DatabaseHelper.TABLA_INCIDENCIAS);
+            bd.setTransactionSuccessful();
+        } finally {
+            bd.endTransaction();
+            escribir.close();
+            borrar.close();
+        }
+        return cambios;
+    }
+
+    // Al cerrar sesión borramos también la copia del mapa: las incidencias propias del usuario no deben verlas otros.
+    public void vaciarCacheMapa() {
+        SQLiteDatabase bd = gestorBD.getWritableDatabase();
+        bd.delete(DatabaseHelper.TABLA_CAMARAS, null, null);
+        bd.delete(DatabaseHelper.TABLA_INCIDENCIAS, null, null);
+        bd.delete(DatabaseHelper.TABLA_FRESCURA, null, null);
+    }
+
+    private void apuntarMomentoDescarga(SQLiteDatabase bd, String tabla) {
+        ContentValues valores = new ContentValues();
+        valores.put(DatabaseHelper.COL_FRE_TABLA, tabla);
+        valores.put(DatabaseHelper.COL_FRE_MOMENTO, System.currentTimeMillis());
+        bd.insertWithOnConflict(DatabaseHelper.TABLA_FRESCURA, null, valores, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    private boolean camaraDistinta(Camara a, Camara b) {
+        return !Objects.equals(a.getNombre(), b.getNombre())
+                || a.getLatitud() != b.getLatitud()
+                || a.getLongitud() != b.getLongitud()
+                || !Objects.equals(a.getImagen(), b.getImagen())
+                || a.isActiva() != b.isActiva();
+    }
+
+    private boolean incidenciaDistinta(Incidencia a, Incidencia b) {
+        return !Objects.equals(a.getId(), b.getId())
+                || a.getIdUsuario() != b.getIdUsuario()
+                || !Objects.equals(a.getExternalId(), b.getExternalId())
+                || !Objects.equals(a.getNombre(), b.getNombre())
+                || !Objects.equals(a.getTipoIncidencia(), b.getTipoIncidencia())
+                || !Objects.equals(a.getCausa(), b.getCausa())
+                || !Objects.equals(a.getFechaInicio(), b.getFechaInicio())
+                || !Objects.equals(a.getFechaFin(), b.getFechaFin())
+                || a.getLatitud() != b.getLatitud()
+                || a.getLongitud() != b.getLongitud();
+    }
+
+    private boolean haCambiado(Favorito local, Camara c) {
+        return !Objects.equals(local.getNombre(), c.getNombre())
+                || local.getLatitud() != c.getLatitud()
+                || local.getLongitud() != c.getLongitud()
+                || !Objects.equals(local.getUrlImagen(), c.getImagen());
+    }
+
+    // SQLiteStatement no admite bindString(null), así que en ese caso usamos bindNull.
+    private void vincularTexto(SQLiteStatement sentencia, int indice, String valor) {
+        if (valor == null)
+            sentencia.bindNull(indice);
+        else
+            sentencia.bindString(indice, valor);
     }
 }
@@ -7,11 +7,14 @@ import android.database.sqlite.SQLiteOpenHelper;
 /* Esta clase se encarga de hacer que los datos persistan en el dispositivo móvil. Para ello, se crea una base de datos local con SQLite.
  * Existen dos métodos principales, que hacen referencia al ciclo de vida de la aplicación:
  * 1. onCreate(): se ejecuta solo la primera vez que se crea la base de datos.
- * 2. onUpgrade(): se ejecuta cuando incrementamos el contador VERSION_BD (necesario cuando se modifica la estructura).*/
+ * 2. onUpgrade(): se ejecuta cuando incrementamos el contador VERSION_BD (necesario cuando se modifica la estructura).
+ * Solo existe una instancia para toda la aplicación y su conexión se queda abierta mientras viva el proceso. Abrir y cerrar el fichero
+ * en cada operación era lento, y con el modo WAL (write-ahead logging) las lecturas pueden ejecutarse a la vez que las escrituras.*/
 public class DatabaseHelper extends SQLiteOpenHelper {
     // Configuración básica de la BBDD.
     private static final String NOMBRE_BD = "InfoCam.db";
-    private static final int VERSION_BD = 4;
+    private static final int VERSION_BD = 6;
+    private static DatabaseHelper instanciaUnica;
 
     // Definición de la tabla de "Favoritos" y sus columnas, que será igual que en la BBDD a la que acude la API.
     public static final String TABLA_FAVORITOS = "favoritos";
@@ -36,20 +39,106 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             COL_IMAGEN + " TEXT" +
             ");";
 
-    public DatabaseHelper(Context contexto) {
+    // Índice único por usuario y cámara: hace instantáneas las búsquedas por usuario y evita que una cámara se guarde dos veces.
+    public static final String INDICE_USUARIO_CAMARA = "idx_favoritos_usuario_camara";
+    private static final String SQL_CREACION_INDICE = "CREATE UNIQUE INDEX IF NOT EXISTS " + INDICE_USUARIO_CAMARA +
+            " ON " + TABLA_FAVORITOS + " (" + COL_ID_USUARIO + ", " + COL_ID_CAMARA + ");";
+
+    // Copia local de las cámaras del servidor, para poder pintar el mapa al instante (o sin conexión).
+    public static final String TABLA_CAMARAS = "camaras";
+    public static final String COL_CAM_ID = "id";
+    public static final String COL_CAM_ACTIVA = "activa";
+
+    private static final String SQL_CREACION_CAMARAS = "CREATE TABLE IF NOT EXISTS " + TABLA_CAMARAS + " (" +
+            COL_CAM_ID + " INTEGER PRIMARY KEY, " +
+            COL_NOMBRE + " TEXT, " +
+            COL_LAT + " REAL, " +
+            COL_LNG + " REAL, " +
+            COL_IMAGEN + " TEXT, " +
+            COL_CAM_ACTIVA + " INTEGER" +
+            ");";
+
+    // Copia local de las incidencias. Las oficiales pueden no tener id, así que la clave es el texto que da Incidencia.obtenerClave().
+    public static final String TABLA_INCIDENCIAS = "incidencias";
+    public static final String COL_INC_CLAVE = "clave";
+    public static final String COL_INC_ID = "id";
+    public static final String COL_INC_EXTERNAL_ID = "externalId";
+    public static final String COL_INC_TIPO = "tipoIncidencia";
+    public static final String COL_INC_CAUSA = "causa";
+    public static final String COL_INC_FECHA_INICIO = "fechaInicio";
+    public static final String COL_INC_FECHA_FIN = "fechaFin";
+
+    private static final String SQL_CREACION_INCIDENCIAS = "CREATE TABLE IF NOT EXISTS " + TABLA_INCIDENCIAS + " (" +
+            COL_INC_CLAVE + " TEXT PRIMARY KEY, " +
+            COL_INC_ID + " INTEGER, " +
+            COL_ID_USUARIO + " INTEGER, " +
+            COL_INC_EXTERNAL_ID + " TEXT, " +
+            COL_NOMBRE + " TEXT, " +
+            COL_INC_TIPO + " TEXT, " +
+            COL_INC_CAUSA + " TEXT, " +
+            COL_INC_FECHA_INICIO + " TEXT, " +
+            COL_INC_FECHA_FIN + " TEXT, " +
+            COL_LAT + " REAL, " +
+            COL_LNG + " REAL" +
+            ");";
+
+    // Guardamos cuándo se descargó por última vez cada tabla para saber si sus datos han caducado.
+    public static final String TABLA_FRESCURA = "frescura";
+    public static final String COL_FRE_TABLA = "tabla";
+    public static final String COL_FRE_MOMENTO = "momento";
+
+    private static final String SQL_CREACION_FRESCURA = "CREATE TABLE IF NOT EXISTS " + TABLA_FRESCURA + " (" +
+            COL_FRE_TABLA + " TEXT PRIMARY KEY, " +
+            COL_FRE_MOMENTO + " INTEGER" +
+            ");";
+
+    // El constructor es privado: todas las partes de la app deben pedir la conexión a través de obtenerInstancia().
+    private DatabaseHelper(Context contexto) {
         super(contexto, NOMBRE_BD, null, VERSION_BD);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    // Usamos el contexto de la aplicación (no el de la Activity) para no retener pantallas que ya se han cerrado.
+    public static synchronized DatabaseHelper obtenerInstancia(Context contexto) {
+        if (instanciaUnica == null) {
+            instanciaUnica = new DatabaseHelper(contexto.getApplicationContext());
+        }
+        return instanciaUnica;
     }
 
     // Se ejecuta cuando se crea la base de datos por primera vez.
     @Override
     public void onCreate(SQLiteDatabase bd) {
         bd.execSQL(SQL_CREACION_TABLA); // Llamamos a la query que crea la tabla.
+        bd.execSQL(SQL_CREACION_INDICE);
+        crearTablasMapa(bd);
+    }
+
+    private void crearTablasMapa(SQLiteDatabase bd) {
+        bd.execSQL(SQL_CREACION_CAMARAS);
+        bd.execSQL(SQL_CREACION_INCIDENCIAS);
+        bd.execSQL(SQL_CREACION_FRESCURA);
     }
 
-    // Se ejecuta cuando detecta que "VERSION_BD" ha cambiado.
+    /* Se ejecuta cuando detecta que "VERSION_BD" ha cambiado. Desde la versión 4 la tabla ya tiene su forma actual, así que migramos paso a
+     * paso conservando las filas (el usuario no tendrá que volver a sincronizar). Las versiones más antiguas se recrean desde cero. */
     @Override
     public void onUpgrade(SQLiteDatabase bd, int versionAntigua, int versionNueva) {
-        bd.execSQL("DROP TABLE IF EXISTS " + TABLA_FAVORITOS); // Borramos la tabla, si es que existe.
-        onCreate(bd); // Llamamos al onCreate para que la vuelva a crear.
+        if (versionAntigua < 4) {
+            bd.execSQL("DROP TABLE IF EXISTS " + TABLA_FAVORITOS); // Borramos la tabla, si es que existe.
+            onCreate(bd); // Llamamos al onCreate para que la vuelva a crear.
+            return;
+        }
+
+        if (versionAntigua < 5) {
+            // Antes de crear el índice único quitamos las filas repetidas, quedándonos con la más antigua de cada cámara.
+            bd.execSQL("DELETE FROM " + TABLA_FAVORITOS + " WHERE " + COL_ID + " NOT IN (SELECT MIN(" + COL_ID + ") FROM " +
+                    TABLA_FAVORITOS + " GROUP BY " + COL_ID_USUARIO + ", " + COL_ID_CAMARA + ");");
+            bd.execSQL(SQL_CREACION_INDICE);
+        }
+
+        if (versionAntigua < 6) {
+            crearTablasMapa(bd); // Tablas nuevas: no hay nada que migrar.
+        }
     }
 }
@@ -0,0 +1,68 @@
+package com.infocam.data;
+
+import com.infocam.model.Camara;
+import com.infocam.model.Favorito;
+
+import java.util.List;
+
+/* Copia en memoria de los ids de las cámaras favoritas del usuario que tiene la sesión iniciada.
+ * El mapa necesita saber, para cada cámara, si es favorita o no. Antes lo resolvíamos recorriendo toda la lista de favoritos por cada
+ * cámara; ahora lo consultamos en un ConjuntoEnteros, que responde al instante. Hay una única instancia para toda la aplicación
+ * (igual que InfocamServiceClient), así MapaFragment, FavoritosFragment y DataRepository comparten los mismos datos. */
+public class FavoritosEnMemoria {
+    private static FavoritosEnMemoria instanciaUnica;
+
+    private final ConjuntoEnteros idsCamaras = new ConjuntoEnteros();
+    private int idUsuario = -1; // Usuario al que pertenecen los ids cargados (-1 si aún no se ha cargado ninguno).
+
+    private FavoritosEnMemoria() {
+    }
+
+    public static synchronized FavoritosEnMemoria obtenerInstancia() {
+        if (instanciaUnica == null) {
+            instanciaUnica = new FavoritosEnMemoria();
+        }
+        return instanciaUnica;
+    }
+
+    // Nos dice si los ids que tenemos son de este usuario. Si no, habrá que cargarlos de la BBDD local o del servidor.
+    public synchronized boolean perteneceA(int idUsuario) {
+        return this.idUsuario == idUsuario;
+    }
+
+    // Sustituimos el contenido por las cámaras favoritas que nos ha devuelto el servidor.
+    public synchronized void reemplazarConCamaras(int idUsuario, List<Camara> camaras) {
+        this.idUsuario = idUsuario;
+        idsCamaras.vaciar();
+        if (camaras == null)
+            return;
+        for (Camara c : camaras)
+            idsCamaras.anadir(c.getId());
+    }
+
+    // Lo mismo, pero a partir de los favoritos guardados en SQLite.
+    public synchronized void reemplazarConFavoritos(int idUsuario, List<Favorito> favoritos) {
+        this.idUsuario = idUsuario;
+        idsCamaras.vaciar();
+        for (Favorito f : favoritos)
+            idsCamaras.anadir(f.getIdCamara());
+    }
+
+    public synchronized boolean contiene(int idCamara) {
+        return idsCamaras.contiene(idCamara);
+    }
+
+    public synchronized void anadir(int idCamara) {
+        idsCamaras.anadir(idCamara);
+    }
+
+    public synchronized void quitar(int idCamara) {
+        idsCamaras.quitar(idCamara);
+    }
+
+    // Al cerrar sesión olvidamos los favoritos para que el siguiente usuario no los vea.
+    public synchronized void vaciar() {
+        idsCamaras.vaciar();
+        idUsuario = -1;
+    }
+}
@@ -0,0 +1,116 @@
+package com.infocam.mapa;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import org.osmdroid.api.IGeoPoint;
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.views.MapView;
+
+import java.util.ArrayDeque;
+
+/* Adelanto (prefetch): mientras se arrastra el mapa, estima hacia dónde va y prepara esa zona antes de que se vea.
+ * 1. Cada evento de desplazamiento se apunta en PrediccionDesplazamiento; si cambia el rumbo, se descarta lo que estaba en cola.
+ * 2. Cada INTERVALO_ADELANTO_MS se calcula dónde estará lo visible dentro de HORIZONTE_PREDICCION_MS y se avisa a quien pinta el mapa
+ *    (ZonaPrevista), que decide si tiene que consultar ya los puntos de esa zona.
+ * 3. También se piden a osmdroid las teselas de esa zona que aún no están en pantalla, pocas en cada paso para no acaparar las
+ *    descargas de lo que sí se ve.
+ * Todo se hace en el hilo principal, igual que los eventos del MapView. */
+public class AdelantoMapa {
+    private static final long HORIZONTE_PREDICCION_MS = 800;
+    private static final long INTERVALO_ADELANTO_MS = 100;
+    private static final int MAXIMO_TESELAS_POR_PASO = 6; // Tope de teselas que pedimos a osmdroid en cada paso
+    private static final int MAXIMO_TESELAS_EN_COLA = 36;
+
+    public interface ZonaPrevista {
+        // desplazamiento = {dLat, dLng} desde lo que se ve ahora hasta lo que se verá dentro de HORIZONTE_PREDICCION_MS
+        void alPrever(BoundingBox visible, double[] desplazamiento);
+    }
+
+    private final MapView mapa;
+    private final ZonaPrevista zonaPrevista;
+    private final PrediccionDesplazamiento prediccion = new PrediccionDesplazamiento();
+    private final ArrayDeque<Long> teselasPorAdelantar = new ArrayDeque<>();
+    private final Handler manejador = new Handler(Looper.getMainLooper());
+    private final Runnable pasoAdelanto = this::adelantarZonaPrevista;
+    private boolean adelantoProgramado = false;
+
+    public AdelantoMapa(MapView mapa, ZonaPrevista zonaPrevista) {
+        this.mapa = mapa;
+        this.zonaPrevista = zonaPrevista;
+    }
+
+    // Desde MapListener.onScroll().
+    public void alDesplazar() {
+        IGeoPoint centro = mapa.getMapCenter();
+        if (prediccion.registrar(SystemClock.uptimeMillis(), centro.getLatitude(), centro.getLongitude()))
+            teselasPorAdelantar.clear(); // Ha cambiado el rumbo: lo que íbamos a pedir ya no hace falta
+        programarAdelanto();
+    }
+
+    // Desde MapListener.onZoom(): al hacer zoom no hay un desplazamiento que predecir.
+    public void alHacerZoom() {
+        prediccion.reiniciar();
+        teselasPorAdelantar.clear();
+    }
+
+    // Cuando el MapView deja de existir (onDestroyView).
+    public void detener() {
+        manejador.removeCallbacks(pasoAdelanto);
+        adelantoProgramado = false;
+        teselasPorAdelantar.clear();
+        prediccion.reiniciar();
+    }
+
+    private void programarAdelanto() {
+        if (adelantoProgramado)
+            return;
+        adelantoProgramado = true;
+        manejador.postDelayed(pasoAdelanto, INTERVALO_ADELANTO_MS);
+    }
+
+    private void adelantarZonaPrevista() {
+        adelantoProgramado = false;
+        if (mapa.getWidth() == 0)
+            return;
+
+        double[] desplazamiento = prediccion.predecir(HORIZONTE_PREDICCION_MS);
+        if (desplazamiento != null) {
+            BoundingBox visible = mapa.getBoundingBox();
+            zonaPrevista.alPrever(visible, desplazamiento);
+            if (teselasPorAdelantar.isEmpty())
+                encolarTeselasPrevistas(visible, desplazamiento);
+        }
+
+        // getMapTile() no bloquea: si la tesela no está en memoria, osmdroid la carga (del disco o de la red) en sus propios hilos
+        for (int k = 0; k < MAXIMO_TESELAS_POR_PASO && !teselasPorAdelantar.isEmpty(); k++)
+            mapa.getTileProvider().getMapTile(teselasPorAdelantar.poll());
+        if (!teselasPorAdelantar.isEmpty())
+            programarAdelanto();
+    }
+
+    // Teselas de la zona prevista que todavía no están en pantalla, al zoom actual.
+    private void encolarTeselasPrevistas(BoundingBox visible, double[] desplazamiento) {
+        int zoom = (int) Math.floor(mapa.getZoomLevelDouble());
+        int xMinVisible = DescargadorTeselas.columna(visible.getLonWest(), zoom);
+        int xMaxVisible = DescargadorTeselas.columna(visible.getLonEast(), zoom);
+        int yMinVisible = DescargadorTeselas.fila(visible.getLatNorth(), zoom);
+        int yMaxVisible = DescargadorTeselas.fila(visible.getLatSouth(), zoom);
+        int xMin = DescargadorTeselas.columna(visible.getLonWest() + desplazamiento[1], zoom);
+        int xMax = DescargadorTeselas.columna(visible.getLonEast() + desplazamiento[1], zoom);
+        int yMin = DescargadorTeselas.fila(visible.getLatNorth() + desplazamiento[0], zoom);
+        int yMax = DescargadorTeselas.fila(visible.getLatSouth() + desplazamiento[0], zoom);
+
+        for (int x = xMin; x <= xMax; x++) {
+            for (int y = yMin; y <= yMax; y++) {
+                if (x >= xMinVisible && x <= xMaxVisible && y >= yMinVisible && y <= yMaxVisible)
+                    continue; // Ya se está pintando
+                if (teselasPorAdelantar.size() >= MAXIMO_TESELAS_EN_COLA)
+                    return;
+                teselasPorAdelantar.add(MapTileIndex.getTileIndex(zoom, x, y));
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.infocam.mapa;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Esta clase agrupa los puntos cercanos del mapa (cámaras o incidencias) en "burbujas" con un contador. Con miles de marcadores el mapa se
+ * vuelve lento al mover o hacer zoom, así que dividimos el mundo en una rejilla de celdas de TAMANO_CELDA_PX píxeles (al zoom actual) y
+ * juntamos todos los puntos que caen en la misma celda.
+ * No depende de Android: solo trabaja con coordenadas, por lo que podemos lanzarla en un hilo secundario sin tocar la interfaz. */
+public class AgrupadorMarcadores {
+    // Tamaño de cada celda de la rejilla, en píxeles de pantalla (aproximadamente el tamaño de un icono y medio).
+    public static final int TAMANO_CELDA_PX = 80;
+    // A partir de este zoom ya no agrupamos: las calles se ven lo bastante grandes como para mostrar cada punto por separado.
+    public static final double ZOOM_SIN_AGRUPAR = 17.0;
+
+    private static final double TAMANO_TESELA = 256.0;
+
+    // Cada grupo representa una burbuja en el mapa. Si solo contiene un punto, "indiceUnico" nos dice cuál es para dibujarlo normal.
+    public static class Grupo {
+        private double sumaLat, sumaLng;
+        private double latMin = Double.MAX_VALUE, latMax = -Double.MAX_VALUE;
+        private double lngMin = Double.MAX_VALUE, lngMax = -Double.MAX_VALUE;
+        private int cantidad;
+        private int indiceUnico = -1;
+
+        private void anadir(int indice, double lat, double lng) {
+            sumaLat += lat;
+            sumaLng += lng;
+            if (lat < latMin) latMin = lat;
+            if (lat > latMax) latMax = lat;
+            if (lng < lngMin) lngMin = lng;
+            if (lng > lngMax) lngMax = lng;
+            indiceUnico = (cantidad == 0) ? indice : -1;
+            cantidad++;
+        }
+
+        // La posición de la burbuja será el centro (media) de todos sus puntos.
+        public double getLatitud() {
+            return sumaLat / cantidad;
+        }
+
+        public double getLongitud() {
+            return sumaLng / cantidad;
+        }
+
+        public int getCantidad() {
+            return cantidad;
+        }
+
+        // Devuelve la posición del punto en la lista original, o -1 si el grupo tiene más de un punto.
+        public int getIndiceUnico() {
+            return indiceUnico;
+        }
+
+        public double getLatMin() {
+            return latMin;
+        }
+
+        public double getLatMax() {
+            return latMax;
+        }
+
+        public double getLngMin() {
+            return lngMin;
+        }
+
+        public double getLngMax() {
+            return lngMax;
+        }
+    }
+
+    /* Agrupamos "total" puntos (latitudes[i], longitudes[i]) para el nivel de zoom indicado. Solo se usa la parte entera del zoom, así el
+     * resultado no cambia con cada pequeño gesto de pellizco y podemos reutilizarlo mientras el usuario no cambie de nivel. */
+    public List<Grupo> agrupar(double[] latitudes, double[] longitudes, int total, double zoom) {
+        List<Grupo> resultado = new ArrayList<>();
+        if (total <= 0)
+            return resultado;
+
+        // Con mucho zoom cada punto es su propio grupo.
+        if (zoom >= ZOOM_SIN_AGRUPAR) {
+            for (int i = 0; i < total; i++) {
+                Grupo g = new Grupo();
+                g.anadir(i, latitudes[i], longitudes[i]);
+                resultado.add(g);
+            }
+            return resultado;
+        }
+
+        double tamanoMundo = TAMANO_TESELA * Math.pow(2, Math.floor(zoom));
+        Map<Long, Grupo> celdas = new HashMap<>();
+
+        for (int i = 0; i < total; i++) {
+            long celdaX = (long) Math.floor(xPixel(longitudes[i], tamanoMundo) / TAMANO_CELDA_PX);
+            long celdaY = (long) Math.floor(yPixel(latitudes[i], tamanoMundo) / TAMANO_CELDA_PX);
+            long clave = (celdaX << 32) | (celdaY & 0xffffffffL);
+
+            Grupo g = celdas.get(clave);
+            if (g == null) {
+                g = new Grupo();
+                celdas.put(clave, g);
+                resultado.add(g); // Mantenemos el orden de aparición para que el resultado sea estable.
+            }
+            g.anadir(i, latitudes[i], longitudes[i]);
+        }
+        return resultado;
+    }
+
+    // Proyección Web Mercator (la misma que usan las teselas de OpenStreetMap) para pasar de grados a píxeles.
+    private static double xPixel(double longitud, double tamanoMundo) {
+        return (longitud + 180.0) / 360.0 * tamanoMundo;
+    }
+
+    private static double yPixel(double latitud, double tamanoMundo) {
+        double lat = Math.max(-85.05112878, Math.min(85.05112878, latitud));
+        double senoLat = Math.sin(Math.toRadians(lat));
+        return (0.5 - Math.log((1 + senoLat) / (1 - senoLat)) / (4 * Math.PI)) * tamanoMundo;
+    }
+}
@@ -0,0 +1,84 @@
+package com.infocam.mapa;
+
+import android.graphics.Bitmap;
+
+import com.infocam.model.Incidencia;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Mapa de calor de las incidencias que dejan pasar los filtros, ya convertido en Bitmap para CapaMapaCalor.
+ * 1. El MapaCalor (con los zooms que ya ha calculado) se reutiliza mientras no cambien las incidencias ni los filtros de tipo.
+ * 2. Solo se guardan las IMAGENES_GUARDADAS imágenes usadas más recientemente (en la práctica, el zoom actual y sus vecinos). Como los
+ *    zooms altos comparten un mismo MapaCalor.Resultado, también comparten Bitmap.
+ * 3. Las imágenes que salen de la caché no se reciclan en el momento, porque la capa puede estar pintando alguna todavía: esperan en
+ *    "descartadas" hasta que el hilo principal llama a reciclarDescartadas() con la que tiene puesta.
+ * generar() y obtenerImagen() se llaman desde el hilo de agrupación; reciclarDescartadas(), desde el principal. */
+public class CalorIncidencias {
+    private static final int IMAGENES_GUARDADAS = 3;
+
+    private MapaCalor mapaCalor;
+    private CapaIndexada<Incidencia> origen;
+    private boolean conOficiales, conUsuarios;
+    private final List<Bitmap> descartadas = new ArrayList<>();
+    private final LinkedHashMap<MapaCalor.Resultado, Bitmap> imagenes =
+            new LinkedHashMap<MapaCalor.Resultado, Bitmap>(IMAGENES_GUARDADAS + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<MapaCalor.Resultado, Bitmap> masAntigua) {
+                    if (size() <= IMAGENES_GUARDADAS)
+                        return false;
+                    descartadas.add(masAntigua.getValue());
+                    return true;
+                }
+            };
+
+    // Densidad de las incidencias de la capa (solo las de los tipos pedidos) para ese zoom, o null si no queda ninguna.
+    public synchronized MapaCalor.Resultado generar(CapaIndexada<Incidencia> capa, boolean conOficiales, boolean conUsuarios,
+            int zoom) {
+        if (mapaCalor == null || origen != capa || this.conOficiales != conOficiales || this.conUsuarios != conUsuarios) {
+            List<Incidencia> incidencias = capa.getElementos();
+            double[] lat = new double[incidencias.size()], lng = new double[incidencias.size()];
+            int total = 0;
+            for (Incidencia i : incidencias) {
+                if (i.isOficial() ? !conOficiales : !conUsuarios)
+                    continue;
+                lat[total] = i.getLatitud();
+                lng[total] = i.getLongitud();
+                total++;
+            }
+            mapaCalor = new MapaCalor(lat, lng, total);
+            origen = capa;
+            this.conOficiales = conOficiales;
+            this.conUsuarios = conUsuarios;
+            descartadas.addAll(imagenes.values()); // Son de los datos anteriores
+            imagenes.clear();
+        }
+        return mapaCalor.generar(zoom);
+    }
+
+    public synchronized Bitmap obtenerImagen(MapaCalor.Resultado zona) {
+        if (zona == null)
+            return null;
+        Bitmap imagen = imagenes.get(zona);
+        if (imagen == null) {
+            imagen = Bitmap.createBitmap(zona.getPixeles(), zona.getAncho(), zona.getAlto(), Bitmap.Config.ARGB_8888);
+            imagenes.put(zona, imagen);
+        }
+        return imagen;
+    }
+
+    // Libera las imágenes que ya no están en la caché, menos la que la capa sigue pintando (esa se queda para la próxima vez).
+    public synchronized void reciclarDescartadas(Bitmap enUso) {
+        Iterator<Bitmap> it = descartadas.iterator();
+        while (it.hasNext()) {
+            Bitmap imagen = it.next();
+            if (imagen == enUso)
+                continue;
+            imagen.recycle();
+            it.remove();
+        }
+    }
+}
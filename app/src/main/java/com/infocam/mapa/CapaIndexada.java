@@ -0,0 +1,61 @@
+package com.infocam.mapa;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* Una capa del mapa (cámaras o incidencias) junto con su índice espacial. La lista no cambia nunca: cuando llegan datos nuevos se crea
+ * otra CapaIndexada. Así el hilo de agrupación puede consultarla tranquilamente aunque el hilo principal ya haya recibido datos nuevos.
+ * El índice se construye la primera vez que se busca, normalmente desde el hilo de agrupación, para no bloquear la interfaz. */
+public class CapaIndexada<T> {
+    private final List<T> elementos;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private IndiceEspacial indice;
+
+    public CapaIndexada(List<T> elementos, double[] latitudes, double[] longitudes) {
+        this.elementos = elementos;
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+    }
+
+    public List<T> getElementos() {
+        return elementos;
+    }
+
+    // Devuelve los elementos que caen dentro del rectángulo indicado usando el índice espacial (que no admite búsquedas simultáneas).
+    public synchronized List<T> buscar(double latSur, double lngOeste, double latNorte, double lngEste) {
+        int[] posiciones = obtenerIndice().buscar(latSur, lngOeste, latNorte, lngEste);
+        List<T> resultado = new ArrayList<>(posiciones.length);
+        for (int p : posiciones)
+            resultado.add(elementos.get(p));
+        return resultado;
+    }
+
+    // Elementos a menos de "metros" de la línea formada por los puntos (latLinea[i], lngLinea[i]).
+    public synchronized List<T> buscarCercaDeLinea(double[] latLinea, double[] lngLinea, int vertices, double metros) {
+        int[] posiciones = obtenerIndice().buscarCercaDeLinea(latLinea, lngLinea, vertices, metros);
+        List<T> resultado = new ArrayList<>(posiciones.length);
+        for (int p : posiciones)
+            resultado.add(elementos.get(p));
+        return resultado;
+    }
+
+    // Posiciones (en getElementos()) de los k elementos más cercanos al punto, del más cercano al más lejano.
+    public synchronized int[] cercanos(double lat, double lng, int k) {
+        return obtenerIndice().cercanos(lat, lng, k);
+    }
+
+    public double getLatitud(int posicion) {
+        return latitudes[posicion];
+    }
+
+    public double getLongitud(int posicion) {
+        return longitudes[posicion];
+    }
+
+    private IndiceEspacial obtenerIndice() {
+        if (indice == null)
+            indice = new IndiceEspacial(latitudes, longitudes, elementos.size());
+        return indice;
+    }
+}
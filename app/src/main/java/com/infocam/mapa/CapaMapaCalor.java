@@ -0,0 +1,49 @@
+package com.infocam.mapa;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Point;
+import android.graphics.Rect;
+
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Overlay;
+
+/* Capa que pinta la imagen de densidad de MapaCalor estirada sobre la zona geográfica que cubre. La imagen se calcula (y el Bitmap se crea)
+ * en el hilo de agrupación; aquí solo se proyectan las dos esquinas y se dibuja, con filtrado para que las celdas no se vean cuadradas. */
+public class CapaMapaCalor extends Overlay {
+    private final Paint pintura = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final GeoPoint esquina = new GeoPoint(0.0, 0.0);
+    private final Point pixelNoroeste = new Point();
+    private final Point pixelSureste = new Point();
+    private final Rect destino = new Rect();
+
+    private Bitmap imagen;
+    private MapaCalor.Resultado zona;
+
+    // Devuelve true si cambia lo que se ve. Con null la capa no pinta nada.
+    public boolean setImagen(Bitmap imagen, MapaCalor.Resultado zona) {
+        boolean cambia = this.imagen != imagen;
+        this.imagen = imagen;
+        this.zona = zona;
+        return cambia;
+    }
+
+    @Override
+    public void draw(Canvas lienzo, MapView mapa, boolean sombra) {
+        Bitmap actual = imagen;
+        MapaCalor.Resultado z = zona;
+        if (sombra || actual == null || z == null)
+            return;
+
+        Projection proyeccion = mapa.getProjection();
+        esquina.setCoords(z.getNorte(), z.getOeste());
+        proyeccion.toPixels(esquina, pixelNoroeste);
+        esquina.setCoords(z.getSur(), z.getEste());
+        proyeccion.toPixels(esquina, pixelSureste);
+        destino.set(pixelNoroeste.x, pixelNoroeste.y, pixelSureste.x, pixelSureste.y);
+        lienzo.drawBitmap(actual, null, destino, pintura);
+    }
+}
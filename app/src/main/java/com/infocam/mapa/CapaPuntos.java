@@ -0,0 +1,160 @@
+package com.infocam.mapa;
+
+import android.graphics.Canvas;
+import android.graphics.Point;
+import android.graphics.Rect;
+import android.view.MotionEvent;
+
+import org.osmdroid.api.IGeoPoint;
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.Projection;
+import org.osmdroid.views.overlay.Overlay;
+
+import java.util.List;
+
+/* Una única capa (Overlay) que dibuja de golpe todas las cámaras e incidencias sueltas que se ven en el mapa.
+ * Con un Marker por punto, osmdroid tenía que recorrer miles de objetos (cada uno con su Drawable, su GeoPoint y su InfoWindow) en cada
+ * fotograma y en cada pulsación. Aquí:
+ * 1. Las coordenadas se guardan en arrays de tipos primitivos dentro de un Lote, que se prepara en el hilo de agrupación.
+ * 2. Todos los iconos salen del mismo atlas de IconosMapa, y al dibujar no se crea ningún objeto nuevo ni se espera a ningún bloqueo.
+ * 3. Para saber qué punto se ha pulsado se consulta un IndiceEspacial con la zona que hay bajo el dedo, en vez de preguntar a cada marcador.
+ * Los iconos se anclan como los antiguos marcadores: centrados en horizontal y con la punta abajo, sobre la coordenada. */
+public class CapaPuntos extends Overlay {
+
+    // Lo que hay que hacer al pulsar un punto (normalmente, abrir su ventana de detalle).
+    public interface AlPulsarPunto {
+        void alPulsar(Object elemento, GeoPoint posicion, int altoIcono);
+    }
+
+    /* Puntos que se dibujan en una pasada. Es inmutable: se construye entero en segundo plano (índice incluido) y se entrega a la capa de
+     * una sola vez, así el hilo principal nunca ve un lote a medias. */
+    public static class Lote {
+        private final List<?> elementos;
+        private final double[] latitudes;
+        private final double[] longitudes;
+        private final int[] iconos; // Icono de cada punto (IconosMapa.CAMARA, IconosMapa.FAVORITA...).
+        private final IndiceEspacial indice;
+
+        public Lote(List<?> elementos, double[] latitudes, double[] longitudes, int[] iconos) {
+            this.elementos = elementos;
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.iconos = iconos;
+            this.indice = new IndiceEspacial(latitudes, longitudes, elementos.size());
+        }
+
+        // Nos dice si ambos lotes pintan exactamente lo mismo (mismos objetos con los mismos iconos), para no redibujar en balde.
+        public boolean mismosPuntos(Lote otro) {
+            if (otro == null || otro.elementos.size() != elementos.size())
+                return false;
+            for (int k = 0; k < elementos.size(); k++) {
+                if (otro.elementos.get(k) != elementos.get(k) || otro.iconos[k] != iconos[k])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private final IconosMapa iconos;
+    private Lote lote;
+    private AlPulsarPunto alPulsar;
+
+    // Objetos reutilizados en cada dibujado y en cada pulsación para no crear nada por punto.
+    private final GeoPoint puntoGeo = new GeoPoint(0.0, 0.0);
+    private final Point puntoPantalla = new Point();
+    private final Rect zonaVisible = new Rect();
+    private final Rect destino = new Rect();
+
+    // Atlas con el que dibujamos y la versión de IconosMapa en la que se pidió. Solo se vuelve a pedir cuando IconosMapa lo ha soltado
+    // (por falta de memoria o por un cambio de densidad), así el dibujado no entra en cada fotograma en su synchronized.
+    private IconosMapa.Atlas atlas;
+    private int versionAtlas;
+
+    public CapaPuntos(IconosMapa iconos) {
+        this.iconos = iconos;
+    }
+
+    // Devuelve true si el lote nuevo cambia algo de lo que se ve (y, por tanto, hay que redibujar el mapa).
+    public boolean setLote(Lote nuevo) {
+        boolean cambia = nuevo == null ? lote != null : !nuevo.mismosPuntos(lote);
+        lote = nuevo;
+        return cambia;
+    }
+
+    public void setAlPulsar(AlPulsarPunto alPulsar) {
+        this.alPulsar = alPulsar;
+    }
+
+    @Override
+    public void draw(Canvas lienzo, MapView mapa, boolean sombra) {
+        Lote actual = lote;
+        if (sombra || actual == null)
+            return;
+
+        Projection proyeccion = mapa.getProjection();
+        IconosMapa.Atlas atlas = atlasActual();
+        lienzo.getClipBounds(zonaVisible);
+        int total = actual.elementos.size();
+        for (int k = 0; k < total; k++) {
+            puntoGeo.setCoords(actual.latitudes[k], actual.longitudes[k]);
+            proyeccion.toPixels(puntoGeo, puntoPantalla);
+            Rect icono = atlas.getZona(actual.iconos[k]);
+            int izquierda = puntoPantalla.x - icono.width() / 2;
+            int arriba = puntoPantalla.y - icono.height();
+            // Los que caen fuera de la pantalla (por el margen de la consulta) ni siquiera se mandan a dibujar
+            if (izquierda > zonaVisible.right || izquierda + icono.width() < zonaVisible.left
+                    || arriba > zonaVisible.bottom || puntoPantalla.y < zonaVisible.top)
+                continue;
+            destino.set(izquierda, arriba, izquierda + icono.width(), puntoPantalla.y);
+            lienzo.drawBitmap(atlas.getImagen(), icono, destino, null);
+        }
+    }
+
+    @Override
+    public boolean onSingleTapConfirmed(MotionEvent evento, MapView mapa) {
+        Lote actual = lote;
+        if (actual == null || alPulsar == null || actual.elementos.isEmpty())
+            return false;
+
+        // El icono queda por encima de su coordenada, así que los puntos que nos interesan están bajo el dedo o un poco más abajo.
+        Projection proyeccion = mapa.getProjection();
+        IconosMapa.Atlas atlas = atlasActual();
+        int x = (int) evento.getX();
+        int y = (int) evento.getY();
+        IGeoPoint suroeste = proyeccion.fromPixels(x - atlas.getAnchoMaximo() / 2, y + atlas.getAltoMaximo());
+        IGeoPoint noreste = proyeccion.fromPixels(x + atlas.getAnchoMaximo() / 2, y);
+        int[] candidatos = actual.indice.buscar(suroeste.getLatitude(), suroeste.getLongitude(),
+                noreste.getLatitude(), noreste.getLongitude());
+
+        // Si se solapan varios, elegimos el que se dibujó el último (el que se ve encima).
+        int elegido = -1;
+        for (int k : candidatos) {
+            if (k < elegido)
+                continue;
+            puntoGeo.setCoords(actual.latitudes[k], actual.longitudes[k]);
+            proyeccion.toPixels(puntoGeo, puntoPantalla);
+            Rect icono = atlas.getZona(actual.iconos[k]);
+            if (Math.abs(x - puntoPantalla.x) <= icono.width() / 2 && y <= puntoPantalla.y
+                    && y >= puntoPantalla.y - icono.height())
+                elegido = k;
+        }
+        if (elegido < 0)
+            return false;
+
+        alPulsar.alPulsar(actual.elementos.get(elegido),
+                new GeoPoint(actual.latitudes[elegido], actual.longitudes[elegido]),
+                atlas.getZona(actual.iconos[elegido]).height());
+        return true;
+    }
+
+    // Se lee la versión antes de pedir el atlas: si IconosMapa lo suelta entre medias, en el siguiente dibujado se pedirá otra vez.
+    private IconosMapa.Atlas atlasActual() {
+        int version = iconos.getVersion();
+        if (atlas == null || version != versionAtlas) {
+            versionAtlas = version;
+            atlas = iconos.obtenerAtlas();
+        }
+        return atlas;
+    }
+}
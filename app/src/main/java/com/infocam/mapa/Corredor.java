@@ -0,0 +1,40 @@
+package com.infocam.mapa;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/* Una ruta (línea de varios puntos) con una anchura: el "corredor" de METROS a cada lado por el que va a pasar el conductor.
+ * No cambia nunca: al añadir un punto a la ruta se crea otro Corredor. Gracias a eso puede guardar lo que ya ha buscado en cada capa y, al
+ * mover o reagrupar el mapa, no se vuelve a consultar el índice hasta que cambien la ruta o los datos. */
+public class Corredor {
+    private static final int MAXIMO_CAPAS_GUARDADAS = 4;
+
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final double metros;
+    private final Map<CapaIndexada<?>, List<?>> resultados = new IdentityHashMap<>();
+
+    public Corredor(double[] latitudes, double[] longitudes, double metros) {
+        this.latitudes = latitudes;
+        this.longitudes = longitudes;
+        this.metros = metros;
+    }
+
+    public int getVertices() {
+        return latitudes.length;
+    }
+
+    // Elementos de la capa que caen dentro del corredor. La lista devuelta no debe modificarse.
+    @SuppressWarnings("unchecked")
+    public synchronized <T> List<T> buscar(CapaIndexada<T> capa) {
+        List<T> guardado = (List<T>) resultados.get(capa);
+        if (guardado != null)
+            return guardado;
+        if (resultados.size() >= MAXIMO_CAPAS_GUARDADAS)
+            resultados.clear(); // Son capas antiguas, reemplazadas por datos nuevos
+        List<T> encontrados = capa.buscarCercaDeLinea(latitudes, longitudes, latitudes.length, metros);
+        resultados.put(capa, encontrados);
+        return encontrados;
+    }
+}
@@ -0,0 +1,100 @@
+package com.infocam.mapa;
+
+import com.infocam.model.Camara;
+import com.infocam.model.Incidencia;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/* Aquí guardamos en memoria lo último que hemos descargado del servidor para el mapa: cámaras e incidencias (los favoritos los lleva
+ * FavoritosEnMemoria).
+ * Gracias a esto, cuando el usuario cambia un filtro no hace falta volver a pedir nada a la API: filtramos estas listas y repintamos.
+ * Cada capa recuerda cuándo se descargó, y solo se vuelve a pedir al servidor cuando han pasado más de "vigenciaMs" (por defecto
+ * VIGENCIA_MS, se puede cambiar al crearlo). Al abrir el mapa se rellena primero con la copia guardada en SQLite y después se revalida
+ * con el servidor. */
+public class DatosMapa {
+    // Tiempo durante el que consideramos, por defecto, que los datos descargados siguen siendo válidos.
+    public static final long VIGENCIA_MS = 2 * 60 * 1000;
+    private final long vigenciaMs;
+
+    // Cada capa lleva su propio índice espacial para consultar solo lo que se ve en pantalla.
+    private CapaIndexada<Camara> camaras = indexarCamaras(new ArrayList<>());
+    private CapaIndexada<Incidencia> incidencias = indexarIncidencias(new ArrayList<>());
+    private long momentoCamaras = 0;
+    private long momentoIncidencias = 0;
+
+    public DatosMapa() {
+        this(VIGENCIA_MS);
+    }
+
+    public DatosMapa(long vigenciaMs) {
+        this.vigenciaMs = vigenciaMs;
+    }
+
+    public CapaIndexada<Camara> getCamaras() {
+        return camaras;
+    }
+
+    public void setCamaras(List<Camara> camaras) {
+        this.camaras = indexarCamaras(camaras);
+        this.momentoCamaras = System.currentTimeMillis();
+    }
+
+    // Cámaras que aún se están descargando por partes. No cuenta como descarga: la capa sigue caducada hasta que llegue setCamaras().
+    public void setCamarasParciales(List<Camara> camaras) {
+        this.camaras = indexarCamaras(camaras);
+    }
+
+    public CapaIndexada<Incidencia> getIncidencias() {
+        return incidencias;
+    }
+
+    public void setIncidencias(List<Incidencia> incidencias) {
+        this.incidencias = indexarIncidencias(incidencias);
+        this.momentoIncidencias = System.currentTimeMillis();
+    }
+
+    /* Cargamos los datos guardados en SQLite junto al momento en que se descargaron. Si mientras leíamos la BBDD ya ha llegado una
+     * respuesta más reciente del servidor, esa capa no se sobrescribe. */
+    public void cargarDesdeCache(List<Camara> camarasGuardadas, long momentoCamarasGuardadas,
+            List<Incidencia> incidenciasGuardadas, long momentoIncidenciasGuardadas) {
+        if (momentoCamaras < momentoCamarasGuardadas) {
+            camaras = indexarCamaras(camarasGuardadas);
+            momentoCamaras = momentoCamarasGuardadas;
+        }
+        if (momentoIncidencias < momentoIncidenciasGuardadas) {
+            incidencias = indexarIncidencias(incidenciasGuardadas);
+            momentoIncidencias = momentoIncidenciasGuardadas;
+        }
+    }
+
+    // Nos dice si hay que volver a pedir los datos al servidor (nunca se han descargado o ya han caducado).
+    public boolean estaCaducado() {
+        long ahora = System.currentTimeMillis();
+        return ahora - momentoCamaras > vigenciaMs || ahora - momentoIncidencias > vigenciaMs;
+    }
+
+    private static CapaIndexada<Camara> indexarCamaras(List<Camara> lista) {
+        double[] lat = new double[lista.size()], lng = new double[lista.size()];
+        for (int k = 0; k < lista.size(); k++) {
+            lat[k] = lista.get(k).getLatitud();
+            lng[k] = lista.get(k).getLongitud();
+        }
+        return new CapaIndexada<>(lista, lat, lng);
+    }
+
+    private static CapaIndexada<Incidencia> indexarIncidencias(List<Incidencia> lista) {
+        double[] lat = new double[lista.size()], lng = new double[lista.size()];
+        for (int k = 0; k < lista.size(); k++) {
+            lat[k] = lista.get(k).getLatitud();
+            lng[k] = lista.get(k).getLongitud();
+        }
+        return new CapaIndexada<>(lista, lat, lng);
+    }
+
+    // Forzamos la próxima descarga, por ejemplo tras crear una incidencia nueva.
+    public void invalidar() {
+        momentoCamaras = 0;
+        momentoIncidencias = 0;
+    }
+}
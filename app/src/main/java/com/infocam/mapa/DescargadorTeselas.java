@@ -0,0 +1,202 @@
+package com.infocam.mapa;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.infocam.data.ArchivoTeselas;
+import com.infocam.model.Favorito;
+
+import org.osmdroid.config.Configuration;
+import org.osmdroid.tileprovider.tilesource.OnlineTileSourceBase;
+import org.osmdroid.util.BoundingBox;
+import org.osmdroid.util.MapTileIndex;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Call;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/* Descarga por adelantado las teselas de una zona y un rango de zooms y las guarda en ArchivoTeselas, para que el mapa se vea sin conexión
+ * (y sin esperas) en esa zona.
+ * 1. Las teselas se piden de una en una, en un único hilo, para no saturar el servidor de mapas.
+ * 2. Las que ya están en el archivo se saltan (pero se marcan como usadas, para que no se borren antes que las de otras zonas).
+ * 3. El progreso y el resultado se avisan en el hilo principal, así se pueden pintar directamente en la interfaz.
+ * Se respeta la política de uso de la fuente: si no admite descargas masivas (como el servidor de OpenStreetMap), se quitan los zooms
+ * más altos hasta que la descarga quede por debajo de LIMITE_SIN_DESCARGA_MASIVA teselas.
+ * Tampoco se pide más de lo que cabe en el presupuesto del archivo: si no, al final de la descarga el recorte LRU empezaría a borrar
+ * las primeras teselas de esa misma descarga. Antes de empezar se estima con TAMANO_TESELA_ESTIMADO (y se bajan zooms igual que con
+ * el límite anterior) y, durante la descarga, se para en cuanto la siguiente tesela (con el tamaño medio de las que van) ya no
+ * quepa en el 90 % del presupuesto, que es hasta donde recorta ArchivoTeselas. */
+public class DescargadorTeselas {
+    public static final int ZOOM_MINIMO_DEFECTO = 12;
+    public static final int ZOOM_MAXIMO_DEFECTO = 16;
+    private static final int LIMITE_SIN_DESCARGA_MASIVA = 250;
+    private static final int LIMITE_TESELAS = 5000;
+    // Una tesela PNG de OpenStreetMap ocupa de 10 a 30 KB; con los 64 MB por defecto caben unas 2400, menos que LIMITE_TESELAS.
+    public static final int TAMANO_TESELA_ESTIMADO = 24 * 1024;
+    private static final double MARGEN_FAVORITOS_GRADOS = 0.01; // Algo más de 1 km alrededor de los favoritos
+
+    public interface Progreso {
+        void alAvanzar(int hechas, int total);
+
+        void alTerminar(int descargadas, int fallidas, boolean cancelada);
+    }
+
+    private final ArchivoTeselas archivo;
+    private final OnlineTileSourceBase fuente;
+    private final OkHttpClient clienteHttp = new OkHttpClient();
+    private final ExecutorService hilo = Executors.newSingleThreadExecutor();
+    private final Handler hiloPrincipal = new Handler(Looper.getMainLooper());
+    private volatile boolean cancelada = false;
+    private volatile Call enCurso; // La petición de la tesela que se está bajando, para poder cortarla al cerrar
+
+    public DescargadorTeselas(ArchivoTeselas archivo, OnlineTileSourceBase fuente) {
+        this.archivo = archivo;
+        this.fuente = fuente;
+    }
+
+    // Zona por defecto: la que envuelve las cámaras favoritas del usuario, con un pequeño margen. Devuelve null si no tiene favoritos.
+    public static BoundingBox zonaDeFavoritos(List<Favorito> favoritos) {
+        if (favoritos == null || favoritos.isEmpty())
+            return null;
+        double norte = -90, sur = 90, este = -180, oeste = 180;
+        for (Favorito f : favoritos) {
+            norte = Math.max(norte, f.getLatitud());
+            sur = Math.min(sur, f.getLatitud());
+            este = Math.max(este, f.getLongitud());
+            oeste = Math.min(oeste, f.getLongitud());
+        }
+        return new BoundingBox(Math.min(norte + MARGEN_FAVORITOS_GRADOS, 85), Math.min(este + MARGEN_FAVORITOS_GRADOS, 180),
+                Math.max(sur - MARGEN_FAVORITOS_GRADOS, -85), Math.max(oeste - MARGEN_FAVORITOS_GRADOS, -180));
+    }
+
+    // Número de teselas que cubren la zona entre esos zooms (ambos incluidos).
+    public static int contarTeselas(BoundingBox zona, int zoomMinimo, int zoomMaximo) {
+        long total = 0;
+        for (int z = zoomMinimo; z <= zoomMaximo; z++) {
+            long columnas = columna(zona.getLonEast(), z) - columna(zona.getLonWest(), z) + 1;
+            long filas = fila(zona.getLatSouth(), z) - fila(zona.getLatNorth(), z) + 1;
+            total += columnas * filas;
+        }
+        return (int) Math.min(total, Integer.MAX_VALUE);
+    }
+
+    /* Lanza la descarga en segundo plano. Devuelve el zoom máximo que realmente se va a descargar, que puede ser menor que el pedido si
+     * la zona era demasiado grande para los límites. */
+    public int descargar(BoundingBox zona, int zoomMinimo, int zoomMaximo, Progreso progreso) {
+        long cabenBytes = archivo.getPresupuestoBytes() * 9 / 10;
+        int limite = fuente.getTileSourcePolicy().acceptsBulkDownload() ? LIMITE_TESELAS : LIMITE_SIN_DESCARGA_MASIVA;
+        limite = (int) Math.max(1, Math.min(limite, cabenBytes / TAMANO_TESELA_ESTIMADO));
+        int zoomFinal = zoomMaximo;
+        while (zoomFinal > zoomMinimo && contarTeselas(zona, zoomMinimo, zoomFinal) > limite)
+            zoomFinal--;
+        final int zoomHasta = zoomFinal;
+        final int total = Math.min(contarTeselas(zona, zoomMinimo, zoomHasta), limite);
+        cancelada = false;
+
+        hilo.execute(() -> {
+            int hechas = 0, descargadas = 0, fallidas = 0;
+            long bytes = 0; // Lo que ocupan en el archivo las teselas de esta descarga, bajadas o ya guardadas
+            recorrido:
+            for (int z = zoomMinimo; z <= zoomHasta; z++) {
+                int xMin = columna(zona.getLonWest(), z), xMax = columna(zona.getLonEast(), z);
+                int yMin = fila(zona.getLatNorth(), z), yMax = fila(zona.getLatSouth(), z);
+                for (int x = xMin; x <= xMax; x++) {
+                    for (int y = yMin; y <= yMax; y++) {
+                        if (cancelada || hechas >= total)
+                            break recorrido;
+                        if (hechas > 0 && bytes + bytes / hechas > cabenBytes)
+                            break recorrido; // La siguiente ya no cabe sin que el recorte borre alguna de las anteriores
+                        long tamano = archivo.marcarUsada(z, x, y);
+                        if (tamano < 0) {
+                            tamano = descargarTesela(z, x, y);
+                            if (tamano >= 0)
+                                descargadas++;
+                            else
+                                fallidas++;
+                        }
+                        bytes += Math.max(tamano, 0);
+                        hechas++;
+                        final int hechasAhora = hechas;
+                        hiloPrincipal.post(() -> progreso.alAvanzar(hechasAhora, total));
+                    }
+                }
+            }
+            final int d = descargadas, f = fallidas;
+            final boolean c = cancelada;
+            hiloPrincipal.post(() -> progreso.alTerminar(d, f, c));
+        });
+        return zoomHasta;
+    }
+
+    public void cancelar() {
+        cancelada = true;
+    }
+
+    // Cancela la descarga en curso y libera el hilo. El descargador ya no se puede volver a usar.
+    public void cerrar() {
+        cancelada = true;
+        Call llamada = enCurso;
+        if (llamada != null)
+            llamada.cancel();
+        hilo.shutdown();
+    }
+
+    /* Como cerrar(), pero además espera (como mucho esperaMs) a que el hilo termine. Hace falta antes de vaciar ArchivoTeselas: si no,
+     * la tesela que se estaba bajando podría guardarse justo después y volver a llenar el archivo. Cortar la petición en curso hace
+     * que la espera sea de milisegundos. Devuelve false si el hilo no llegó a terminar a tiempo. */
+    public boolean cerrarYEsperar(long esperaMs) {
+        cerrar();
+        try {
+            return hilo.awaitTermination(esperaMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    // Devuelve los bytes guardados o -1 si no se ha podido bajar.
+    private long descargarTesela(int zoom, int x, int y) {
+        Request peticion = new Request.Builder()
+                .url(fuente.getTileURLString(MapTileIndex.getTileIndex(zoom, x, y)))
+                .header("User-Agent", Configuration.getInstance().getUserAgentValue())
+                .build();
+        Call llamada = clienteHttp.newCall(peticion);
+        enCurso = llamada;
+        try (Response respuesta = llamada.execute()) {
+            ResponseBody cuerpo = respuesta.body();
+            if (!respuesta.isSuccessful() || cuerpo == null)
+                return -1;
+            byte[] bytes = cuerpo.bytes();
+            if (cancelada)
+                return -1; // Si se ha cerrado mientras llegaba, ya no se guarda
+            archivo.guardar(zoom, x, y, bytes);
+            return bytes.length;
+        } catch (Exception e) {
+            return -1;
+        } finally {
+            enCurso = null;
+        }
+    }
+
+    // Columna (x) de la tesela que contiene esa longitud, en el esquema XYZ de osmdroid.
+    public static int columna(double longitud, int zoom) {
+        int n = 1 << zoom;
+        int x = (int) Math.floor((longitud + 180) / 360 * n);
+        return Math.max(0, Math.min(n - 1, x));
+    }
+
+    // Fila (y) de la tesela que contiene esa latitud (proyección Web Mercator, la fila 0 es la de arriba).
+    public static int fila(double latitud, int zoom) {
+        int n = 1 << zoom;
+        double rad = Math.toRadians(Math.max(-85.05112878, Math.min(85.05112878, latitud)));
+        int y = (int) Math.floor((1 - Math.log(Math.tan(rad) + 1 / Math.cos(rad)) / Math.PI) / 2 * n);
+        return Math.max(0, Math.min(n - 1, y));
+    }
+}
@@ -0,0 +1,174 @@
+package com.infocam.mapa;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+
+import com.infocam.R;
+
+/* Caché de los iconos del mapa, compartida por toda la aplicación (una única instancia, igual que DatabaseHelper).
+ * Antes cada marcador pedía su propio Drawable con ContextCompat.getDrawable() y cada vez que se activaba la capa de posición se creaba
+ * otro bitmap para el icono del usuario. Ahora:
+ * 1. Los cuatro iconos de puntos (cámara, favorita, incidencia oficial y de usuario) se rasterizan una sola vez en un "atlas": un único
+ *    bitmap con los cuatro uno al lado del otro. CapaPuntos dibuja cada punto copiando su trozo del atlas.
+ * 2. El icono del usuario también se rasteriza una vez y se reutiliza.
+ * 3. Si cambia la densidad de pantalla se vuelven a generar, y si el sistema pide memoria (onTrimMemory) se sueltan; la próxima vez que
+ *    alguien los pida se crean de nuevo. Cada vez que se sueltan cambia getVersion(), así quien se guarde el atlas (CapaPuntos) sabe
+ *    cuándo tiene que volver a pedirlo sin tener que llamar en cada fotograma a obtenerAtlas(), que es synchronized.
+ * Los bitmaps que se entregan son inmutables, así que se pueden compartir sin miedo a que nadie los modifique. */
+public class IconosMapa implements ComponentCallbacks2 {
+    public static final int CAMARA = 0;
+    public static final int FAVORITA = 1;
+    public static final int INCIDENCIA = 2;
+    public static final int INCIDENCIA_USUARIO = 3;
+    private static final int[] RECURSOS = { R.drawable.ic_marker_camera, R.drawable.ic_marker_favorite,
+            R.drawable.ic_marker_incident, R.drawable.ic_marker_incident_user };
+    private static final int SEPARACION_PX = 1; // Hueco entre iconos para que el filtrado al escalar no mezcle bordes vecinos
+
+    private static IconosMapa instanciaUnica;
+
+    private final Context contexto;
+    private Atlas atlas;
+    private Bitmap iconoUsuario;
+    private int densidadGenerada = 0;
+    private volatile int version = 0;
+
+    /* El atlas y la zona que ocupa cada icono dentro de él. Se entregan juntos para que quien dibuja nunca mezcle un bitmap con las
+     * zonas de otro (por ejemplo, si se regenera a mitad de un dibujado). */
+    public static class Atlas {
+        private final Bitmap imagen;
+        private final Rect[] zonas;
+        private final int anchoMaximo;
+        private final int altoMaximo;
+
+        Atlas(Bitmap imagen, Rect[] zonas, int anchoMaximo, int altoMaximo) {
+            this.imagen = imagen;
+            this.zonas = zonas;
+            this.anchoMaximo = anchoMaximo;
+            this.altoMaximo = altoMaximo;
+        }
+
+        public Bitmap getImagen() {
+            return imagen;
+        }
+
+        // Zona del icono dentro del atlas. No debe modificarse.
+        public Rect getZona(int icono) {
+            return zonas[icono];
+        }
+
+        public int getAnchoMaximo() {
+            return anchoMaximo;
+        }
+
+        public int getAltoMaximo() {
+            return altoMaximo;
+        }
+    }
+
+    private IconosMapa(Context contexto) {
+        this.contexto = contexto;
+        contexto.registerComponentCallbacks(this);
+    }
+
+    public static synchronized IconosMapa obtenerInstancia(Context contexto) {
+        if (instanciaUnica == null) {
+            instanciaUnica = new IconosMapa(contexto.getApplicationContext());
+        }
+        return instanciaUnica;
+    }
+
+    public synchronized Atlas obtenerAtlas() {
+        comprobarDensidad();
+        if (atlas == null)
+            atlas = generarAtlas();
+        return atlas;
+    }
+
+    // Icono para la capa de posición del usuario (MyLocationNewOverlay necesita un Bitmap, no un Drawable).
+    public synchronized Bitmap obtenerIconoUsuario() {
+        comprobarDensidad();
+        if (iconoUsuario == null)
+            iconoUsuario = rasterizar(ContextCompat.getDrawable(contexto, R.drawable.ic_marker_user));
+        return iconoUsuario;
+    }
+
+    // Se lee sin bloqueo. Si no coincide con la del atlas que se tiene guardado, hay que pedirlo otra vez.
+    public int getVersion() {
+        return version;
+    }
+
+    // Soltamos las referencias (sin reciclar los bitmaps: puede que algún overlay aún los esté usando y el GC ya los liberará).
+    public synchronized void liberar() {
+        atlas = null;
+        iconoUsuario = null;
+        version++;
+    }
+
+    private void comprobarDensidad() {
+        int densidad = contexto.getResources().getDisplayMetrics().densityDpi;
+        if (densidad != densidadGenerada) {
+            liberar();
+            densidadGenerada = densidad;
+        }
+    }
+
+    private Atlas generarAtlas() {
+        Drawable[] iconos = new Drawable[RECURSOS.length];
+        int anchoTotal = 0, anchoMaximo = 0, altoMaximo = 0;
+        for (int k = 0; k < RECURSOS.length; k++) {
+            iconos[k] = ContextCompat.getDrawable(contexto, RECURSOS[k]);
+            anchoTotal += iconos[k].getIntrinsicWidth() + SEPARACION_PX;
+            anchoMaximo = Math.max(anchoMaximo, iconos[k].getIntrinsicWidth());
+            altoMaximo = Math.max(altoMaximo, iconos[k].getIntrinsicHeight());
+        }
+
+        Bitmap imagen = Bitmap.createBitmap(anchoTotal, altoMaximo, Bitmap.Config.ARGB_8888);
+        Canvas lienzo = new Canvas(imagen);
+        Rect[] zonas = new Rect[RECURSOS.length];
+        int x = 0;
+        for (int k = 0; k < RECURSOS.length; k++) {
+            zonas[k] = new Rect(x, 0, x + iconos[k].getIntrinsicWidth(), iconos[k].getIntrinsicHeight());
+            iconos[k].setBounds(zonas[k]);
+            iconos[k].draw(lienzo);
+            x = zonas[k].right + SEPARACION_PX;
+        }
+        return new Atlas(Bitmap.createBitmap(imagen), zonas, anchoMaximo, altoMaximo);
+    }
+
+    private static Bitmap rasterizar(Drawable d) {
+        if (d == null)
+            return null;
+        Bitmap b = Bitmap.createBitmap(d.getIntrinsicWidth(), d.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
+        Canvas c = new Canvas(b);
+        d.setBounds(0, 0, c.getWidth(), c.getHeight());
+        d.draw(c);
+        return Bitmap.createBitmap(b);
+    }
+
+    @Override
+    public void onTrimMemory(int nivel) {
+        // A partir de UI_HIDDEN el mapa ya no se ve, así que no merece la pena quedarse con los iconos
+        if (nivel >= TRIM_MEMORY_UI_HIDDEN)
+            liberar();
+    }
+
+    @Override
+    public void onLowMemory() {
+        liberar();
+    }
+
+    @Override
+    public synchronized void onConfigurationChanged(@NonNull Configuration nuevaConfiguracion) {
+        // Se comprueba también cada vez que se piden los iconos, pero quien se guarda el atlas no los vuelve a pedir hasta que cambie
+        // la versión: si la densidad es otra, los soltamos ya
+        comprobarDensidad();
+    }
+}
@@ -0,0 +1,352 @@
+package com.infocam.mapa;
+
+import java.util.Arrays;
+
+/* Índice espacial (un R-tree "empaquetado") para encontrar rápidamente qué puntos caen dentro de un rectángulo del mapa.
+ * Recorrer una lista de 50.000 cámaras para ver cuáles se ven en pantalla es lento. En su lugar:
+ * 1. Ordenamos los puntos siguiendo una curva de Hilbert, para que puntos cercanos en el mapa queden cercanos en el array.
+ * 2. Los agrupamos de TAMANO_NODO en TAMANO_NODO en "cajas" que los envuelven; esas cajas se agrupan a su vez en cajas mayores, y así
+ *    hasta llegar a una única caja raíz.
+ * 3. Al buscar, bajamos solo por las cajas que tocan el rectángulo pedido y descartamos de golpe todo lo demás.
+ * El índice no se modifica: si cambian los datos se construye uno nuevo (es muy rápido). Todo se guarda en arrays de tipos primitivos. */
+public class IndiceEspacial {
+    private static final int TAMANO_NODO = 16;
+    private static final int LADO_HILBERT = (1 << 16) - 1;
+    private static final double RADIO_TIERRA_METROS = 6371008.8;
+    private static final int LARGO_TROZO_RADIOS = 4;
+
+    private final int total;
+    private final double[] latPuntos;  // Los arrays originales (no se copian): quien crea el índice no debe modificarlos
+    private final double[] lngPuntos;
+    private final double[] cajas;      // 4 valores por nodo: lngMin, latMin, lngMax, latMax.
+    private final int[] indices;       // En las hojas: posición del punto en la lista original. En el resto: posición de su primer hijo.
+    private final int[] finNiveles;    // Posición (exclusiva) donde termina cada nivel; el nivel 0 son las hojas.
+
+    private int[] pila = new int[64];  // Reutilizada entre búsquedas. El índice no está pensado para usarse desde varios hilos a la vez.
+
+    public IndiceEspacial(double[] latitudes, double[] longitudes, int total) {
+        this.total = total;
+        this.latPuntos = latitudes;
+        this.lngPuntos = longitudes;
+
+        // Calculamos cuántos nodos habrá en cada nivel hasta llegar a la raíz.
+        int n = total;
+        int nodos = n;
+        int[] niveles = new int[8];
+        int numNiveles = 0;
+        niveles[numNiveles++] = n;
+        while (n > 1) {
+            n = (n + TAMANO_NODO - 1) / TAMANO_NODO;
+            nodos += n;
+            if (numNiveles == niveles.length)
+                niveles = Arrays.copyOf(niveles, numNiveles * 2);
+            niveles[numNiveles++] = nodos;
+        }
+        finNiveles = Arrays.copyOf(niveles, numNiveles);
+        cajas = new double[Math.max(nodos, 1) * 4];
+        indices = new int[Math.max(nodos, 1)];
+        if (total == 0)
+            return;
+
+        // Límites de todos los datos, para repartir la curva de Hilbert sobre ellos.
+        double lngMin = Double.MAX_VALUE, latMin = Double.MAX_VALUE, lngMax = -Double.MAX_VALUE, latMax = -Double.MAX_VALUE;
+        for (int i = 0; i < total; i++) {
+            lngMin = Math.min(lngMin, longitudes[i]);
+            lngMax = Math.max(lngMax, longitudes[i]);
+            latMin = Math.min(latMin, latitudes[i]);
+            latMax = Math.max(latMax, latitudes[i]);
+        }
+        double anchoLng = lngMax - lngMin > 0 ? lngMax - lngMin : 1;
+        double altoLat = latMax - latMin > 0 ? latMax - latMin : 1;
+
+        // Juntamos en un long el valor de Hilbert (parte alta) y la posición original (parte baja) para ordenar sin crear objetos.
+        long[] orden = new long[total];
+        for (int i = 0; i < total; i++) {
+            int x = (int) (LADO_HILBERT * (longitudes[i] - lngMin) / anchoLng);
+            int y = (int) (LADO_HILBERT * (latitudes[i] - latMin) / altoLat);
+            orden[i] = ((hilbert(x, y) & 0xFFFFFFFFL) << 32) | i;
+        }
+        Arrays.sort(orden);
+
+        // Nivel 0: una hoja por punto, con una caja de tamaño cero.
+        for (int k = 0; k < total; k++) {
+            int i = (int) orden[k];
+            indices[k] = i;
+            cajas[k * 4] = longitudes[i];
+            cajas[k * 4 + 1] = latitudes[i];
+            cajas[k * 4 + 2] = longitudes[i];
+            cajas[k * 4 + 3] = latitudes[i];
+        }
+
+        // Niveles superiores: cada nodo envuelve a TAMANO_NODO nodos consecutivos del nivel anterior.
+        int padre = total;
+        for (int nivel = 0; nivel < finNiveles.length - 1; nivel++) {
+            int inicio = nivel == 0 ? 0 : finNiveles[nivel - 1];
+            int fin = finNiveles[nivel];
+            for (int hijo = inicio; hijo < fin; hijo += TAMANO_NODO) {
+                double a = Double.MAX_VALUE, b = Double.MAX_VALUE, c = -Double.MAX_VALUE, d = -Double.MAX_VALUE;
+                int ultimo = Math.min(hijo + TAMANO_NODO, fin);
+                for (int h = hijo; h < ultimo; h++) {
+                    a = Math.min(a, cajas[h * 4]);
+                    b = Math.min(b, cajas[h * 4 + 1]);
+                    c = Math.max(c, cajas[h * 4 + 2]);
+                    d = Math.max(d, cajas[h * 4 + 3]);
+                }
+                cajas[padre * 4] = a;
+                cajas[padre * 4 + 1] = b;
+                cajas[padre * 4 + 2] = c;
+                cajas[padre * 4 + 3] = d;
+                indices[padre] = hijo;
+                padre++;
+            }
+        }
+    }
+
+    public int tamano() {
+        return total;
+    }
+
+    /* Devuelve las posiciones (en la lista original) de los puntos dentro del rectángulo indicado. El resultado no sigue ningún orden
+     * concreto. */
+    public int[] buscar(double latSur, double lngOeste, double latNorte, double lngEste) {
+        int raiz = cajas.length / 4 - 1;
+        if (total == 0 || !toca(raiz, latSur, lngOeste, latNorte, lngEste))
+            return new int[0];
+
+        int[] resultado = new int[16];
+        int encontrados = 0;
+
+        // En la pila guardamos parejas (posición del nodo, nivel). Empezamos por la raíz.
+        int cima = 0;
+        pila[cima++] = raiz;
+        pila[cima++] = finNiveles.length - 1;
+
+        while (cima > 0) {
+            int nivel = pila[--cima];
+            int nodo = pila[--cima];
+
+            if (nivel == 0) {
+                if (encontrados == resultado.length)
+                    resultado = Arrays.copyOf(resultado, encontrados * 2);
+                resultado[encontrados++] = indices[nodo];
+                continue;
+            }
+
+            int inicio = indices[nodo];
+            int fin = Math.min(inicio + TAMANO_NODO, finNiveles[nivel - 1]);
+            for (int hijo = inicio; hijo < fin; hijo++) {
+                if (!toca(hijo, latSur, lngOeste, latNorte, lngEste))
+                    continue; // La caja del hijo no toca el rectángulo: descartamos todo lo que contiene.
+                if (cima + 2 > pila.length)
+                    pila = Arrays.copyOf(pila, pila.length * 2);
+                pila[cima++] = hijo;
+                pila[cima++] = nivel - 1;
+            }
+        }
+        return Arrays.copyOf(resultado, encontrados);
+    }
+
+    /* Devuelve las posiciones de los k puntos más cercanos a (lat, lng), del más cercano al más lejano. Búsqueda "primero el mejor": en
+     * una cola de prioridad guardamos nodos ordenados por la distancia mínima posible a su caja y siempre abrimos el más prometedor.
+     * Cuando sale de la cola una hoja, ningún punto pendiente puede estar más cerca, así que es el siguiente vecino. Solo se visitan los
+     * nodos cuya caja está más cerca que el k-ésimo vecino. Las distancias son equirectangulares (ver distanciaMetros). */
+    public int[] cercanos(double lat, double lng, int k) {
+        int pedidos = Math.min(k, total);
+        int[] resultado = new int[Math.max(pedidos, 0)];
+        if (pedidos <= 0)
+            return resultado;
+        double cosLat = Math.cos(Math.toRadians(lat));
+
+        // Montículo binario con tres arrays paralelos: distancia al cuadrado (en grados corregidos), nodo y nivel
+        double[] distancias = new double[64];
+        int[] nodos = new int[64];
+        int[] niveles = new int[64];
+        // Empezamos con la raíz
+        distancias[0] = 0;
+        nodos[0] = cajas.length / 4 - 1;
+        niveles[0] = finNiveles.length - 1;
+        int enCola = 1;
+
+        int encontrados = 0;
+        while (enCola > 0 && encontrados < pedidos) {
+            int nodo = nodos[0], nivel = niveles[0];
+            // Sacamos la cima: el último pasa arriba y se hunde hasta su sitio
+            enCola--;
+            hundir(distancias, nodos, niveles, enCola, distancias[enCola], nodos[enCola], niveles[enCola]);
+
+            if (nivel == 0) {
+                resultado[encontrados++] = indices[nodo];
+                continue;
+            }
+            int inicio = indices[nodo];
+            int fin = Math.min(inicio + TAMANO_NODO, finNiveles[nivel - 1]);
+            for (int hijo = inicio; hijo < fin; hijo++) {
+                if (enCola == distancias.length) {
+                    distancias = Arrays.copyOf(distancias, enCola * 2);
+                    nodos = Arrays.copyOf(nodos, enCola * 2);
+                    niveles = Arrays.copyOf(niveles, enCola * 2);
+                }
+                // Flotamos el hijo desde el final hasta su sitio
+                double d = distanciaACaja(hijo, lat, lng, cosLat);
+                int i = enCola++;
+                while (i > 0 && distancias[(i - 1) / 2] > d) {
+                    int padre = (i - 1) / 2;
+                    distancias[i] = distancias[padre];
+                    nodos[i] = nodos[padre];
+                    niveles[i] = niveles[padre];
+                    i = padre;
+                }
+                distancias[i] = d;
+                nodos[i] = hijo;
+                niveles[i] = nivel - 1;
+            }
+        }
+        return encontrados == resultado.length ? resultado : Arrays.copyOf(resultado, encontrados);
+    }
+
+    /* Devuelve las posiciones de los puntos a menos de "metros" de la línea (lat[i], lng[i]) de "vertices" puntos, sin orden concreto.
+     * Cada tramo se parte en trozos de como mucho LARGO_TROZO_RADIOS radios: así su rectángulo (ampliado con el radio) se ajusta a la
+     * línea y no se trae medio mapa con un tramo en diagonal. Para cada trozo se consulta el índice con ese rectángulo y solo a los
+     * candidatos que devuelve se les calcula la distancia exacta al segmento. */
+    public int[] buscarCercaDeLinea(double[] latLinea, double[] lngLinea, int vertices, double metros) {
+        if (total == 0 || vertices == 0)
+            return new int[0];
+        boolean[] aceptados = new boolean[total];
+        int[] resultado = new int[16];
+        int encontrados = 0;
+        double gradosLat = Math.toDegrees(metros / RADIO_TIERRA_METROS);
+
+        for (int v = 0; v < Math.max(vertices - 1, 1); v++) {
+            double latA = latLinea[v], lngA = lngLinea[v];
+            double latB = latLinea[Math.min(v + 1, vertices - 1)], lngB = lngLinea[Math.min(v + 1, vertices - 1)];
+            int trozos = Math.max(1, (int) Math.ceil(distanciaMetros(latA, lngA, latB, lngB) / (LARGO_TROZO_RADIOS * metros)));
+            for (int t = 0; t < trozos; t++) {
+                double lat1 = latA + (latB - latA) * t / trozos, lng1 = lngA + (lngB - lngA) * t / trozos;
+                double lat2 = latA + (latB - latA) * (t + 1) / trozos, lng2 = lngA + (lngB - lngA) * (t + 1) / trozos;
+                double cosLat = Math.cos(Math.toRadians(lat1));
+                double gradosLng = gradosLat / Math.max(cosLat, 0.01);
+
+                int[] candidatos = buscar(Math.min(lat1, lat2) - gradosLat, Math.min(lng1, lng2) - gradosLng,
+                        Math.max(lat1, lat2) + gradosLat, Math.max(lng1, lng2) + gradosLng);
+                for (int p : candidatos) {
+                    if (aceptados[p] || distanciaASegmento(latPuntos[p], lngPuntos[p], lat1, lng1, lat2, lng2, cosLat) > metros)
+                        continue;
+                    aceptados[p] = true;
+                    if (encontrados == resultado.length)
+                        resultado = Arrays.copyOf(resultado, encontrados * 2);
+                    resultado[encontrados++] = p;
+                }
+            }
+        }
+        return Arrays.copyOf(resultado, encontrados);
+    }
+
+    // Distancia en metros del punto al segmento (1)-(2), en un plano equirectangular centrado en (1).
+    private static double distanciaASegmento(double lat, double lng, double lat1, double lng1, double lat2, double lng2,
+            double cosLat) {
+        double px = (lng - lng1) * cosLat, py = lat - lat1;
+        double sx = (lng2 - lng1) * cosLat, sy = lat2 - lat1;
+        double largo2 = sx * sx + sy * sy;
+        double t = largo2 == 0 ? 0 : Math.max(0, Math.min(1, (px * sx + py * sy) / largo2));
+        double dx = px - t * sx, dy = py - t * sy;
+        return Math.toRadians(Math.sqrt(dx * dx + dy * dy)) * RADIO_TIERRA_METROS;
+    }
+
+    // Coloca (d, nodo, nivel) en la cima del montículo de "enCola" elementos y lo baja hasta que sus hijos sean mayores.
+    private static void hundir(double[] distancias, int[] nodos, int[] niveles, int enCola, double d, int nodo, int nivel) {
+        int i = 0;
+        while (true) {
+            int hijo = 2 * i + 1;
+            if (hijo >= enCola)
+                break;
+            if (hijo + 1 < enCola && distancias[hijo + 1] < distancias[hijo])
+                hijo++;
+            if (distancias[hijo] >= d)
+                break;
+            distancias[i] = distancias[hijo];
+            nodos[i] = nodos[hijo];
+            niveles[i] = niveles[hijo];
+            i = hijo;
+        }
+        distancias[i] = d;
+        nodos[i] = nodo;
+        niveles[i] = nivel;
+    }
+
+    // Distancia mínima (al cuadrado) desde el punto a la caja del nodo; 0 si el punto está dentro.
+    private double distanciaACaja(int nodo, double lat, double lng, double cosLat) {
+        int p = nodo * 4;
+        double dLng = Math.max(0, Math.max(cajas[p] - lng, lng - cajas[p + 2])) * cosLat;
+        double dLat = Math.max(0, Math.max(cajas[p + 1] - lat, lat - cajas[p + 3]));
+        return dLng * dLng + dLat * dLat;
+    }
+
+    /* Distancia aproximada en metros con la proyección equirectangular: la longitud se corrige por el coseno de la latitud media y luego
+     * es Pitágoras. En distancias de ciudad el error es despreciable y es mucho más barata que la fórmula del haversine. */
+    public static double distanciaMetros(double lat1, double lng1, double lat2, double lng2) {
+        double x = Math.toRadians(lng2 - lng1) * Math.cos(Math.toRadians((lat1 + lat2) / 2));
+        double y = Math.toRadians(lat2 - lat1);
+        return Math.sqrt(x * x + y * y) * RADIO_TIERRA_METROS;
+    }
+
+    private boolean toca(int nodo, double latSur, double lngOeste, double latNorte, double lngEste) {
+        int p = nodo * 4;
+        return cajas[p + 2] >= lngOeste && cajas[p + 3] >= latSur && cajas[p] <= lngEste && cajas[p + 1] <= latNorte;
+    }
+
+    // Posición de (x, y) a lo largo de una curva de Hilbert de 16 bits por eje (el mismo cálculo sin ramas que usa la librería flatbush).
+    private static int hilbert(int x, int y) {
+        int a = x ^ y;
+        int b = 0xFFFF ^ a;
+        int c = 0xFFFF ^ (x | y);
+        int d = x & (y ^ 0xFFFF);
+
+        int A = a | (b >>> 1);
+        int B = (a >>> 1) ^ a;
+        int C = ((c >>> 1) ^ (b & (d >>> 1))) ^ c;
+        int D = ((a & (c >>> 1)) ^ (d >>> 1)) ^ d;
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >>> 2)) ^ (b & (b >>> 2)));
+        B = ((a & (b >>> 2)) ^ (b & ((a ^ b) >>> 2)));
+        C ^= ((a & (c >>> 2)) ^ (b & (d >>> 2)));
+        D ^= ((b & (c >>> 2)) ^ ((a ^ b) & (d >>> 2)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        A = ((a & (a >>> 4)) ^ (b & (b >>> 4)));
+        B = ((a & (b >>> 4)) ^ (b & ((a ^ b) >>> 4)));
+        C ^= ((a & (c >>> 4)) ^ (b & (d >>> 4)));
+        D ^= ((b & (c >>> 4)) ^ ((a ^ b) & (d >>> 4)));
+
+        a = A;
+        b = B;
+        c = C;
+        d = D;
+        C ^= ((a & (c >>> 8)) ^ (b & (d >>> 8)));
+        D ^= ((b & (c >>> 8)) ^ ((a ^ b) & (d >>> 8)));
+
+        a = C ^ (C >>> 1);
+        b = D ^ (D >>> 1);
+
+        int i0 = x ^ y;
+        int i1 = b | (0xFFFF ^ (i0 | a));
+
+        i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+        i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+        i0 = (i0 | (i0 << 2)) & 0x33333333;
+        i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+        i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+        i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+        i1 = (i1 | (i1 << 2)) & 0x33333333;
+        i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+        return (i1 << 1) | i0;
+    }
+}
@@ -0,0 +1,198 @@
+package com.infocam.mapa;
+
+/* Calcula un mapa de calor (densidad) de incidencias para cada nivel de zoom. Cuando se mira toda la región, miles de iconos juntos no
+ * se entienden; es más útil ver en qué zonas se concentran.
+ * 1. Al crearlo, las coordenadas se pasan una sola vez a Web Mercator normalizado (x e y entre 0 y 1), que es lo caro (logaritmos).
+ * 2. Para cada zoom, cada punto suma 1 en la celda de la rejilla (de TAMANO_CELDA_PX píxeles de pantalla) en la que cae: un solo recorrido,
+ *    así que el coste crece de forma lineal con el número de incidencias.
+ * 3. La rejilla se suaviza con dos pasadas de desenfoque de caja (horizontal y vertical por separado), y cada valor se convierte en un
+ *    color de la paleta (de azul transparente a rojo).
+ * El resultado de cada zoom se guarda, así que volver a un zoom ya visto es inmediato. A partir del zoom en el que la rejilla llega a
+ * MAXIMO_CELDAS_LADO las celdas ya no encogen y la imagen sale igual en todos, así que esos zooms comparten un único Resultado.
+ * Si cambian los datos o los filtros se crea otro MapaCalor. No depende de Android: devuelve los píxeles en un int[] y quien lo use
+ * crea el Bitmap. */
+public class MapaCalor {
+    private static final int TAMANO_TESELA = 256;
+    private static final int TAMANO_CELDA_PX = 8;
+    private static final int MAXIMO_CELDAS_LADO = 512; // Si la rejilla fuera más grande, agrandamos las celdas
+    private static final int RADIO_DESENFOQUE = 2;
+    private static final int ZOOM_MAXIMO = 22;
+    private static final int[] PALETA = crearPaleta();
+
+    private final double[] mx;
+    private final double[] my;
+    private final int total;
+    private double mxMin = 1, myMin = 1, mxMax = 0, myMax = 0;
+    private final Resultado[] porZoom = new Resultado[ZOOM_MAXIMO + 1];
+    private Resultado conCeldaMinima; // El de todos los zooms con la rejilla al máximo de celdas
+
+    // Imagen de densidad y la zona geográfica que cubre (las esquinas de la imagen).
+    public static class Resultado {
+        private final int[] pixeles;
+        private final int ancho;
+        private final int alto;
+        private final double norte, sur, este, oeste;
+
+        Resultado(int[] pixeles, int ancho, int alto, double norte, double sur, double este, double oeste) {
+            this.pixeles = pixeles;
+            this.ancho = ancho;
+            this.alto = alto;
+            this.norte = norte;
+            this.sur = sur;
+            this.este = este;
+            this.oeste = oeste;
+        }
+
+        public int[] getPixeles() {
+            return pixeles;
+        }
+
+        public int getAncho() {
+            return ancho;
+        }
+
+        public int getAlto() {
+            return alto;
+        }
+
+        public double getNorte() {
+            return norte;
+        }
+
+        public double getSur() {
+            return sur;
+        }
+
+        public double getEste() {
+            return este;
+        }
+
+        public double getOeste() {
+            return oeste;
+        }
+    }
+
+    public MapaCalor(double[] latitudes, double[] longitudes, int total) {
+        this.total = total;
+        mx = new double[total];
+        my = new double[total];
+        for (int i = 0; i < total; i++) {
+            mx[i] = (longitudes[i] + 180) / 360;
+            double lat = Math.max(-85.05112878, Math.min(85.05112878, latitudes[i]));
+            double seno = Math.sin(Math.toRadians(lat));
+            my[i] = 0.5 - Math.log((1 + seno) / (1 - seno)) / (4 * Math.PI);
+            mxMin = Math.min(mxMin, mx[i]);
+            mxMax = Math.max(mxMax, mx[i]);
+            myMin = Math.min(myMin, my[i]);
+            myMax = Math.max(myMax, my[i]);
+        }
+    }
+
+    // Devuelve el mapa de calor para ese zoom (calculándolo la primera vez) o null si no hay puntos.
+    public synchronized Resultado generar(int zoom) {
+        if (total == 0)
+            return null;
+        zoom = Math.max(0, Math.min(ZOOM_MAXIMO, zoom));
+        if (porZoom[zoom] == null) {
+            double celda = TAMANO_CELDA_PX / ((double) TAMANO_TESELA * (1L << zoom)); // En unidades normalizadas
+            double celdaMinima = Math.max(mxMax - mxMin, myMax - myMin) / (MAXIMO_CELDAS_LADO - 2 * RADIO_DESENFOQUE - 1);
+            if (celda >= celdaMinima) {
+                porZoom[zoom] = calcular(celda);
+            } else {
+                if (conCeldaMinima == null)
+                    conCeldaMinima = calcular(celdaMinima);
+                porZoom[zoom] = conCeldaMinima;
+            }
+        }
+        return porZoom[zoom];
+    }
+
+    // Dejamos un borde de RADIO_DESENFOQUE celdas alrededor de los puntos para que el difuminado no se corte.
+    private Resultado calcular(double celda) {
+        double origenX = mxMin - RADIO_DESENFOQUE * celda;
+        double origenY = myMin - RADIO_DESENFOQUE * celda;
+        int ancho = (int) ((mxMax - mxMin) / celda) + 2 * RADIO_DESENFOQUE + 1;
+        int alto = (int) ((myMax - myMin) / celda) + 2 * RADIO_DESENFOQUE + 1;
+        float[] rejilla = densidades(mx, my, total, origenX, origenY, celda, ancho, alto);
+
+        // 3. Pasamos cada valor a color. La raíz cuadrada evita que una sola zona muy densa deje todo lo demás casi invisible
+        float maximo = 0;
+        for (float v : rejilla)
+            maximo = Math.max(maximo, v);
+        int[] pixeles = new int[rejilla.length];
+        if (maximo > 0) {
+            // Redondeando: truncar dejaba la celda más densa en 254 por los decimales de la raíz
+            double escala = 255 / Math.sqrt(maximo);
+            for (int k = 0; k < rejilla.length; k++)
+                pixeles[k] = PALETA[(int) (Math.sqrt(rejilla[k]) * escala + 0.5)];
+        }
+
+        return new Resultado(pixeles, ancho, alto, latitudDeY(origenY), latitudDeY(origenY + alto * celda),
+                (origenX + ancho * celda) * 360 - 180, origenX * 360 - 180);
+    }
+
+    /* Pasos 1 y 2: la densidad suavizada de cada celda de una rejilla de ancho x alto celdas de lado "celda", con la esquina en (origenX,
+     * origenY), todo en Web Mercator normalizado. Cada punto aporta 1 repartido entre sus vecinas (en total suma 1 si no está a menos
+     * de 2 * RADIO_DESENFOQUE celdas del borde). */
+    static float[] densidades(double[] mx, double[] my, int total, double origenX, double origenY, double celda, int ancho, int alto) {
+        // 1. Contamos los puntos de cada celda
+        float[] rejilla = new float[ancho * alto];
+        for (int i = 0; i < total; i++) {
+            int cx = (int) ((mx[i] - origenX) / celda);
+            int cy = (int) ((my[i] - origenY) / celda);
+            rejilla[cy * ancho + cx]++;
+        }
+
+        // 2. Suavizamos (dos desenfoques de caja seguidos se parecen mucho a uno gaussiano)
+        float[] auxiliar = new float[rejilla.length];
+        for (int pasada = 0; pasada < 2; pasada++) {
+            desenfocar(rejilla, auxiliar, ancho, alto, 1, ancho);
+            desenfocar(auxiliar, rejilla, alto, ancho, ancho, 1);
+        }
+        return rejilla;
+    }
+
+    /* Desenfoque de caja en una dirección con suma acumulada (coste lineal, sin depender del radio). Recorre "lineas" filas (o
+     * columnas) de "largo" celdas; "paso" es la distancia entre dos celdas vecinas de la línea y "salto" la distancia entre líneas. */
+    private static void desenfocar(float[] origen, float[] destino, int largo, int lineas, int paso, int salto) {
+        float divisor = 2 * RADIO_DESENFOQUE + 1;
+        for (int linea = 0; linea < lineas; linea++) {
+            int inicio = linea * salto;
+            float suma = 0;
+            for (int k = 0; k <= RADIO_DESENFOQUE && k < largo; k++)
+                suma += origen[inicio + k * paso];
+            for (int k = 0; k < largo; k++) {
+                destino[inicio + k * paso] = suma / divisor;
+                int entra = k + RADIO_DESENFOQUE + 1;
+                int sale = k - RADIO_DESENFOQUE;
+                if (entra < largo)
+                    suma += origen[inicio + entra * paso];
+                if (sale >= 0)
+                    suma -= origen[inicio + sale * paso];
+            }
+        }
+    }
+
+    private static double latitudDeY(double y) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y))));
+    }
+
+    // 256 colores ARGB: transparente en 0 y, al subir, azul, verde, amarillo y rojo cada vez más opacos.
+    private static int[] crearPaleta() {
+        int[] paleta = new int[256];
+        int[][] paradas = { { 0, 0, 0, 255 }, { 64, 0, 255, 0 }, { 160, 255, 255, 0 }, { 255, 255, 0, 0 } };
+        for (int v = 1; v < 256; v++) {
+            int tramo = 0;
+            while (tramo < paradas.length - 2 && v > paradas[tramo + 1][0])
+                tramo++;
+            int[] a = paradas[tramo], b = paradas[tramo + 1];
+            float t = (float) (v - a[0]) / (b[0] - a[0]);
+            int r = (int) (a[1] + (b[1] - a[1]) * t);
+            int g = (int) (a[2] + (b[2] - a[2]) * t);
+            int bl = (int) (a[3] + (b[3] - a[3]) * t);
+            int alfa = Math.min(200, 40 + v * 160 / 255);
+            paleta[v] = (alfa << 24) | (r << 16) | (g << 8) | bl;
+        }
+        return paleta;
+    }
+}
@@ -0,0 +1,144 @@
+package com.infocam.mapa;
+
+import android.view.View;
+import android.widget.ArrayAdapter;
+import android.widget.ListView;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.core.content.ContextCompat;
+
+import com.infocam.R;
+import com.infocam.model.Camara;
+import com.infocam.model.Incidencia;
+
+import org.osmdroid.util.GeoPoint;
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.overlay.Polyline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/* Modo ruta del mapa: el usuario marca un recorrido con pulsaciones largas y el mapa solo muestra las cámaras e incidencias a menos de
+ * RADIO_CORREDOR_METROS de él (el "corredor").
+ * 1. Cada punto nuevo crea otro Corredor, que guarda lo que ya ha buscado en cada capa; el mapa lo usa en lugar de la zona visible.
+ * 2. La línea se dibuja en una Polyline añadida al MapView en el momento de crear el modo, así queda por debajo de las capas que se
+ *    añadan después (los puntos y las burbujas).
+ * 3. El panel lista lo que se está mostrando; al pulsar una fila se avisa a Oyente con el elemento y su posición.
+ * Hay uno por vista del mapa, así que con una vista nueva se empieza sin ruta. Solo se usa desde el hilo principal. */
+public class ModoRuta {
+    private static final double RADIO_CORREDOR_METROS = 150;
+
+    public interface Oyente {
+        // La ruta ha cambiado y hay que volver a consultar las capas (con getCorredor())
+        void alCambiarCorredor();
+
+        void alPulsarElemento(Object elemento, GeoPoint posicion);
+    }
+
+    private final MapView mapa;
+    private final Oyente oyente;
+    private final Polyline linea = new Polyline();
+    private final List<GeoPoint> puntos = new ArrayList<>();
+    private final View panel;
+    private final TextView tvResumen;
+    private final ArrayAdapter<String> adaptador;
+    private final List<Object> elementos = new ArrayList<>();
+    private boolean activo = false;
+    private Corredor corredor; // null mientras la ruta tenga menos de dos puntos
+
+    public ModoRuta(MapView mapa, View raiz, Oyente oyente) {
+        this.mapa = mapa;
+        this.oyente = oyente;
+
+        // No abre ventana al pulsarla, para no tapar los puntos que tenga al lado
+        linea.getOutlinePaint().setColor(ContextCompat.getColor(mapa.getContext(), R.color.primary_green));
+        linea.getOutlinePaint().setStrokeWidth(10f);
+        linea.setOnClickListener((l, m, p) -> false);
+        mapa.getOverlays().add(linea);
+
+        panel = raiz.findViewById(R.id.panelRuta);
+        tvResumen = raiz.findViewById(R.id.tvResumenRuta);
+        adaptador = new ArrayAdapter<>(mapa.getContext(), android.R.layout.simple_list_item_1);
+        ListView lista = raiz.findViewById(R.id.listaRuta);
+        lista.setAdapter(adaptador);
+        lista.setOnItemClickListener((padre, fila, posicion, id) -> {
+            Object elemento = elementos.get(posicion);
+            GeoPoint punto = elemento instanceof Camara
+                    ? new GeoPoint(((Camara) elemento).getLatitud(), ((Camara) elemento).getLongitud())
+                    : new GeoPoint(((Incidencia) elemento).getLatitud(), ((Incidencia) elemento).getLongitud());
+            oyente.alPulsarElemento(elemento, punto);
+        });
+
+        raiz.findViewById(R.id.btnRuta).setOnClickListener(v -> {
+            activo = !activo;
+            if (activo) {
+                Toast.makeText(mapa.getContext(), "Mantén pulsado el mapa para añadir puntos a la ruta", Toast.LENGTH_LONG)
+                        .show();
+                mostrarLista(new ArrayList<>(), new ArrayList<>());
+            } else {
+                borrar();
+            }
+            panel.setVisibility(activo ? View.VISIBLE : View.GONE);
+        });
+        raiz.findViewById(R.id.btnBorrarRuta).setOnClickListener(v -> borrar());
+    }
+
+    // Mientras está activo, las pulsaciones largas del mapa añaden puntos en lugar de crear incidencias.
+    public boolean estaActivo() {
+        return activo;
+    }
+
+    public Corredor getCorredor() {
+        return corredor;
+    }
+
+    public void anadirPunto(GeoPoint p) {
+        puntos.add(p);
+        linea.setPoints(new ArrayList<>(puntos));
+        if (puntos.size() >= 2) {
+            // El corredor no cambia: cada punto nuevo crea otro, y el anterior (con sus búsquedas guardadas) se descarta
+            double[] lat = new double[puntos.size()], lng = new double[puntos.size()];
+            for (int i = 0; i < puntos.size(); i++) {
+                lat[i] = puntos.get(i).getLatitude();
+                lng[i] = puntos.get(i).getLongitude();
+            }
+            corredor = new Corredor(lat, lng, RADIO_CORREDOR_METROS);
+            oyente.alCambiarCorredor();
+        }
+        mapa.invalidate();
+    }
+
+    // Rellena la lista del panel con lo que se está mostrando en el mapa (ya filtrado).
+    public void mostrarLista(List<Camara> camaras, List<Incidencia> incidencias) {
+        elementos.clear();
+        adaptador.setNotifyOnChange(false);
+        adaptador.clear();
+        for (Camara c : camaras) {
+            elementos.add(c);
+            adaptador.add("Cámara · " + c.getNombre());
+        }
+        for (Incidencia i : incidencias) {
+            elementos.add(i);
+            adaptador.add("Incidencia · " + i.getNombre());
+        }
+        adaptador.notifyDataSetChanged();
+        if (puntos.size() < 2)
+            tvResumen.setText("Mantén pulsado el mapa para marcar la ruta");
+        else
+            tvResumen.setText(String.format(Locale.getDefault(), "%d cámaras y %d incidencias en la ruta",
+                    camaras.size(), incidencias.size()));
+    }
+
+    private void borrar() {
+        puntos.clear();
+        linea.setPoints(new ArrayList<>());
+        boolean habiaCorredor = corredor != null;
+        corredor = null;
+        mostrarLista(new ArrayList<>(), new ArrayList<>());
+        if (habiaCorredor)
+            oyente.alCambiarCorredor();
+        mapa.invalidate();
+    }
+}
@@ -0,0 +1,86 @@
+package com.infocam.mapa;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.View;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import androidx.core.content.ContextCompat;
+
+import com.infocam.R;
+import com.infocam.model.Camara;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+
+/* Panel con las CAMARAS_CERCANAS cámaras más cercanas a la posición del usuario (vecinos más cercanos, k-NN).
+ * 1. La búsqueda se hace en el hilo que se le pasa (el de agrupación del mapa), nunca en el principal.
+ * 2. No se recorre la lista entera en cada lectura del GPS: VecinosCercanos consulta el R-tree solo cuando el usuario se ha movido lo
+ *    bastante como para que el resultado pueda cambiar, y si no cambia no se toca la interfaz.
+ * 3. Las filas se crean una vez y se reutilizan; al pulsar una se avisa a AlPulsar con su cámara.
+ * Hay uno por vista del mapa: cerrar() se llama cuando la vista se destruye. */
+public class PanelCamarasCercanas {
+    private static final int CAMARAS_CERCANAS = 5;
+
+    public interface AlPulsar {
+        void alPulsar(Camara camara);
+    }
+
+    private final View panel;
+    private final LinearLayout lista;
+    private final ExecutorService hilo;
+    private final AlPulsar alPulsar;
+    private final VecinosCercanos<Camara> vecinos = new VecinosCercanos<>(CAMARAS_CERCANAS); // Solo desde "hilo"
+    private final Handler hiloPrincipal = new Handler(Looper.getMainLooper());
+    private volatile boolean cerrado = false;
+
+    public PanelCamarasCercanas(View raiz, ExecutorService hilo, AlPulsar alPulsar) {
+        this.panel = raiz.findViewById(R.id.panelCercanas);
+        this.lista = raiz.findViewById(R.id.listaCercanas);
+        this.hilo = hilo;
+        this.alPulsar = alPulsar;
+    }
+
+    // Se puede llamar en cada lectura del GPS o cada vez que cambian las cámaras; solo repinta si cambia el resultado.
+    public void actualizar(CapaIndexada<Camara> capaCamaras, double lat, double lng) {
+        if (cerrado || hilo.isShutdown())
+            return;
+        hilo.execute(() -> {
+            List<VecinosCercanos.Vecino<Camara>> resultado = vecinos.actualizar(capaCamaras, lat, lng);
+            if (resultado != null)
+                hiloPrincipal.post(() -> {
+                    if (!cerrado)
+                        pintar(resultado);
+                });
+        });
+    }
+
+    public void cerrar() {
+        cerrado = true;
+    }
+
+    private void pintar(List<VecinosCercanos.Vecino<Camara>> resultado) {
+        while (lista.getChildCount() < resultado.size()) {
+            TextView fila = new TextView(lista.getContext());
+            fila.setTextColor(ContextCompat.getColor(lista.getContext(), R.color.background_dark));
+            fila.setPadding(0, 8, 0, 8);
+            lista.addView(fila);
+        }
+        for (int i = 0; i < lista.getChildCount(); i++) {
+            TextView fila = (TextView) lista.getChildAt(i);
+            if (i >= resultado.size()) {
+                fila.setVisibility(View.GONE);
+                continue;
+            }
+            Camara c = resultado.get(i).getElemento();
+            double metros = resultado.get(i).getMetros();
+            fila.setText(String.format(Locale.getDefault(), metros < 1000 ? "%s · %.0f m" : "%s · %.1f km",
+                    c.getNombre(), metros < 1000 ? metros : metros / 1000));
+            fila.setVisibility(View.VISIBLE);
+            fila.setOnClickListener(v -> alPulsar.alPulsar(c));
+        }
+        panel.setVisibility(resultado.isEmpty() ? View.GONE : View.VISIBLE);
+    }
+}
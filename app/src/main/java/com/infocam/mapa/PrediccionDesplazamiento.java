@@ -0,0 +1,63 @@
+package com.infocam.mapa;
+
+/* Estima hacia dónde se está moviendo el mapa a partir de los eventos de desplazamiento, para preparar esa zona antes de que llegue.
+ * 1. Cada evento aporta la posición del centro y el momento en que se produjo; de dos seguidos sale una velocidad (grados por ms).
+ * 2. La velocidad se suaviza (media exponencial) para que un evento raro no cambie la predicción de golpe.
+ * 3. Si el sentido del movimiento gira más de ANGULO_CAMBIO_RUMBO, se avisa de que el rumbo ha cambiado: lo preparado para la dirección
+ *    anterior ya no sirve y conviene cancelarlo.
+ * No depende de Android ni de osmdroid: solo trabaja con números. */
+public class PrediccionDesplazamiento {
+    private static final double SUAVIZADO = 0.4;            // Peso de la velocidad nueva frente a la acumulada
+    private static final long PAUSA_MAXIMA_MS = 250;        // Si pasan más de esto entre eventos, el gesto anterior ya terminó
+    private static final double VELOCIDAD_MINIMA = 1e-7;    // Grados por ms; por debajo consideramos que el mapa está quieto
+    private static final double COSENO_CAMBIO_RUMBO = Math.cos(Math.toRadians(60));
+
+    private long momentoAnterior = -1;
+    private double latAnterior, lngAnterior;
+    private double velocidadLat = 0, velocidadLng = 0;
+
+    /* Apunta la posición actual del centro del mapa. Devuelve true si el rumbo ha cambiado claramente respecto al que llevábamos (o si
+     * el mapa se ha parado), para que quien use la predicción cancele lo que estuviera preparando. */
+    public boolean registrar(long momentoMs, double lat, double lng) {
+        long intervalo = momentoMs - momentoAnterior;
+        boolean habiaRumbo = enMovimiento();
+        double anteriorLat = velocidadLat, anteriorLng = velocidadLng;
+
+        if (momentoAnterior < 0 || intervalo > PAUSA_MAXIMA_MS) {
+            velocidadLat = 0;
+            velocidadLng = 0;
+        } else if (intervalo > 0) {
+            velocidadLat = (1 - SUAVIZADO) * velocidadLat + SUAVIZADO * (lat - latAnterior) / intervalo;
+            velocidadLng = (1 - SUAVIZADO) * velocidadLng + SUAVIZADO * (lng - lngAnterior) / intervalo;
+        }
+        momentoAnterior = momentoMs;
+        latAnterior = lat;
+        lngAnterior = lng;
+
+        if (!habiaRumbo)
+            return false;
+        if (!enMovimiento())
+            return true;
+        // Coseno del ángulo entre la velocidad anterior y la nueva
+        double producto = anteriorLat * velocidadLat + anteriorLng * velocidadLng;
+        double modulos = Math.hypot(anteriorLat, anteriorLng) * Math.hypot(velocidadLat, velocidadLng);
+        return producto / modulos < COSENO_CAMBIO_RUMBO;
+    }
+
+    public boolean enMovimiento() {
+        return Math.hypot(velocidadLat, velocidadLng) > VELOCIDAD_MINIMA;
+    }
+
+    // Desplazamiento previsto {dLat, dLng} dentro de horizonteMs si se mantiene la velocidad, o null si el mapa está quieto.
+    public double[] predecir(long horizonteMs) {
+        if (!enMovimiento())
+            return null;
+        return new double[] { velocidadLat * horizonteMs, velocidadLng * horizonteMs };
+    }
+
+    public void reiniciar() {
+        momentoAnterior = -1;
+        velocidadLat = 0;
+        velocidadLng = 0;
+    }
+}
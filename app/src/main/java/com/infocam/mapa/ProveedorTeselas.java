@@ -0,0 +1,96 @@
+package com.infocam.mapa;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+
+import com.infocam.data.ArchivoTeselas;
+
+import org.osmdroid.tileprovider.MapTileProviderBasic;
+import org.osmdroid.tileprovider.modules.MapTileModuleProviderBase;
+import org.osmdroid.tileprovider.tilesource.BitmapTileSourceBase;
+import org.osmdroid.tileprovider.tilesource.ITileSource;
+import org.osmdroid.util.MapTileIndex;
+import org.osmdroid.util.TileSystem;
+
+import java.io.ByteArrayInputStream;
+
+/* Proveedor de teselas del mapa: el de osmdroid de siempre (caché SQLite propia, archivos, descarga...) con un paso más al principio,
+ * que mira si la tesela está en nuestro ArchivoTeselas (lo descargado por adelantado con DescargadorTeselas). Si está, se pinta desde
+ * ahí sin tocar la red; si no, osmdroid sigue su camino habitual. El archivo guarda las teselas de una única fuente (la del mapa). */
+public class ProveedorTeselas extends MapTileProviderBasic {
+
+    public ProveedorTeselas(Context contexto, ITileSource fuente, ArchivoTeselas archivo) {
+        super(contexto, fuente);
+        // Los módulos se consultan en orden, así que el archivo va el primero
+        mTileProviderList.add(0, new ModuloArchivo(archivo, fuente));
+    }
+
+    private static class ModuloArchivo extends MapTileModuleProviderBase {
+        private static final int HILOS = 2;
+        private static final int COLA_PENDIENTES = 40;
+
+        private final ArchivoTeselas archivo;
+        private volatile ITileSource fuente;
+
+        ModuloArchivo(ArchivoTeselas archivo, ITileSource fuente) {
+            super(HILOS, COLA_PENDIENTES);
+            this.archivo = archivo;
+            this.fuente = fuente;
+        }
+
+        @Override
+        public boolean getUsesDataConnection() {
+            return false;
+        }
+
+        @Override
+        protected String getName() {
+            return "Archivo de teselas offline";
+        }
+
+        @Override
+        protected String getThreadGroupName() {
+            return "archivoTeselas";
+        }
+
+        @Override
+        public TileLoader getTileLoader() {
+            return new CargadorArchivo();
+        }
+
+        @Override
+        public int getMinimumZoomLevel() {
+            ITileSource f = fuente;
+            return f != null ? f.getMinimumZoomLevel() : 0;
+        }
+
+        @Override
+        public int getMaximumZoomLevel() {
+            ITileSource f = fuente;
+            return f != null ? f.getMaximumZoomLevel() : TileSystem.getMaximumZoomLevel();
+        }
+
+        @Override
+        public void setTileSource(ITileSource fuente) {
+            this.fuente = fuente;
+        }
+
+        private class CargadorArchivo extends TileLoader {
+            @Override
+            public Drawable loadTile(long indice) throws CantContinueException {
+                ITileSource f = fuente;
+                if (f == null)
+                    return null;
+                byte[] datos = archivo.leer(MapTileIndex.getZoom(indice), MapTileIndex.getX(indice),
+                        MapTileIndex.getY(indice));
+                if (datos == null)
+                    return null; // No la tenemos: que la busque el siguiente módulo
+                try {
+                    return f.getDrawable(new ByteArrayInputStream(datos));
+                } catch (BitmapTileSourceBase.LowMemoryException e) {
+                    throw new CantContinueException(e);
+                }
+            }
+        }
+    }
+}
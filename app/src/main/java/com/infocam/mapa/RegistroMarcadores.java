@@ -0,0 +1,98 @@
+package com.infocam.mapa;
+
+import org.osmdroid.views.MapView;
+import org.osmdroid.views.overlay.Marker;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/* Este registro guarda las burbujas de grupo que ya están dibujadas en el mapa, identificadas por una clave que resume todo lo que
+ * muestran (tipo, posición y cantidad). En lugar de borrar todas las capas y volver a crearlas cada vez que se repinta, comparamos:
+ * 1. Si la clave ya está en el mapa, la burbuja es idéntica y la dejamos tal cual.
+ * 2. Si no está, se crea; y las que no aparecen en la pasada nueva se quitan del mapa.
+ * Así, en la mayoría de los onResume() no se toca ni un solo marcador.
+ * Los marcadores que se quitan (por ejemplo, porque han salido de la pantalla) no se tiran: se guardan en una reserva y se reutilizan
+ * con reutilizar() para no crear objetos nuevos cada vez que el usuario desplaza el mapa. */
+public class RegistroMarcadores {
+    private final MapView mapa;
+    private final Map<String, Marker> marcadores = new HashMap<>();
+    private final Map<String, Boolean> vistos = new HashMap<>();
+    private final ArrayDeque<Marker> reserva = new ArrayDeque<>();
+    private int cambios = 0;
+
+    // Como mucho guardamos estos marcadores sin usar; más no aportan nada y solo ocupan memoria.
+    private static final int MAXIMO_RESERVA = 256;
+
+    public RegistroMarcadores(MapView mapa) {
+        this.mapa = mapa;
+    }
+
+    // Al empezar una pasada damos por hecho que ningún marcador sigue siendo necesario hasta que se demuestre lo contrario.
+    public void iniciarPasada() {
+        vistos.clear();
+        cambios = 0;
+    }
+
+    // Devuelve true si el marcador ya está en el mapa. En ese caso no hay que hacer nada más con él.
+    public boolean conservar(String clave) {
+        if (!marcadores.containsKey(clave))
+            return false;
+        vistos.put(clave, Boolean.TRUE);
+        return true;
+    }
+
+    // Devuelve un marcador quitado anteriormente para volver a usarlo, o null si no queda ninguno. Quien lo recibe debe configurarlo entero.
+    public Marker reutilizar() {
+        return reserva.poll();
+    }
+
+    // Guardamos el marcador con su clave y lo añadimos a las capas del mapa.
+    public void registrar(String clave, Marker marcador) {
+        Marker anterior = marcadores.put(clave, marcador);
+        if (anterior != marcador) {
+            if (anterior != null)
+                quitar(anterior);
+            mapa.getOverlays().add(marcador);
+        }
+        vistos.put(clave, Boolean.TRUE);
+        cambios++;
+    }
+
+    /* Quitamos del mapa los marcadores que no se han conservado ni registrado en esta pasada. Devuelve cuántos marcadores se han
+     * creado o eliminado; si es 0, el mapa está igual que antes y no hace falta redibujarlo. */
+    public int finalizarPasada() {
+        int eliminados = 0;
+        Iterator<Map.Entry<String, Marker>> it = marcadores.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Marker> entrada = it.next();
+            if (!vistos.containsKey(entrada.getKey())) {
+                quitar(entrada.getValue());
+                it.remove();
+                eliminados++;
+            }
+        }
+        vistos.clear();
+        return cambios + eliminados;
+    }
+
+    // Al cerrar la vista: quita todos los marcadores del mapa y vacía la reserva, porque todos apuntan al MapView que se destruye.
+    public void vaciar() {
+        for (Marker m : marcadores.values()) {
+            m.closeInfoWindow();
+            mapa.getOverlays().remove(m);
+        }
+        reserva.clear();
+        marcadores.clear();
+        vistos.clear();
+        cambios = 0;
+    }
+
+    private void quitar(Marker m) {
+        m.closeInfoWindow();
+        mapa.getOverlays().remove(m);
+        if (reserva.size() < MAXIMO_RESERVA)
+            reserva.push(m);
+    }
+}
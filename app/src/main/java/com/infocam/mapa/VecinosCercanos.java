@@ -0,0 +1,126 @@
+package com.infocam.mapa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/* Mantiene los k elementos de una capa más cercanos a una posición que se va moviendo (la del usuario), sin rehacer la búsqueda en cada
+ * lectura del GPS.
+ * 1. Al buscar en el índice pedimos algunos candidatos de más (k * FACTOR_CANDIDATOS) y apuntamos la distancia del último: ningún
+ *    elemento fuera de los candidatos estaba más cerca que eso.
+ * 2. Si nos movemos d metros, un elemento de fuera puede haberse acercado como mucho d. Así que, mientras el k-ésimo candidato siga a
+ *    menos de (radio de los candidatos - d), la respuesta correcta está entre los candidatos y basta con reordenarlos (unas decenas).
+ * 3. Solo cuando eso deja de cumplirse, o cambia la capa, se vuelve a consultar el índice.
+ * Movimientos de menos de MOVIMIENTO_MINIMO_METROS (el ruido del GPS parado) no cambian nada. No es seguro usarlo desde varios hilos. */
+public class VecinosCercanos<T> {
+    private static final int FACTOR_CANDIDATOS = 4;
+    private static final double MOVIMIENTO_MINIMO_METROS = 10;
+
+    // Un elemento y su distancia a la posición consultada.
+    public static class Vecino<T> {
+        private final T elemento;
+        private final double metros;
+
+        Vecino(T elemento, double metros) {
+            this.elemento = elemento;
+            this.metros = metros;
+        }
+
+        public T getElemento() {
+            return elemento;
+        }
+
+        public double getMetros() {
+            return metros;
+        }
+    }
+
+    private final int k;
+    private CapaIndexada<T> capa;
+    private int[] candidatos = new int[0];
+    private double radioCandidatos;           // Distancia del último candidato al origen; infinita si la capa entera son candidatos
+    private double latOrigen, lngOrigen;      // Donde se consultó el índice por última vez
+    private double latUltima, lngUltima;      // Donde se calculó el último resultado
+    private List<Vecino<T>> ultimo;
+
+    public VecinosCercanos(int k) {
+        this.k = k;
+    }
+
+    /* Calcula los k vecinos de (lat, lng) en la capa. Devuelve null si el resultado no ha cambiado respecto a la llamada anterior (misma
+     * capa y apenas nos hemos movido), para que no haga falta repintar nada. */
+    public List<Vecino<T>> actualizar(CapaIndexada<T> capa, double lat, double lng) {
+        if (capa == this.capa && ultimo != null
+                && IndiceEspacial.distanciaMetros(latUltima, lngUltima, lat, lng) < MOVIMIENTO_MINIMO_METROS)
+            return null;
+
+        List<Vecino<T>> resultado = capa == this.capa ? reordenarCandidatos(lat, lng) : null;
+        if (resultado == null) {
+            consultarIndice(capa, lat, lng);
+            resultado = reordenarCandidatos(lat, lng);
+        }
+        latUltima = lat;
+        lngUltima = lng;
+        if (mismosElementos(resultado, ultimo)) {
+            ultimo = resultado;
+            return null;
+        }
+        ultimo = resultado;
+        return resultado;
+    }
+
+    // Olvida la búsqueda anterior: la siguiente llamada a actualizar() consulta el índice y siempre devuelve resultado.
+    public void reiniciar() {
+        capa = null;
+        ultimo = null;
+    }
+
+    private void consultarIndice(CapaIndexada<T> capa, double lat, double lng) {
+        this.capa = capa;
+        int pedidos = k * FACTOR_CANDIDATOS;
+        candidatos = capa.cercanos(lat, lng, pedidos);
+        radioCandidatos = candidatos.length < pedidos ? Double.POSITIVE_INFINITY
+                : distancia(candidatos[candidatos.length - 1], lat, lng);
+        latOrigen = lat;
+        lngOrigen = lng;
+    }
+
+    // Ordena los candidatos por distancia a la nueva posición. Devuelve null si ya no se puede garantizar que sean los k más cercanos.
+    private List<Vecino<T>> reordenarCandidatos(double lat, double lng) {
+        int n = candidatos.length;
+        // Distancia y posición juntas en un long para ordenar sin crear objetos (la distancia en metros es positiva y cabe de sobra)
+        long[] orden = new long[n];
+        for (int i = 0; i < n; i++)
+            orden[i] = ((long) Math.ceil(distancia(candidatos[i], lat, lng)) << 32) | i;
+        Arrays.sort(orden);
+
+        int tomados = Math.min(k, n);
+        if (tomados > 0) {
+            double margen = radioCandidatos - IndiceEspacial.distanciaMetros(latOrigen, lngOrigen, lat, lng);
+            if ((orden[tomados - 1] >>> 32) > margen)
+                return null;
+        }
+        List<Vecino<T>> resultado = new ArrayList<>(tomados);
+        for (int i = 0; i < tomados; i++) {
+            int posicion = candidatos[(int) orden[i]];
+            resultado.add(new Vecino<>(capa.getElementos().get(posicion), orden[i] >>> 32));
+        }
+        return resultado;
+    }
+
+    private double distancia(int posicion, double lat, double lng) {
+        return IndiceEspacial.distanciaMetros(lat, lng, capa.getLatitud(posicion), capa.getLongitud(posicion));
+    }
+
+    // Compara elementos y distancias redondeadas a la decena de metros, que es lo que se muestra.
+    private static <T> boolean mismosElementos(List<Vecino<T>> a, List<Vecino<T>> b) {
+        if (b == null || a.size() != b.size())
+            return false;
+        for (int i = 0; i < a.size(); i++) {
+            if (a.get(i).elemento != b.get(i).elemento
+                    || Math.round(a.get(i).metros / 10) != Math.round(b.get(i).metros / 10))
+                return false;
+        }
+        return true;
+    }
+}
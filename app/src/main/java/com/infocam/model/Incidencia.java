@@ -69,6 +69,28 @@ public class Incidencia {
         this.usuario.id = idUsuario;
     }
 
+    // Los dos campos tal cual, sin el respaldo de getIdUsuario() ni el relleno de setIdUsuario(). Solo para AdaptadoresJson, que
+    // tiene que leer y escribir lo mismo que leía y escribía Gson por reflexión. El anidado es null si no hay objeto "usuario".
+    public int getIdUsuarioDirecto() {
+        return idUsuario;
+    }
+
+    public Integer getIdUsuarioAnidado() {
+        return usuario != null ? usuario.id : null;
+    }
+
+    public void setIdsUsuario(int directo, Integer anidado) {
+        this.idUsuario = directo;
+        if (anidado == null) {
+            this.usuario = null;
+        } else {
+            if (this.usuario == null) {
+                this.usuario = new UsuarioNested();
+            }
+            this.usuario.id = anidado;
+        }
+    }
+
     public String getNombre() {
         return nombre;
     }
@@ -133,6 +155,18 @@ public class Incidencia {
         this.externalId = externalId;
     }
 
+    /**
+     * Helper que devuelve una clave única para la incidencia. Las oficiales pueden
+     * no tener id propio, así que usamos su externalId o, en último caso, la posición.
+     */
+    public String obtenerClave() {
+        if (id != null)
+            return "i" + id;
+        if (isOficial())
+            return "e" + externalId;
+        return "p" + latitud + "," + longitud;
+    }
+
     /**
      * Helper para saber si la incidencia es oficial (OpenData)
      */
@@ -9,4 +9,12 @@ public class LoginRequest {
         this.username = username;
         this.password = password;
     }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getPassword() {
+        return password;
+    }
 }
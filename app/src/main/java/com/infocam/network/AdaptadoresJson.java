@@ -0,0 +1,337 @@
+package com.infocam.network;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import com.infocam.model.Camara;
+import com.infocam.model.Favorito;
+import com.infocam.model.Incidencia;
+import com.infocam.model.LoginRequest;
+import com.infocam.model.Usuario;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/* Un único Gson para toda la app con un "traductor" (TypeAdapter) escrito a mano para cada modelo.
+ * Sin ellos, Gson lee los campos privados por reflexión: la primera vez inspecciona cada clase y sus anotaciones, y después rellena
+ * cada campo a través de Field.set(), cajeando los números. Aquí se llama directamente a los setters y getters, campo a campo.
+ * Los nombres son los mismos que antes (incluidos los @SerializedName y sus alternativos) y, como en Gson, los campos a null no se
+ * escriben, los que no conocemos se saltan y un null en un campo numérico o booleano deja el valor por defecto.
+ * Si se añade un campo a un modelo, hay que añadirlo también aquí: Gson ya no lo descubrirá solo. */
+public final class AdaptadoresJson {
+
+    private static final Gson gson = new GsonBuilder()
+            .registerTypeAdapter(Camara.class, new AdaptadorCamara().nullSafe())
+            .registerTypeAdapter(Incidencia.class, new AdaptadorIncidencia().nullSafe())
+            .registerTypeAdapter(Favorito.class, new AdaptadorFavorito().nullSafe())
+            .registerTypeAdapter(Usuario.class, new AdaptadorUsuario().nullSafe())
+            .registerTypeAdapter(LoginRequest.class, new AdaptadorLoginRequest().nullSafe())
+            .create();
+
+    private AdaptadoresJson() {
+    }
+
+    // Es inmutable y se puede usar desde varios hilos a la vez (Retrofit y la lectura por lotes lo comparten).
+    public static Gson obtenerGson() {
+        return gson;
+    }
+
+    // Cámaras: la lista del mapa, la de favoritos y la descarga por lotes.
+    static class AdaptadorCamara extends TypeAdapter<Camara> {
+        @Override
+        public void write(JsonWriter salida, Camara c) throws IOException {
+            salida.beginObject();
+            salida.name("id").value(c.getId());
+            salida.name("nombre").value(c.getNombre());
+            salida.name("latitud").value(c.getLatitud());
+            salida.name("longitud").value(c.getLongitud());
+            salida.name("imagen").value(c.getImagen());
+            salida.name("activa").value(c.isActiva());
+            salida.endObject();
+        }
+
+        @Override
+        public Camara read(JsonReader entrada) throws IOException {
+            Camara c = new Camara();
+            entrada.beginObject();
+            while (entrada.hasNext()) {
+                String nombre = entrada.nextName();
+                if (saltarNulo(entrada))
+                    continue;
+                switch (nombre) {
+                    case "id": c.setId(entrada.nextInt()); break;
+                    case "nombre": c.setNombre(leerTexto(entrada)); break;
+                    case "latitud": c.setLatitud(entrada.nextDouble()); break;
+                    case "longitud": c.setLongitud(entrada.nextDouble()); break;
+                    case "imagen": c.setImagen(leerTexto(entrada)); break;
+                    case "activa": c.setActiva(leerBooleano(entrada)); break;
+                    default: entrada.skipValue();
+                }
+            }
+            entrada.endObject();
+            return c;
+        }
+    }
+
+    /* Incidencias. El usuario que la creó puede llegar como "idUsuario" o como objeto anidado "usuario": {"id": ...}, y al enviarla
+     * la API de Spring Boot espera el anidado. Se guardan y se vuelven a escribir las dos formas tal como llegan (como hacía la
+     * reflexión); getIdUsuario() ya se encarga de usar la anidada cuando falta "idUsuario". */
+    static class AdaptadorIncidencia extends TypeAdapter<Incidencia> {
+        @Override
+        public void write(JsonWriter salida, Incidencia i) throws IOException {
+            salida.beginObject();
+            if (i.getId() != null)
+                salida.name("id").value(i.getId());
+            salida.name("idUsuario").value(i.getIdUsuarioDirecto());
+            Integer idAnidado = i.getIdUsuarioAnidado();
+            if (idAnidado != null) {
+                salida.name("usuario").beginObject();
+                salida.name("id").value(idAnidado);
+                salida.endObject();
+            }
+            salida.name("externalId").value(i.getExternalId());
+            salida.name("nombre").value(i.getNombre());
+            salida.name("tipoIncidencia").value(i.getTipoIncidencia());
+            salida.name("causa").value(i.getCausa());
+            salida.name("fecha_inicio").value(i.getFechaInicio());
+            salida.name("fecha_fin").value(i.getFechaFin());
+            salida.name("latitud").value(i.getLatitud());
+            salida.name("longitud").value(i.getLongitud());
+            salida.endObject();
+        }
+
+        @Override
+        public Incidencia read(JsonReader entrada) throws IOException {
+            Incidencia i = new Incidencia();
+            int idUsuario = 0;
+            Integer idAnidado = null;
+            entrada.beginObject();
+            while (entrada.hasNext()) {
+                String nombre = entrada.nextName();
+                if (saltarNulo(entrada))
+                    continue;
+                switch (nombre) {
+                    case "id": i.setId(entrada.nextInt()); break;
+                    case "idUsuario": idUsuario = entrada.nextInt(); break;
+                    case "usuario": idAnidado = leerIdAnidado(entrada); break;
+                    case "externalId": i.setExternalId(leerTexto(entrada)); break;
+                    case "nombre": i.setNombre(leerTexto(entrada)); break;
+                    case "tipoIncidencia": i.setTipoIncidencia(leerTexto(entrada)); break;
+                    case "causa": i.setCausa(leerTexto(entrada)); break;
+                    case "fecha_inicio":
+                    case "fechaInicio": i.setFechaInicio(leerTexto(entrada)); break;
+                    case "fecha_fin":
+                    case "fechaFin": i.setFechaFin(leerTexto(entrada)); break;
+                    case "latitud": i.setLatitud(entrada.nextDouble()); break;
+                    case "longitud": i.setLongitud(entrada.nextDouble()); break;
+                    default: entrada.skipValue();
+                }
+            }
+            entrada.endObject();
+            i.setIdsUsuario(idUsuario, idAnidado);
+            return i;
+        }
+
+        // Del objeto "usuario" solo nos interesa el id; el resto (nombre, email...) se salta.
+        private static int leerIdAnidado(JsonReader entrada) throws IOException {
+            int id = 0;
+            entrada.beginObject();
+            while (entrada.hasNext()) {
+                if (entrada.nextName().equals("id") && !saltarNulo(entrada))
+                    id = entrada.nextInt();
+                else
+                    entrada.skipValue();
+            }
+            entrada.endObject();
+            return id;
+        }
+    }
+
+    // Favoritos: hoy solo se guardan en SQLite, pero así no hay ningún modelo que dependa de la reflexión.
+    static class AdaptadorFavorito extends TypeAdapter<Favorito> {
+        @Override
+        public void write(JsonWriter salida, Favorito f) throws IOException {
+            salida.beginObject();
+            salida.name("idLocal").value(f.getIdLocal());
+            salida.name("idUsuario").value(f.getIdUsuario());
+            salida.name("idCamara").value(f.getIdCamara());
+            salida.name("nombre").value(f.getNombre());
+            salida.name("direccion").value(f.getDireccion());
+            salida.name("latitud").value(f.getLatitud());
+            salida.name("longitud").value(f.getLongitud());
+            salida.name("imagen").value(f.getUrlImagen());
+            salida.endObject();
+        }
+
+        @Override
+        public Favorito read(JsonReader entrada) throws IOException {
+            Favorito f = new Favorito();
+            entrada.beginObject();
+            while (entrada.hasNext()) {
+                String nombre = entrada.nextName();
+                if (saltarNulo(entrada))
+                    continue;
+                switch (nombre) {
+                    case "idLocal": f.setIdLocal(entrada.nextInt()); break;
+                    case "idUsuario": f.setIdUsuario(entrada.nextInt()); break;
+                    case "idCamara": f.setIdCamara(entrada.nextInt()); break;
+                    case "nombre": f.setNombre(leerTexto(entrada)); break;
+                    case "direccion": f.setDireccion(leerTexto(entrada)); break;
+                    case "latitud": f.setLatitud(entrada.nextDouble()); break;
+                    case "longitud": f.setLongitud(entrada.nextDouble()); break;
+                    case "imagen": f.setUrlImagen(leerTexto(entrada)); break;
+                    default: entrada.skipValue();
+                }
+            }
+            entrada.endObject();
+            return f;
+        }
+    }
+
+    // Usuario: login, registro y actualización del perfil. Sus listas usan los adaptadores de arriba.
+    static class AdaptadorUsuario extends TypeAdapter<Usuario> {
+        private final AdaptadorIncidencia incidencias = new AdaptadorIncidencia();
+        private final AdaptadorCamara camaras = new AdaptadorCamara();
+
+        @Override
+        public void write(JsonWriter salida, Usuario u) throws IOException {
+            salida.beginObject();
+            if (u.getId() != null)
+                salida.name("id").value(u.getId());
+            salida.name("is_admin").value(u.isAdmin());
+            salida.name("username").value(u.getUsername());
+            salida.name("password").value(u.getPassword());
+            salida.name("nombre").value(u.getNombre());
+            salida.name("apellido").value(u.getApellido());
+            salida.name("email").value(u.getEmail());
+            salida.name("telefono").value(u.getTelefono());
+            if (u.getIncidencias() != null) {
+                salida.name("incidencias").beginArray();
+                for (Incidencia i : u.getIncidencias())
+                    escribir(salida, incidencias, i);
+                salida.endArray();
+            }
+            if (u.getFavoritos() != null) {
+                salida.name("favoritos").beginArray();
+                for (Camara c : u.getFavoritos())
+                    escribir(salida, camaras, c);
+                salida.endArray();
+            }
+            salida.name("token").value(u.getToken());
+            salida.endObject();
+        }
+
+        @Override
+        public Usuario read(JsonReader entrada) throws IOException {
+            Usuario u = new Usuario();
+            entrada.beginObject();
+            while (entrada.hasNext()) {
+                String nombre = entrada.nextName();
+                if (entrada.peek() == JsonToken.NULL) {
+                    entrada.nextNull();
+                    // Como hacía Gson: un null explícito vacía las listas (los campos que no son primitivos)
+                    if (nombre.equals("incidencias"))
+                        u.setIncidencias(null);
+                    else if (nombre.equals("favoritos"))
+                        u.setFavoritos(null);
+                    continue;
+                }
+                switch (nombre) {
+                    case "id": u.setId(entrada.nextInt()); break;
+                    case "is_admin":
+                    case "admin": u.setAdmin(leerBooleano(entrada)); break;
+                    case "username": u.setUsername(leerTexto(entrada)); break;
+                    case "password": u.setPassword(leerTexto(entrada)); break;
+                    case "nombre":
+                    case "firstName": u.setNombre(leerTexto(entrada)); break;
+                    case "apellido":
+                    case "lastName": u.setApellido(leerTexto(entrada)); break;
+                    case "email": u.setEmail(leerTexto(entrada)); break;
+                    case "telefono": u.setTelefono(entrada.nextLong()); break;
+                    case "incidencias": u.setIncidencias(leerLista(entrada, incidencias)); break;
+                    case "favoritos": u.setFavoritos(leerLista(entrada, camaras)); break;
+                    case "token": u.setToken(leerTexto(entrada)); break;
+                    default: entrada.skipValue();
+                }
+            }
+            entrada.endObject();
+            return u;
+        }
+    }
+
+    // Credenciales del login: solo se envían, pero se puede leer por simetría.
+    static class AdaptadorLoginRequest extends TypeAdapter<LoginRequest> {
+        @Override
+        public void write(JsonWriter salida, LoginRequest l) throws IOException {
+            salida.beginObject();
+            salida.name("username").value(l.getUsername());
+            salida.name("password").value(l.getPassword());
+            salida.endObject();
+        }
+
+        @Override
+        public LoginRequest read(JsonReader entrada) throws IOException {
+            String usuario = null;
+            String contrasena = null;
+            entrada.beginObject();
+            while (entrada.hasNext()) {
+                String nombre = entrada.nextName();
+                if (saltarNulo(entrada))
+                    continue;
+                switch (nombre) {
+                    case "username": usuario = leerTexto(entrada); break;
+                    case "password": contrasena = leerTexto(entrada); break;
+                    default: entrada.skipValue();
+                }
+            }
+            entrada.endObject();
+            return new LoginRequest(usuario, contrasena);
+        }
+    }
+
+    // Si el valor es null lo consume y devuelve true: el campo se queda como estaba.
+    private static boolean saltarNulo(JsonReader entrada) throws IOException {
+        if (entrada.peek() != JsonToken.NULL)
+            return false;
+        entrada.nextNull();
+        return true;
+    }
+
+    // Como Gson, acepta también números y booleanos en un campo de texto.
+    private static String leerTexto(JsonReader entrada) throws IOException {
+        if (entrada.peek() == JsonToken.BOOLEAN)
+            return Boolean.toString(entrada.nextBoolean());
+        return entrada.nextString();
+    }
+
+    // Como Gson, acepta también "true" / "false" entre comillas.
+    private static boolean leerBooleano(JsonReader entrada) throws IOException {
+        if (entrada.peek() == JsonToken.STRING)
+            return Boolean.parseBoolean(entrada.nextString());
+        return entrada.nextBoolean();
+    }
+
+    private static <T> List<T> leerLista(JsonReader entrada, TypeAdapter<T> adaptador) throws IOException {
+        List<T> lista = new ArrayList<>();
+        entrada.beginArray();
+        while (entrada.hasNext()) {
+            if (saltarNulo(entrada))
+                lista.add(null);
+            else
+                lista.add(adaptador.read(entrada));
+        }
+        entrada.endArray();
+        return lista;
+    }
+
+    private static <T> void escribir(JsonWriter salida, TypeAdapter<T> adaptador, T valor) throws IOException {
+        if (valor == null)
+            salida.nullValue();
+        else
+            adaptador.write(salida, valor);
+    }
+}
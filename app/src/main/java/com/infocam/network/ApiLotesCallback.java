@@ -0,0 +1,17 @@
+package com.infocam.network;
+
+import java.util.List;
+
+/* Como ApiCallback, pero para respuestas muy largas que se entregan por partes según se van leyendo, sin esperar a que termine la
+ * descarga. Todos los métodos se llaman en el hilo principal y en orden: varios onLote y, al final, onSuccess o onError.
+ * @param <T> Tipo de cada elemento de la lista (Camara, etc.) */
+public interface ApiLotesCallback<T> {
+    // Un trozo de la lista, en el mismo orden en que viene en el JSON. La lista es nueva en cada llamada y se puede guardar.
+    void onLote(List<T> lote);
+
+    // La lista ha llegado completa; "total" es la suma de todos los lotes.
+    void onSuccess(int total);
+
+    // Si falla a mitad, los lotes ya entregados se quedan como estaban.
+    void onError(String error);
+}
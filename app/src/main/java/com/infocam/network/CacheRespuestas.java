@@ -0,0 +1,155 @@
+package com.infocam.network;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Cache;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import retrofit2.Converter;
+import retrofit2.Retrofit;
+
+/* Caché HTTP en disco para las respuestas GET (cámaras, favoritos, tipos de incidencia...) con revalidación condicional.
+ * 1. OkHttp guarda cada respuesta junto a su ETag / Last-Modified. La siguiente vez pregunta al servidor con If-None-Match /
+ *    If-Modified-Since y, si contesta 304 (no ha cambiado), usa el cuerpo guardado sin volver a descargarlo.
+ * 2. Aun así, Retrofit volvería a convertir ese JSON en objetos. Para evitarlo, el interceptor marca cada respuesta con su "versión"
+ *    (dirección + ETag o Last-Modified) como un parámetro del Content-Type, que es lo único de la respuesta que llega al conversor.
+ * 3. El conversor recuerda el último objeto convertido de cada versión: si llega otra vez la misma (304 o acierto de caché), devuelve
+ *    directamente la lista ya convertida. Por eso las listas que devuelve la API no deben modificarse.
+ * Los contadores permiten comprobar cuántas peticiones se han ahorrado. Todo funciona solo si el servidor envía ETag o Last-Modified. */
+public class CacheRespuestas {
+    private static final long TAMANO_CACHE_BYTES = 10 * 1024 * 1024;
+    private static final String PARAMETRO_VERSION = "infocam-version";
+    private static final int MAXIMO_CONVERTIDOS = 8;
+
+    private static final AtomicInteger aciertos = new AtomicInteger();        // Servidas desde disco sin preguntar al servidor
+    private static final AtomicInteger revalidaciones = new AtomicInteger();  // El servidor contestó 304
+    private static final AtomicInteger fallos = new AtomicInteger();          // Hubo que descargar el cuerpo completo
+    private static final AtomicInteger reutilizadas = new AtomicInteger();    // Listas devueltas sin volver a convertir el JSON
+
+    // Última versión convertida de cada respuesta, de la menos a la más usada recientemente.
+    private static final Map<String, Object> convertidos = new LinkedHashMap<String, Object>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Object> mayor) {
+            return size() > MAXIMO_CONVERTIDOS;
+        }
+    };
+
+    private CacheRespuestas() {
+    }
+
+    public static Cache crearCache(File directorio) {
+        return new Cache(new File(directorio, "http"), TAMANO_CACHE_BYTES);
+    }
+
+    // Interceptor de aplicación: cuenta de dónde ha salido cada respuesta GET y le pone su versión.
+    public static Interceptor interceptor() {
+        return cadena -> {
+            Request peticion = cadena.request();
+            Response respuesta = cadena.proceed(peticion);
+            if (!"GET".equals(peticion.method()))
+                return respuesta;
+
+            Response red = respuesta.networkResponse();
+            if (red == null)
+                aciertos.incrementAndGet();
+            else if (red.code() == 304)
+                revalidaciones.incrementAndGet();
+            else
+                fallos.incrementAndGet();
+
+            ResponseBody cuerpo = respuesta.body();
+            String validador = respuesta.header("ETag", respuesta.header("Last-Modified"));
+            if (!respuesta.isSuccessful() || cuerpo == null || cuerpo.contentType() == null || validador == null)
+                return respuesta;
+
+            String version = resumen(peticion.url() + "|" + validador);
+            MediaType tipo = MediaType.parse(cuerpo.contentType() + "; " + PARAMETRO_VERSION + "=" + version);
+            return respuesta.newBuilder()
+                    .body(ResponseBody.create(cuerpo.source(), tipo, cuerpo.contentLength()))
+                    .build();
+        };
+    }
+
+    // Se registra en Retrofit antes del conversor de Gson, que es el que hace el trabajo cuando la versión es nueva.
+    public static Converter.Factory conversor() {
+        return new Converter.Factory() {
+            @Override
+            public Converter<ResponseBody, ?> responseBodyConverter(Type tipo, Annotation[] anotaciones, Retrofit retrofit) {
+                Converter<ResponseBody, ?> siguiente = retrofit.nextResponseBodyConverter(this, tipo, anotaciones);
+                return cuerpo -> convertir(cuerpo, tipo, siguiente);
+            }
+        };
+    }
+
+    private static Object convertir(ResponseBody cuerpo, Type tipo, Converter<ResponseBody, ?> siguiente) throws IOException {
+        MediaType tipoCuerpo = cuerpo.contentType();
+        String version = tipoCuerpo != null ? tipoCuerpo.parameter(PARAMETRO_VERSION) : null;
+        if (version != null) {
+            version = tipo + "|" + version; // Por si dos métodos de la API apuntan a la misma dirección con tipos distintos
+            Object guardado;
+            synchronized (convertidos) {
+                guardado = convertidos.get(version);
+            }
+            if (guardado != null) {
+                cuerpo.close(); // No hace falta leerlo: ya lo tenemos convertido
+                reutilizadas.incrementAndGet();
+                return guardado;
+            }
+        }
+        Object convertido = siguiente.convert(cuerpo);
+        if (version != null && convertido != null) {
+            synchronized (convertidos) {
+                convertidos.put(version, convertido);
+            }
+        }
+        return convertido;
+    }
+
+    // SHA-1 en hexadecimal: cabe como parámetro del Content-Type (la dirección no, lleva caracteres especiales).
+    private static String resumen(String texto) {
+        try {
+            byte[] bytes = MessageDigest.getInstance("SHA-1").digest(texto.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes)
+                hex.append(String.format("%02x", b));
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(texto.hashCode()); // No ocurre en Android: SHA-1 siempre está disponible
+        }
+    }
+
+    // Al cerrar sesión: lo convertido puede contener datos del usuario anterior.
+    public static void olvidarConvertidos() {
+        synchronized (convertidos) {
+            convertidos.clear();
+        }
+    }
+
+    public static int getAciertos() {
+        return aciertos.get();
+    }
+
+    public static int getRevalidaciones() {
+        return revalidaciones.get();
+    }
+
+    public static int getFallos() {
+        return fallos.get();
+    }
+
+    public static int getReutilizadas() {
+        return reutilizadas.get();
+    }
+}
@@ -7,6 +7,7 @@ import com.infocam.model.Usuario;
 
 import java.util.List;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.http.Body;
 import retrofit2.http.GET;
@@ -15,6 +16,7 @@ import retrofit2.http.POST;
 import retrofit2.http.PUT;
 import retrofit2.http.Path;
 import retrofit2.http.Query;
+import retrofit2.http.Streaming;
 
 // Esta interfaz NO contiene ningún código logico. Lo único que incluye son anotaciones que le dicen a Retrofit CÓMO CONSTRUIR las peticiones HTTP.
 public interface InfocamRemoteApi {
@@ -31,6 +33,10 @@ public interface InfocamRemoteApi {
         @GET("camaras/activas")
         Call<List<Camara>> getCamarasActivas(@Header("Authorization") String token); // Cuando utilizamos "@Header", estamos inyectando el Token de SessionManager, necesario para saber que el usuario es correcto.
 
+        @Streaming // El cuerpo no se lee entero en memoria: se va convirtiendo según llega (ver obtenerCamarasPorLotes).
+        @GET("camaras/activas")
+        Call<ResponseBody> getCamarasActivasStreaming(@Header("Authorization") String token);
+
         @POST("camaras/{idCamara}/favorita")
         Call<Void> toggleFavorito(
                         @Header("Authorization") String token,
@@ -1,15 +1,25 @@
 package com.infocam.network;
 
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
 import com.infocam.model.Camara;
 import com.infocam.model.Incidencia;
 import com.infocam.model.LoginRequest;
 import com.infocam.model.Usuario;
 
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
+import okhttp3.ResponseBody;
 import retrofit2.Call;
 import retrofit2.Callback;
 import retrofit2.Response;
@@ -21,10 +31,22 @@ public class InfocamServiceClient {
     // Crearemos las variables necesarias para utilizar la librería de Retrofit.
     private static InfocamServiceClient instanciaUnica;
     private final InfocamRemoteApi infocamRemoteApi;
+    // Las incidencias se piden por tramos de tiempo fijos para que la dirección se repita y se pueda cachear.
+    private static final long MINUTOS_TRAMO = 15;
+    private final VigenciaIncidencias vigencia = new VigenciaIncidencias();
+    // Une las peticiones iguales que se lanzan mientras otra ya está en camino (ver PeticionesCompartidas).
+    private final PeticionesCompartidas peticionesCompartidas = new PeticionesCompartidas();
+    // Para las descargas por partes: se leen en un hilo propio y los lotes se entregan en el principal.
+    private static final int TAMANO_LOTE_CAMARAS = 500;
+    private final InfocamRemoteApi infocamRemoteApiStreaming;
+    private final ExecutorService hiloLectura = Executors.newSingleThreadExecutor();
+    private final Handler hiloPrincipal = new Handler(Looper.getMainLooper());
+    private final Gson gson = AdaptadoresJson.obtenerGson();
 
     // Con este constructor privado accederemos a la configuración base (Retrofit.getClient() e implementaremos automáticamente los métodos de la interfaz (.create)).
     private InfocamServiceClient() {
         infocamRemoteApi = RetrofitClient.getClient().create(InfocamRemoteApi.class);
+        infocamRemoteApiStreaming = RetrofitClient.getClienteStreaming().create(InfocamRemoteApi.class);
     }
 
     // Para evitar que cada parte de la app utilice un cliente de red distinto, crearemos un método "synchronized" que obligue a la app a utilizar el mismo (solo una parte podrá entrar cada vez).
@@ -112,6 +134,10 @@ public class InfocamServiceClient {
     // |------------------------------------------------------------------------------|
 
     public void obtenerCamarasActivas(String token, ApiCallback<List<Camara>> callback) {
+        peticionesCompartidas.ejecutar("camaras|" + token, callback, repartidor -> descargarCamarasActivas(token, repartidor));
+    }
+
+    private void descargarCamarasActivas(String token, ApiCallback<List<Camara>> callback) {
         infocamRemoteApi.getCamarasActivas("Bearer " + token).enqueue(new Callback<List<Camara>>() {
             @Override
             public void onResponse(Call<List<Camara>> call, Response<List<Camara>> response) {
@@ -130,6 +156,52 @@ public class InfocamServiceClient {
         });
     }
 
+    /* Variante por partes de obtenerCamarasActivas para listas muy grandes. En vez de esperar a tener todo el JSON convertido, lo vamos
+     * leyendo con un JsonReader en un hilo aparte y entregamos las cámaras en lotes de TAMANO_LOTE_CAMARAS según llegan: el mapa puede
+     * pintar las primeras antes de que termine la descarga, y en memoria nunca está el JSON entero (solo las cámaras ya leídas). */
+    public void obtenerCamarasPorLotes(String token, ApiLotesCallback<Camara> callback) {
+        hiloLectura.execute(() -> {
+            Response<ResponseBody> respuesta;
+            try {
+                respuesta = infocamRemoteApiStreaming.getCamarasActivasStreaming("Bearer " + token).execute();
+            } catch (Exception e) {
+                hiloPrincipal.post(() -> callback.onError(e.getMessage()));
+                return;
+            }
+            if (!respuesta.isSuccessful() || respuesta.body() == null) {
+                if (respuesta.errorBody() != null)
+                    respuesta.errorBody().close();
+                hiloPrincipal.post(() -> callback.onError("Error al descargar cámaras."));
+                return;
+            }
+
+            try (ResponseBody cuerpo = respuesta.body(); JsonReader lector = new JsonReader(cuerpo.charStream())) {
+                TypeAdapter<Camara> adaptador = gson.getAdapter(Camara.class);
+                List<Camara> lote = new ArrayList<>(TAMANO_LOTE_CAMARAS);
+                int total = 0;
+                lector.beginArray();
+                while (lector.hasNext()) {
+                    lote.add(adaptador.read(lector));
+                    total++;
+                    if (lote.size() == TAMANO_LOTE_CAMARAS) {
+                        final List<Camara> listo = lote;
+                        hiloPrincipal.post(() -> callback.onLote(listo));
+                        lote = new ArrayList<>(TAMANO_LOTE_CAMARAS);
+                    }
+                }
+                lector.endArray();
+                if (!lote.isEmpty()) {
+                    final List<Camara> ultimo = lote;
+                    hiloPrincipal.post(() -> callback.onLote(ultimo));
+                }
+                final int leidas = total;
+                hiloPrincipal.post(() -> callback.onSuccess(leidas));
+            } catch (Exception e) {
+                hiloPrincipal.post(() -> callback.onError("Error al leer cámaras: " + e.getMessage()));
+            }
+        });
+    }
+
     // En nuestra base de datos, los favoritos son tratados como un toggle. Pueden estar "encendidos" o "apagados".
     public void conmutarFavorito(String token, int idCamara, int idUsuario, ApiCallback<Void> callback) {
         infocamRemoteApi.toggleFavorito("Bearer " + token, idCamara, idUsuario).enqueue(new Callback<Void>() {
@@ -150,6 +222,11 @@ public class InfocamServiceClient {
     }
 
     public void obtenerFavoritosUsuario(String token, int idUsuario, ApiCallback<List<Camara>> callback) {
+        peticionesCompartidas.ejecutar("favoritos|" + idUsuario + "|" + token, callback,
+                repartidor -> descargarFavoritosUsuario(token, idUsuario, repartidor));
+    }
+
+    private void descargarFavoritosUsuario(String token, int idUsuario, ApiCallback<List<Camara>> callback) {
         infocamRemoteApi.getFavoritosUsuario("Bearer " + token, idUsuario).enqueue(new Callback<List<Camara>>() {
             @Override
             public void onResponse(Call<List<Camara>> call, Response<List<Camara>> response) {
@@ -189,27 +266,59 @@ public class InfocamServiceClient {
         });
     }
 
+    /* Antes pedíamos las incidencias activas en el minuto actual, así que cada petición tenía una dirección distinta y ninguna caché
+     * servía. Ahora pedimos las activas en los dos extremos del tramo de MINUTOS_TRAMO en el que estamos (por ejemplo 10:15 y 10:30):
+     * esas direcciones se repiten durante todo el tramo, y el inicio de un tramo es el final del anterior, así que casi siempre se
+     * revalidan con un 304 (ver CacheRespuestas). Juntamos las dos respuestas y filtramos aquí, con sus fechas, las activas justo ahora.
+     * Limitación conocida: una incidencia que empieza y acaba dentro del tramo (de 10:17 a 10:28) no sale en ninguno de los dos
+     * extremos, así que no se ve. La API solo acepta un momento ("fecha") y no un intervalo; pedir también el minuto actual la
+     * recuperaría, pero esa dirección cambia cada minuto, no se puede cachear y ya trae ella sola todas las activas. */
     public void obtenerIncidencias(String token, Integer idUsuario, ApiCallback<List<Incidencia>> callback) {
+        peticionesCompartidas.ejecutar("incidencias|" + idUsuario + "|" + token, callback,
+                repartidor -> descargarIncidencias(token, idUsuario, repartidor));
+    }
+
+    private void descargarIncidencias(String token, Integer idUsuario, ApiCallback<List<Incidencia>> callback) {
         // Debido al formato de fecha que manda la API Tráfico, debemos formatearla en nuestro código para responder a lo que espera el servidor. En este caso utiliza un formato ISO 8601.
         SimpleDateFormat sdf = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm", Locale.getDefault());
-        String fechaActual = sdf.format(new Date());
-
-        infocamRemoteApi.getIncidenciasActivas("Bearer " + token, fechaActual, idUsuario)
-                .enqueue(new Callback<List<Incidencia>>() {
-                    @Override
-                    public void onResponse(Call<List<Incidencia>> call, Response<List<Incidencia>> response) {
-                        if (response.isSuccessful() && response.body() != null) {
-                            callback.onSuccess(response.body());
-                        } else {
-                            callback.onError("Error al obtener incidencias.");
+        final long ahora = System.currentTimeMillis();
+        long duracionTramo = MINUTOS_TRAMO * 60 * 1000;
+        long inicioTramo = ahora - ahora % duracionTramo;
+        String[] momentos = { sdf.format(new Date(inicioTramo)), sdf.format(new Date(inicioTramo + duracionTramo)) };
+
+        // Las respuestas llegan por separado (en el hilo principal): respondemos cuando estén todas
+        final List<List<Incidencia>> recibidas = new ArrayList<>();
+        final int[] pendientes = { momentos.length };
+        final String[] ultimoError = { null };
+        for (String fecha : momentos) {
+            infocamRemoteApi.getIncidenciasActivas("Bearer " + token, fecha, idUsuario)
+                    .enqueue(new Callback<List<Incidencia>>() {
+                        @Override
+                        public void onResponse(Call<List<Incidencia>> call, Response<List<Incidencia>> response) {
+                            if (response.isSuccessful() && response.body() != null)
+                                recibidas.add(response.body());
+                            else
+                                ultimoError[0] = "Error al obtener incidencias.";
+                            terminar();
                         }
-                    }
 
-                    @Override
-                    public void onFailure(Call<List<Incidencia>> call, Throwable t) {
-                        callback.onError(t.getMessage());
-                    }
-                });
+                        @Override
+                        public void onFailure(Call<List<Incidencia>> call, Throwable t) {
+                            ultimoError[0] = t.getMessage();
+                            terminar();
+                        }
+
+                        private void terminar() {
+                            if (--pendientes[0] > 0)
+                                return;
+                            // Si falta una respuesta no podemos garantizar que estén todas: mejor avisar del error
+                            if (ultimoError[0] != null)
+                                callback.onError(ultimoError[0]);
+                            else
+                                callback.onSuccess(vigencia.activasEn(ahora, recibidas));
+                        }
+                    });
+        }
     }
 
     public void crearIncidencia(String token, Incidencia incidencia, ApiCallback<Void> callback) {
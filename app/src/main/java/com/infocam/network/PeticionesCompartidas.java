@@ -0,0 +1,61 @@
+package com.infocam.network;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/* "Single flight": si se pide algo que ya está en camino (misma ruta, mismos parámetros y mismo token), no se lanza otra petición.
+ * El nuevo ApiCallback se apunta a la lista de espera de la que ya está en curso y, cuando llega la respuesta, se reparte a todos.
+ * Pasa a menudo al volver al mapa o cambiar de pestaña varias veces seguidas: sin esto, cada vez se descargaba y convertía el mismo JSON.
+ * Todos reciben el mismo objeto, así que nadie debe modificar la lista que recibe. */
+class PeticionesCompartidas {
+
+    // Lo que hay que hacer para lanzar la petición de verdad; recibe el callback que reparte el resultado.
+    interface Lanzador<T> {
+        void lanzar(ApiCallback<T> repartidor);
+    }
+
+    private final Map<String, List<ApiCallback<?>>> enEspera = new HashMap<>();
+
+    <T> void ejecutar(String clave, ApiCallback<T> callback, Lanzador<T> lanzador) {
+        synchronized (enEspera) {
+            List<ApiCallback<?>> esperando = enEspera.get(clave);
+            if (esperando != null) {
+                esperando.add(callback); // Ya hay una en camino: esperamos a su respuesta
+                return;
+            }
+            esperando = new ArrayList<>();
+            esperando.add(callback);
+            enEspera.put(clave, esperando);
+        }
+
+        lanzador.lanzar(new ApiCallback<T>() {
+            @Override
+            public void onSuccess(T result) {
+                for (ApiCallback<T> c : PeticionesCompartidas.this.<T>retirar(clave))
+                    c.onSuccess(result);
+            }
+
+            @Override
+            public void onError(String error) {
+                for (ApiCallback<T> c : PeticionesCompartidas.this.<T>retirar(clave))
+                    c.onError(error);
+            }
+        });
+    }
+
+    // Saca la lista de espera: a partir de aquí, una petición igual ya lanza otra nueva.
+    @SuppressWarnings("unchecked")
+    private <T> List<ApiCallback<T>> retirar(String clave) {
+        synchronized (enEspera) {
+            List<ApiCallback<?>> esperando = enEspera.remove(clave);
+            List<ApiCallback<T>> resultado = new ArrayList<>();
+            if (esperando != null) {
+                for (ApiCallback<?> c : esperando)
+                    resultado.add((ApiCallback<T>) c);
+            }
+            return resultado;
+        }
+    }
+}
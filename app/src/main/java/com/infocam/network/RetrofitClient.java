@@ -1,5 +1,11 @@
 package com.infocam.network;
 
+import android.content.Context;
+
+import java.io.File;
+import java.io.IOException;
+
+import okhttp3.Cache;
 import okhttp3.OkHttpClient;
 import okhttp3.logging.HttpLoggingInterceptor;
 import retrofit2.Retrofit;
@@ -10,26 +16,71 @@ public class RetrofitClient {
     // En este apartado definimos cuál es la dirección IP del servidor. Es importante que, una vez definida, el teléfono móvil y el ordenador que actúa como servidor estén en la misma red.
     private static final String BASE_URL = "http://10.10.16.85:8080/api/";
     private static Retrofit retrofit = null;
+    private static Retrofit retrofitStreaming = null;
+    private static HttpLoggingInterceptor registroCompleto = null;
+    private static File directorioCache = null;
+    private static Cache cache = null;
+
+    // Hay que llamarlo antes de la primera petición para que las respuestas se guarden en disco. Lo hace InfocamApplication al arrancar.
+    public static synchronized void activarCache(Context contexto) {
+        if (directorioCache == null)
+            directorioCache = contexto.getApplicationContext().getCacheDir();
+    }
+
+    // Borra las respuestas guardadas (en disco y ya convertidas), por ejemplo al cerrar sesión.
+    public static synchronized void vaciarCache() {
+        CacheRespuestas.olvidarConvertidos();
+        if (cache == null)
+            return;
+        try {
+            cache.evictAll();
+        } catch (IOException e) {
+            // Si no se puede borrar, las respuestas caducarán solas al revalidarse
+        }
+    }
 
     // El método "getClient()" construte el cliente de red. En caso de que esté creado devuelve el que existe, si no lo fabrica desde cero.
-    public static Retrofit getClient() {
+    public static synchronized Retrofit getClient() {
         if (retrofit == null) {
             // Hemos añadido el "HttpLoggingInterceptor" para poder ver en el Logcat todos los datos que entran y salen, cómo cuál es el JSON que enviamos o el código que devuelve el servidor.
-            HttpLoggingInterceptor interceptor = new HttpLoggingInterceptor();
-            interceptor.setLevel(HttpLoggingInterceptor.Level.BODY); // Le pediremos que nos muestre todo el cuerpo del mensaje, no solo una versión acortada.
+            registroCompleto = new HttpLoggingInterceptor();
+            registroCompleto.setLevel(HttpLoggingInterceptor.Level.BODY); // Le pediremos que nos muestre todo el cuerpo del mensaje, no solo una versión acortada.
 
             // Retrofit utiliza una librería OkHttp. Retrofit, por su cuenta, no sabe enviaar datos por internet, solo se encarga de traducir las interfaces de Java en peticiones que alguien más debe enviar. Aquí entra en juego OkHttp.
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .addInterceptor(interceptor)
-                    .build();
+            // La caché guarda las respuestas con su ETag para preguntar después "¿ha cambiado?" en vez de descargarlas enteras (ver CacheRespuestas).
+            OkHttpClient.Builder constructor = new OkHttpClient.Builder()
+                    .addInterceptor(registroCompleto)
+                    .addInterceptor(CacheRespuestas.interceptor());
+            if (directorioCache != null) {
+                cache = CacheRespuestas.crearCache(directorioCache);
+                constructor.cache(cache);
+            }
+            OkHttpClient client = constructor.build();
 
             // Por otro lado, GsonConverter actúa de traductor. Transforma todo el texto en JSON y viceversa.
             retrofit = new Retrofit.Builder()
                     .baseUrl(BASE_URL) // Le damos la dirección base
-                    .addConverterFactory(GsonConverterFactory.create()) // Este es el momento en el que el JSON que recibimos del servidor se convierte en objetos Java.
+                    .addConverterFactory(CacheRespuestas.conversor()) // Si el JSON no ha cambiado desde la última vez, devuelve la lista ya convertida.
+                    .addConverterFactory(GsonConverterFactory.create(AdaptadoresJson.obtenerGson())) // Este es el momento en el que el JSON que recibimos del servidor se convierte en objetos Java (sin reflexión, ver AdaptadoresJson).
                     .client(client) // Se enviará a través del motor OkHttp.
                     .build();
         }
         return retrofit;
     }
+
+    /* Igual que getClient() (misma caché y mismas conexiones), pero el Logcat solo muestra las cabeceras. Para mostrar el cuerpo, el
+     * registro tiene que leerlo entero en memoria antes de entregarlo, y eso anula las lecturas por partes (@Streaming). */
+    public static synchronized Retrofit getClienteStreaming() {
+        if (retrofitStreaming == null) {
+            Retrofit base = getClient();
+            HttpLoggingInterceptor registroCabeceras = new HttpLoggingInterceptor();
+            registroCabeceras.setLevel(HttpLoggingInterceptor.Level.HEADERS);
+
+            OkHttpClient.Builder constructor = ((OkHttpClient) base.callFactory()).newBuilder();
+            constructor.interceptors().remove(registroCompleto);
+            constructor.interceptors().add(0, registroCabeceras);
+            retrofitStreaming = base.newBuilder().client(constructor.build()).build();
+        }
+        return retrofitStreaming;
+    }
 }
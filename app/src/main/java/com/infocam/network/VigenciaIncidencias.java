@@ -0,0 +1,73 @@
+package com.infocam.network;
+
+import com.infocam.model.Incidencia;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/* Decide qué incidencias están activas en un momento concreto leyendo sus fechas de inicio y fin.
+ * Sirve para pedir al servidor las incidencias por tramos fijos de tiempo (cuya dirección se repite y se puede cachear) y después
+ * quedarnos, ya en el móvil, con las que están activas justo ahora.
+ * Las fechas llegan en ISO 8601 con distintas variantes (con o sin segundos, milisegundos o zona horaria). Se prueba primero el formato
+ * que funcionó la última vez, porque casi todas las del servidor vienen igual. Si una fecha no se entiende, la incidencia se conserva:
+ * el servidor ya la dio por activa. No es seguro usarlo desde varios hilos a la vez. */
+public class VigenciaIncidencias {
+    private static final String[] FORMATOS = {
+            "yyyy-MM-dd'T'HH:mm:ssXXX",
+            "yyyy-MM-dd'T'HH:mm:ss.SSSXXX",
+            "yyyy-MM-dd'T'HH:mm:ss.SSS",
+            "yyyy-MM-dd'T'HH:mm:ss",
+            "yyyy-MM-dd'T'HH:mm",
+            "yyyy-MM-dd HH:mm:ss",
+    };
+
+    private final SimpleDateFormat[] formatos = new SimpleDateFormat[FORMATOS.length];
+    private int ultimoFormato = 0;
+
+    public VigenciaIncidencias() {
+        for (int i = 0; i < FORMATOS.length; i++) {
+            formatos[i] = new SimpleDateFormat(FORMATOS[i], Locale.US);
+            formatos[i].setLenient(false);
+        }
+    }
+
+    /* Junta varias listas (sin repetir incidencias, según obtenerClave()) y se queda con las activas en "momento": las que ya han
+     * empezado y aún no han terminado (sin fecha de fin se consideran abiertas). */
+    public List<Incidencia> activasEn(long momento, List<List<Incidencia>> listas) {
+        Map<String, Incidencia> unidas = new LinkedHashMap<>();
+        for (List<Incidencia> lista : listas) {
+            for (Incidencia i : lista)
+                unidas.put(i.obtenerClave(), i);
+        }
+        List<Incidencia> activas = new ArrayList<>(unidas.size());
+        for (Incidencia i : unidas.values()) {
+            long inicio = leer(i.getFechaInicio());
+            long fin = leer(i.getFechaFin());
+            if ((inicio < 0 || inicio <= momento) && (fin < 0 || fin >= momento))
+                activas.add(i);
+        }
+        return activas;
+    }
+
+    // Milisegundos de la fecha, o -1 si está vacía o no se entiende.
+    private long leer(String fecha) {
+        if (fecha == null || fecha.isEmpty())
+            return -1;
+        for (int intento = 0; intento < formatos.length; intento++) {
+            int f = (ultimoFormato + intento) % formatos.length;
+            ParsePosition posicion = new ParsePosition(0);
+            Date d = formatos[f].parse(fecha, posicion);
+            if (d != null && posicion.getIndex() == fecha.length()) {
+                ultimoFormato = f;
+                return d.getTime();
+            }
+        }
+        return -1;
+    }
+}
@@ -53,11 +53,16 @@ public class FavoritosFragment extends Fragment {
         visorFavoritos = vista.findViewById(R.id.recyclerFavoritos);
         visorFavoritos.setLayoutManager(new LinearLayoutManager(getContext()));
 
-        cargarListaDesdeSQLite();
-
         return vista;
     }
 
+    // El Fragment se conserva entre pestañas, así que recargamos al volver (puede haberse marcado algún favorito en el mapa)
+    @Override
+    public void onResume() {
+        super.onResume();
+        cargarListaDesdeSQLite();
+    }
+
     private void cargarListaDesdeSQLite() {
         List<Favorito> favoritos = databaseLocal.obtenerFavoritosPorUsuario(idUsuarioActual);
 
@@ -77,7 +82,7 @@ public class FavoritosFragment extends Fragment {
                 new ApiCallback<Void>() {
                     @Override
                     public void onSuccess(Void result) {
-                        // 2. Si el API responde OK, borramos de la base de datos local
+                        // 2. Si el API responde OK, borramos de la base de datos local (que también lo quita del conjunto que usa el mapa)
                         databaseLocal.eliminarFavorito(f.getIdLocal());
                         Toast.makeText(getContext(), "Favorito eliminado", Toast.LENGTH_SHORT).show();
                         cargarListaDesdeSQLite();
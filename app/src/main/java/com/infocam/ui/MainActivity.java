@@ -5,6 +5,9 @@ import android.view.MenuItem;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
+import androidx.lifecycle.Lifecycle;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.navigation.NavigationBarView;
 import com.infocam.R;
@@ -19,11 +22,20 @@ import com.infocam.R;
  * (Transactions).
  * 3. BottomNavigationView: Componente de Material Design para navegación
  * principal.
+ * 4. Fragments conservados: Cada pestaña se crea una sola vez y después se
+ * muestra u oculta (show/hide), así el mapa no recarga teselas ni datos al
+ * volver a él. Con setMaxLifecycle el oculto pasa por onPause() y el que se
+ * muestra por onResume(), como si se hubiera vuelto a abrir.
  */
 public class MainActivity extends AppCompatActivity {
 
     private BottomNavigationView menuNavegacion;
 
+    // Etiquetas con las que el FragmentManager recuerda cada pestaña (también tras recrear la Activity)
+    private static final String ETIQUETA_MAPA = "mapa";
+    private static final String ETIQUETA_FAVORITOS = "favoritos";
+    private static final String ETIQUETA_PERFIL = "perfil";
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -31,34 +43,63 @@ public class MainActivity extends AppCompatActivity {
 
         menuNavegacion = findViewById(R.id.bottom_navigation);
 
-        // Cargar el Fragmento principal por defecto (Mapa) si es el primer inicio
+        // Cargar el Fragmento principal por defecto (Mapa) si es el primer inicio.
+        // Si la Activity se recrea, el FragmentManager ya restaura las pestañas con su estado (oculta o visible)
         if (savedInstanceState == null) {
-            getSupportFragmentManager().beginTransaction()
-                    .replace(R.id.fragment_container, new MapaFragment())
-                    .commit();
+            mostrarPestana(ETIQUETA_MAPA);
         }
 
         // Listener para capturar clics en el menú inferior
         menuNavegacion.setOnItemSelectedListener(item -> {
-            Fragment fragmentoSeleccionado = null;
             int id = item.getItemId();
 
             if (id == R.id.nav_map) {
-                fragmentoSeleccionado = new MapaFragment();
+                mostrarPestana(ETIQUETA_MAPA);
             } else if (id == R.id.nav_favoritos) {
-                fragmentoSeleccionado = new FavoritosFragment();
+                mostrarPestana(ETIQUETA_FAVORITOS);
             } else if (id == R.id.nav_perfil) {
-                fragmentoSeleccionado = new PerfilFragment();
+                mostrarPestana(ETIQUETA_PERFIL);
+            } else {
+                return false;
             }
+            return true;
+        });
+    }
 
-            if (fragmentoSeleccionado != null) {
-                // Realizar la transacción del fragmento
-                getSupportFragmentManager().beginTransaction()
-                        .replace(R.id.fragment_container, fragmentoSeleccionado)
-                        .commit();
-                return true;
+    /*
+     * Muestra la pestaña pedida y oculta las demás. El Fragment solo se crea la
+     * primera vez; después se reutiliza con su vista, su MapView y sus datos.
+     */
+    private void mostrarPestana(String etiqueta) {
+        FragmentManager gestor = getSupportFragmentManager();
+        FragmentTransaction transaccion = gestor.beginTransaction().setReorderingAllowed(true);
+
+        for (Fragment f : gestor.getFragments()) {
+            if (!etiqueta.equals(f.getTag()) && !f.isHidden()) {
+                transaccion.hide(f);
+                transaccion.setMaxLifecycle(f, Lifecycle.State.STARTED); // Recibe onPause() al ocultarse
             }
-            return false;
-        });
+        }
+
+        Fragment destino = gestor.findFragmentByTag(etiqueta);
+        if (destino == null) {
+            destino = crearPestana(etiqueta);
+            transaccion.add(R.id.fragment_container, destino, etiqueta);
+        } else {
+            transaccion.show(destino);
+        }
+        transaccion.setMaxLifecycle(destino, Lifecycle.State.RESUMED);
+        transaccion.commit();
+    }
+
+    private Fragment crearPestana(String etiqueta) {
+        switch (etiqueta) {
+            case ETIQUETA_FAVORITOS:
+                return new FavoritosFragment();
+            case ETIQUETA_PERFIL:
+                return new PerfilFragment();
+            default:
+                return new MapaFragment();
+        }
     }
 }
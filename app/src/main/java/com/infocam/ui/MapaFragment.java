@@ -6,10 +6,17 @@ import android.content.Intent;
 import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.location.Location;
 import android.location.LocationManager;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -28,18 +35,41 @@ import androidx.fragment.app.Fragment;
 
 import com.bumptech.glide.Glide;
 import com.infocam.R;
+import com.infocam.data.ArchivoTeselas;
 import com.infocam.data.DataRepository;
+import com.infocam.data.DatabaseHelper;
+import com.infocam.data.FavoritosEnMemoria;
 import com.infocam.data.SessionManager;
+import com.infocam.mapa.AdelantoMapa;
+import com.infocam.mapa.AgrupadorMarcadores;
+import com.infocam.mapa.CalorIncidencias;
+import com.infocam.mapa.CapaIndexada;
+import com.infocam.mapa.CapaMapaCalor;
+import com.infocam.mapa.CapaPuntos;
+import com.infocam.mapa.Corredor;
+import com.infocam.mapa.DatosMapa;
+import com.infocam.mapa.IconosMapa;
+import com.infocam.mapa.MapaCalor;
+import com.infocam.mapa.ModoRuta;
+import com.infocam.mapa.PanelCamarasCercanas;
+import com.infocam.mapa.ProveedorTeselas;
+import com.infocam.mapa.RegistroMarcadores;
 import com.infocam.model.Camara;
 import com.infocam.model.Favorito;
 import com.infocam.model.Incidencia;
 import com.infocam.model.Usuario;
 import com.infocam.network.ApiCallback;
+import com.infocam.network.ApiLotesCallback;
 import com.infocam.network.InfocamServiceClient;
+import com.infocam.network.VigenciaIncidencias;
 
 import org.osmdroid.config.Configuration;
 import org.osmdroid.events.MapEventsReceiver;
+import org.osmdroid.events.MapListener;
+import org.osmdroid.events.ScrollEvent;
+import org.osmdroid.events.ZoomEvent;
 import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.util.BoundingBox;
 import org.osmdroid.util.GeoPoint;
 import org.osmdroid.views.CustomZoomButtonsController;
 import org.osmdroid.views.MapView;
@@ -47,10 +77,15 @@ import org.osmdroid.views.overlay.MapEventsOverlay;
 import org.osmdroid.views.overlay.Marker;
 import org.osmdroid.views.overlay.infowindow.InfoWindow;
 import org.osmdroid.views.overlay.mylocation.GpsMyLocationProvider;
+import org.osmdroid.views.overlay.mylocation.IMyLocationProvider;
 import org.osmdroid.views.overlay.mylocation.MyLocationNewOverlay;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * MapaFragment: Vista principal con mapa interactivo de Madrid.
@@ -67,11 +102,58 @@ public class MapaFragment extends Fragment {
     private MyLocationNewOverlay capaPosicionUsuario;
     private SessionManager preferenciaSesion;
     private DataRepository databaseLocal;
-    private List<Camara> listaFavoritosApi = new ArrayList<>();
+    // Última descarga del servidor. Los filtros se aplican sobre estos datos sin volver a pedirlos.
+    private final DatosMapa datosMapa = new DatosMapa();
+    private FavoritosEnMemoria favoritos;
+    private boolean cacheCargada = false;
+    private ExecutorService hiloBaseDatos;
 
     private View panelFiltros;
-    private CheckBox checkCamaras, checkIncidenciasG, checkIncidenciasU, checkSoloFavoritos;
-    private boolean verCamaras = true, verIncidenciasG = true, verIncidenciasU = true, verSoloFavs = false;
+    private CheckBox checkCamaras, checkIncidenciasG, checkIncidenciasU, checkMapaCalor, checkSoloFavoritos;
+    private boolean verCamaras = true, verIncidenciasG = true, verIncidenciasU = true, verMapaCalor = false,
+            verSoloFavs = false;
+
+    // Burbujas que hay ahora mismo en el mapa: al repintar solo se tocan las que cambian y las que salen de pantalla se reutilizan.
+    // Las cámaras e incidencias sueltas no son Markers: se dibujan todas juntas, en una pasada, en capaPuntos
+    private RegistroMarcadores registroMarcadores;
+    private CapaPuntos capaPuntos;
+    private IconosMapa iconos;
+    // Una sola ventana de detalle por tipo, creada la primera vez que se pulsa un punto y reutilizada después
+    private VentanaDetalleCamara ventanaCamara;
+    private VentanaDetalleIncidencia ventanaIncidencia;
+    private final SparseArray<Drawable> iconosGrupo = new SparseArray<>();
+
+    // Los puntos cercanos se juntan en burbujas con un contador, una agrupación por nivel de zoom que se calcula fuera del hilo
+    // principal para no congelar el mapa
+    private final AgrupadorMarcadores agrupador = new AgrupadorMarcadores();
+    private ExecutorService hiloAgrupacion;
+    private int generacionAgrupado = 0;
+    private int ultimoNivelAgrupado = -1;
+    // Zona (lo visible más un margen) que se consultó en el índice espacial la última vez
+    private static final double MARGEN_ZONA = 0.5;
+    private BoundingBox zonaConsultada;
+    // Los eventos de desplazamiento y zoom llegan decenas de veces por segundo: esperamos a que el mapa se quede quieto
+    private static final long ESPERA_MOVIMIENTO_MS = 150;
+    private static final long INTERVALO_LOTES_MS = 300; // Al descargar cámaras por partes, repintamos como mucho con esta frecuencia
+    private final Handler manejadorMovimiento = new Handler(Looper.getMainLooper());
+    private final Runnable comprobarMovimiento = () -> {
+        if (visorMapa != null && ((int) Math.floor(visorMapa.getZoomLevelDouble()) != ultimoNivelAgrupado
+                || !zonaCubreLoVisible()))
+            reagruparCapas();
+    };
+
+    // Mientras se arrastra el mapa, preparamos los datos y las teselas de la zona hacia la que se dirige
+    private AdelantoMapa adelanto;
+
+    // Mapa de calor de incidencias: se calcula en el hilo de agrupación y se pinta en capaCalor
+    private CapaMapaCalor capaCalor;
+    private final CalorIncidencias calorIncidencias = new CalorIncidencias();
+
+    // Panel de cámaras cercanas al usuario (se calcula en el hilo de agrupación)
+    private PanelCamarasCercanas panelCercanas;
+
+    // Modo ruta: con una ruta marcada el mapa solo muestra lo que queda cerca de ella
+    private ModoRuta ruta;
 
     @Nullable
     @Override
@@ -83,13 +165,63 @@ public class MapaFragment extends Fragment {
 
         View vista = inflador.inflate(R.layout.fragment_map, contenedor, false);
         visorMapa = vista.findViewById(R.id.map);
-        visorMapa.setTileSource(TileSourceFactory.MAPNIK);
+        // Mismo mapa de siempre, pero mirando antes en las teselas descargadas para usar sin conexión
+        visorMapa.setTileProvider(new ProveedorTeselas(getContext(), TileSourceFactory.MAPNIK,
+                ArchivoTeselas.obtenerInstancia(getContext())));
         visorMapa.setMultiTouchControls(true);
         // Eliminamos botones de zoom nativos duplicados (Versión moderna no deprecated)
         visorMapa.getZoomController().setVisibility(CustomZoomButtonsController.Visibility.NEVER);
+        registroMarcadores = new RegistroMarcadores(visorMapa);
+
+        // Overlay para detectar pulsaciones largas y crear incidencias. Va el primero para quedar por debajo de los marcadores.
+        visorMapa.getOverlays().add(new MapEventsOverlay(new MapEventsReceiver() {
+            @Override
+            public boolean singleTapConfirmedHelper(GeoPoint p) {
+                InfoWindow.closeAllInfoWindowsOn(visorMapa);
+                return false;
+            }
+
+            @Override
+            public boolean longPressHelper(GeoPoint p) {
+                if (ruta.estaActivo())
+                    ruta.anadirPunto(p);
+                else
+                    lanzarNuevaIncidencia(p);
+                return true;
+            }
+        }));
+
+        // El mapa de calor va por debajo de los puntos
+        capaCalor = new CapaMapaCalor();
+        visorMapa.getOverlays().add(capaCalor);
+
+        // La ruta se dibuja por debajo de los puntos
+        ruta = new ModoRuta(visorMapa, vista, new ModoRuta.Oyente() {
+            @Override
+            public void alCambiarCorredor() {
+                reagruparCapas();
+            }
+
+            @Override
+            public void alPulsarElemento(Object elemento, GeoPoint posicion) {
+                visorMapa.getController().animateTo(posicion);
+                abrirDetalle(elemento, posicion, iconos.obtenerAtlas()
+                        .getZona(elemento instanceof Camara ? IconosMapa.CAMARA : IconosMapa.INCIDENCIA).height());
+            }
+        });
+
+        // Capa única para todos los puntos sueltos, por encima de la anterior y por debajo de las burbujas
+        iconos = IconosMapa.obtenerInstancia(getContext());
+        capaPuntos = new CapaPuntos(iconos);
+        capaPuntos.setAlPulsar(this::abrirDetalle);
+        visorMapa.getOverlays().add(capaPuntos);
 
         preferenciaSesion = new SessionManager(getContext());
         databaseLocal = new DataRepository(getContext());
+        favoritos = FavoritosEnMemoria.obtenerInstancia();
+        Usuario actual = preferenciaSesion.obtenerUsuario();
+        if (actual != null)
+            databaseLocal.cargarFavoritosEnMemoria(actual.getId());
 
         // Botones de Zoom
         vista.findViewById(R.id.btnZoomIn).setOnClickListener(v -> visorMapa.getController().zoomIn());
@@ -103,6 +235,32 @@ public class MapaFragment extends Fragment {
         visorMapa.getController().setZoom(14.0);
         visorMapa.getController().setCenter(puntoInicio);
 
+        // Solo reagrupamos cuando cambia el nivel de zoom entero (no en cada paso de la animación) o al salir de la zona consultada,
+        // y siempre cuando el movimiento se ha detenido (ver comprobarMovimiento)
+        hiloAgrupacion = Executors.newSingleThreadExecutor();
+        hiloBaseDatos = Executors.newSingleThreadExecutor();
+        adelanto = new AdelantoMapa(visorMapa, this::prepararZonaPrevista);
+        visorMapa.addMapListener(new MapListener() {
+            @Override
+            public boolean onScroll(ScrollEvent event) {
+                adelanto.alDesplazar();
+                esperarAQueSePareElMapa();
+                return false;
+            }
+
+            @Override
+            public boolean onZoom(ZoomEvent event) {
+                adelanto.alHacerZoom();
+                esperarAQueSePareElMapa();
+                return false;
+            }
+        });
+
+        panelCercanas = new PanelCamarasCercanas(vista, hiloAgrupacion, c -> {
+            GeoPoint punto = new GeoPoint(c.getLatitud(), c.getLongitud());
+            visorMapa.getController().animateTo(punto);
+            abrirDetalle(c, punto, iconos.obtenerAtlas().getZona(IconosMapa.CAMARA).height());
+        });
         verificarPermisosGps();
         configurarMenuFiltros(vista);
 
@@ -133,6 +291,7 @@ public class MapaFragment extends Fragment {
         checkCamaras = raiz.findViewById(R.id.cbFiltroCamaras);
         checkIncidenciasG = raiz.findViewById(R.id.cbFiltroIncidenciasGov);
         checkIncidenciasU = raiz.findViewById(R.id.cbFiltroIncidenciasUser);
+        checkMapaCalor = raiz.findViewById(R.id.cbFiltroMapaCalor);
         checkSoloFavoritos = raiz.findViewById(R.id.cbFiltroFavoritos);
 
         raiz.findViewById(R.id.btnMenuFiltros).setOnClickListener(v -> {
@@ -143,9 +302,10 @@ public class MapaFragment extends Fragment {
             verCamaras = checkCamaras.isChecked();
             verIncidenciasG = checkIncidenciasG.isChecked();
             verIncidenciasU = checkIncidenciasU.isChecked();
+            verMapaCalor = checkMapaCalor.isChecked();
             verSoloFavs = checkSoloFavoritos.isChecked();
             panelFiltros.setVisibility(View.GONE);
-            repintarElementosEnMapa();
+            aplicarFiltros(); // Sin peticiones de red: filtramos lo que ya tenemos en memoria
         });
     }
 
@@ -166,6 +326,24 @@ public class MapaFragment extends Fragment {
             capaPosicionUsuario.disableMyLocation();
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        manejadorMovimiento.removeCallbacks(comprobarMovimiento);
+        adelanto.detener();
+        // Las ventanas están ligadas al MapView de esta vista; si se vuelve a crear, se crean otras
+        InfoWindow.closeAllInfoWindowsOn(visorMapa);
+        ventanaCamara = null;
+        ventanaIncidencia = null;
+        // Los marcadores (también los de la reserva) guardan una referencia al MapView: los soltamos con él
+        registroMarcadores.vaciar();
+        panelCercanas.cerrar();
+        if (hiloAgrupacion != null)
+            hiloAgrupacion.shutdownNow();
+        if (hiloBaseDatos != null)
+            hiloBaseDatos.shutdown(); // Dejamos terminar las escrituras pendientes
+    }
+
     private void verificarPermisosGps() {
         if (ContextCompat.checkSelfPermission(getContext(),
                 Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED) {
@@ -177,15 +355,29 @@ public class MapaFragment extends Fragment {
     }
 
     private void activarCapaPosicion() {
-        capaPosicionUsuario = new MyLocationNewOverlay(new GpsMyLocationProvider(getContext()), visorMapa);
+        // Las capas ya no se vacían al repintar, así que quitamos la anterior para no duplicarla
+        if (capaPosicionUsuario != null) {
+            capaPosicionUsuario.disableMyLocation();
+            visorMapa.getOverlays().remove(capaPosicionUsuario);
+        }
+        capaPosicionUsuario = new MyLocationNewOverlay(new GpsMyLocationProvider(getContext()), visorMapa) {
+            @Override
+            public void onLocationChanged(Location posicion, IMyLocationProvider origen) {
+                super.onLocationChanged(posicion, origen);
+                // Cada lectura del GPS pasa por aquí; el panel decide si de verdad hay que volver a buscar
+                if (posicion != null && getActivity() != null)
+                    getActivity().runOnUiThread(() -> panelCercanas.actualizar(datosMapa.getCamaras(),
+                            posicion.getLatitude(), posicion.getLongitude()));
+            }
+        };
         capaPosicionUsuario.enableMyLocation();
 
         // Icono de usuario personalizado
         // Evitamos duplicidad desactivando los iconos por defecto de
         // dirección/precisión
         capaPosicionUsuario.setDrawAccuracyEnabled(false);
-        // Usamos solo el icono de persona (punto azul/avatar) para mayor claridad
-        Bitmap bUser = drawableToBitmap(ContextCompat.getDrawable(getContext(), R.drawable.ic_marker_user));
+        // Usamos solo el icono de persona (punto azul/avatar) para mayor claridad. Sale de la caché: no se rasteriza cada vez
+        Bitmap bUser = iconos.obtenerIconoUsuario();
         if (bUser != null) {
             capaPosicionUsuario.setPersonIcon(bUser);
             capaPosicionUsuario.setDirectionIcon(bUser); // Flecha blanca -> Punto azul
@@ -208,143 +400,462 @@ public class MapaFragment extends Fragment {
         visorMapa.getOverlays().add(capaPosicionUsuario);
     }
 
+    /*
+     * Pintamos al momento lo que ya tenemos en memoria y, solo si los datos han
+     * caducado, los pedimos de nuevo al servidor. Las capas no se vacían: los datos
+     * nuevos se comparan con los marcadores existentes en pintarGrupos().
+     */
     private void repintarElementosEnMapa() {
-        visorMapa.getOverlays().clear();
-
-        // Overlay para detectar pulsaciones largas y crear incidencias
-        MapEventsOverlay capaEventos = new MapEventsOverlay(new MapEventsReceiver() {
-            @Override
-            public boolean singleTapConfirmedHelper(GeoPoint p) {
-                InfoWindow.closeAllInfoWindowsOn(visorMapa);
-                return false;
-            }
+        aplicarFiltros();
+        if (!cacheCargada)
+            cargarCacheLocal(); // Al terminar decidirá si hace falta descargar
+        else if (datosMapa.estaCaducado())
+            sincronizarYDescargar();
+    }
 
-            @Override
-            public boolean longPressHelper(GeoPoint p) {
-                lanzarNuevaIncidencia(p);
-                return true;
-            }
+    // Leemos de SQLite la última copia de cámaras e incidencias (en segundo plano) y la pintamos antes de que responda el servidor,
+    // que la revalida después si ha caducado (stale-while-revalidate).
+    private void cargarCacheLocal() {
+        ejecutarEnBaseDatos(() -> {
+            List<Camara> camaras = databaseLocal.obtenerCamarasGuardadas();
+            long momentoCamaras = databaseLocal.obtenerMomentoDescarga(DatabaseHelper.TABLA_CAMARAS);
+            // Sin conexión esta copia puede quedarse en pantalla un buen rato: quitamos las incidencias que ya han terminado, igual
+            // que se hace con las que llegan del servidor
+            List<Incidencia> incidencias = new VigenciaIncidencias().activasEn(System.currentTimeMillis(),
+                    Collections.singletonList(databaseLocal.obtenerIncidenciasGuardadas()));
+            long momentoIncidencias = databaseLocal.obtenerMomentoDescarga(DatabaseHelper.TABLA_INCIDENCIAS);
+
+            if (getActivity() == null)
+                return;
+            getActivity().runOnUiThread(() -> {
+                if (getContext() == null || cacheCargada)
+                    return;
+                cacheCargada = true;
+                datosMapa.cargarDesdeCache(camaras, momentoCamaras, incidencias, momentoIncidencias);
+                aplicarFiltros();
+                if (datosMapa.estaCaducado())
+                    sincronizarYDescargar();
+            });
         });
-        visorMapa.getOverlays().add(capaEventos);
-
-        if (capaPosicionUsuario != null)
-            visorMapa.getOverlays().add(capaPosicionUsuario);
+    }
 
-        sincronizarYDescargar();
+    private void ejecutarEnBaseDatos(Runnable tarea) {
+        if (hiloBaseDatos != null && !hiloBaseDatos.isShutdown())
+            hiloBaseDatos.execute(tarea);
     }
 
+    /*
+     * Lanzamos las tres peticiones a la vez en lugar de encadenarlas. Las
+     * incidencias se pintan en cuanto llegan; las cámaras esperan a que también
+     * terminen los favoritos (con éxito o error) para poner el icono correcto una
+     * sola vez. Si una petición falla, las demás capas se pintan igualmente.
+     */
     private void sincronizarYDescargar() {
         Usuario u = preferenciaSesion.obtenerUsuario();
-        if (u == null) {
-            traerCamarasServidor();
-            traerIncidenciasServidor();
-            return;
+        String token = preferenciaSesion.getToken();
+        // Retrofit devuelve las respuestas en el hilo principal, así que un simple contador nos basta para saber cuándo han llegado ambas
+        final int[] pendientes = { u != null ? 2 : 1 };
+        final List<Camara> camarasRecibidas = new ArrayList<>();
+        final boolean[] camarasOk = { false };
+        final Runnable unirCamarasYFavoritos = () -> {
+            if (--pendientes[0] > 0)
+                return;
+            if (camarasOk[0]) {
+                datosMapa.setCamaras(camarasRecibidas);
+                ejecutarEnBaseDatos(() -> databaseLocal.guardarCamaras(camarasRecibidas)); // Solo escribe lo que ha cambiado
+            }
+            aplicarFiltros();
+        };
+
+        if (u != null) {
+            InfocamServiceClient.obtenerInstancia().obtenerFavoritosUsuario(token, u.getId(),
+                    new ApiCallback<List<Camara>>() {
+                        @Override
+                        public void onSuccess(List<Camara> result) {
+                            databaseLocal.sincronizarConServidor(u.getId(), result); // También actualiza FavoritosEnMemoria
+                            unirCamarasYFavoritos.run();
+                        }
+
+                        @Override
+                        public void onError(String error) {
+                            unirCamarasYFavoritos.run(); // Usamos los favoritos que ya teníamos
+                        }
+                    });
+        }
+
+        // Descargamos siempre todas las cámaras, aunque el filtro las oculte, para poder mostrarlas después sin otra petición.
+        if (datosMapa.getCamaras().getElementos().isEmpty()) {
+            descargarCamarasPorLotes(token, camarasRecibidas, camarasOk, unirCamarasYFavoritos);
+        } else {
+            InfocamServiceClient.obtenerInstancia().obtenerCamarasActivas(token,
+                    new ApiCallback<List<Camara>>() {
+                        @Override
+                        public void onSuccess(List<Camara> result) {
+                            camarasRecibidas.addAll(result);
+                            camarasOk[0] = true;
+                            unirCamarasYFavoritos.run();
+                        }
+
+                        @Override
+                        public void onError(String error) {
+                            unirCamarasYFavoritos.run();
+                        }
+                    });
         }
 
-        // Primero traemos los favoritos para saber qué icono poner a cada cámara
-        InfocamServiceClient.obtenerInstancia().obtenerFavoritosUsuario(preferenciaSesion.getToken(), u.getId(),
-                new ApiCallback<List<Camara>>() {
+        InfocamServiceClient.obtenerInstancia().obtenerIncidencias(token, u != null ? u.getId() : null,
+                new ApiCallback<List<Incidencia>>() {
                     @Override
-                    public void onSuccess(List<Camara> result) {
-                        listaFavoritosApi = result;
-                        databaseLocal.sincronizarConServidor(u.getId(), result);
-                        traerCamarasServidor();
-                        traerIncidenciasServidor();
+                    public void onSuccess(List<Incidencia> result) {
+                        datosMapa.setIncidencias(result);
+                        aplicarFiltros(); // Las incidencias no dependen de los favoritos: las pintamos ya
+                        ejecutarEnBaseDatos(() -> databaseLocal.guardarIncidencias(result));
                     }
 
                     @Override
                     public void onError(String error) {
-                        traerCamarasServidor();
-                        traerIncidenciasServidor();
                     }
                 });
     }
 
-    private void traerCamarasServidor() {
-        if (!verCamaras) {
-            visorMapa.invalidate();
-            return;
+    /*
+     * Con el mapa vacío (primera vez, sin copia en SQLite) no esperamos a la
+     * lista completa: las cámaras llegan por lotes y vamos pintando lo que ya
+     * tenemos, como mucho cada INTERVALO_LOTES_MS para no reindexar en cada lote.
+     * La capa parcial no cuenta como descarga; al terminar se guarda como siempre.
+     */
+    private void descargarCamarasPorLotes(String token, List<Camara> camarasRecibidas, boolean[] camarasOk,
+            Runnable alTerminar) {
+        InfocamServiceClient.obtenerInstancia().obtenerCamarasPorLotes(token, new ApiLotesCallback<Camara>() {
+            private long ultimoPintado = 0;
+
+            @Override
+            public void onLote(List<Camara> lote) {
+                camarasRecibidas.addAll(lote);
+                long ahora = SystemClock.uptimeMillis();
+                if (getContext() == null || ahora - ultimoPintado < INTERVALO_LOTES_MS)
+                    return;
+                ultimoPintado = ahora;
+                datosMapa.setCamarasParciales(new ArrayList<>(camarasRecibidas)); // Copia: la lista sigue creciendo
+                aplicarFiltros();
+            }
+
+            @Override
+            public void onSuccess(int total) {
+                camarasOk[0] = true;
+                alTerminar.run();
+            }
+
+            @Override
+            public void onError(String error) {
+                alTerminar.run();
+            }
+        });
+    }
+
+    // Cada evento nuevo reinicia la espera, así solo consultamos una vez por gesto.
+    private void esperarAQueSePareElMapa() {
+        manejadorMovimiento.removeCallbacks(comprobarMovimiento);
+        manejadorMovimiento.postDelayed(comprobarMovimiento, ESPERA_MOVIMIENTO_MS);
+    }
+
+    /*
+     * Si la zona que se verá dentro de poco se sale de la ya consultada, lanzamos
+     * la consulta y la agrupación ahora (incluyendo lo previsto), así los puntos
+     * ya están listos cuando el usuario llega.
+     */
+    private void prepararZonaPrevista(BoundingBox visible, double[] desplazamiento) {
+        if (!zonaConsultadaCubre(visible.getLatNorth() + desplazamiento[0], visible.getLatSouth() + desplazamiento[0],
+                visible.getLonEast() + desplazamiento[1], visible.getLonWest() + desplazamiento[1]))
+            reagruparCapas(desplazamiento);
+    }
+
+    // Aplicamos los filtros del panel sobre los datos en memoria y reagrupamos. No hace ninguna llamada a la API.
+    private void aplicarFiltros() {
+        reagruparCapas(); // El filtrado se hace en el hilo de agrupación, solo sobre lo que cae en la zona visible
+        // Si han llegado cámaras nuevas, el panel de cercanas también debe recalcularse
+        GeoPoint posicion = capaPosicionUsuario != null ? capaPosicionUsuario.getMyLocation() : null;
+        if (posicion != null)
+            panelCercanas.actualizar(datosMapa.getCamaras(), posicion.getLatitude(), posicion.getLongitude());
+    }
+
+    // Filtros del panel aplicados a las cámaras encontradas en la zona consultada.
+    private List<Camara> filtrarCamaras(List<Camara> encontradas, boolean conCamaras, boolean soloFavs) {
+        List<Camara> resultado = new ArrayList<>();
+        if (!conCamaras)
+            return resultado;
+        for (Camara c : encontradas) {
+            if (soloFavs && !favoritos.contiene(c.getId()))
+                continue;
+            resultado.add(c);
         }
+        return resultado;
+    }
 
-        InfocamServiceClient.obtenerInstancia().obtenerCamarasActivas(preferenciaSesion.getToken(),
-                new ApiCallback<List<Camara>>() {
-                    @Override
-                    public void onSuccess(List<Camara> result) {
-                        for (Camara c : result) {
-                            boolean esFavorita = false;
-                            for (Camara f : listaFavoritosApi) {
-                                if (f.getId() == c.getId()) {
-                                    esFavorita = true;
-                                    break;
-                                }
-                            }
+    private List<Incidencia> filtrarIncidencias(List<Incidencia> encontradas, boolean conOficiales,
+            boolean conUsuarios, boolean soloFavs) {
+        List<Incidencia> resultado = new ArrayList<>();
+        // Si el filtro de cámaras está en "Solo Favoritos", ocultamos todas las incidencias
+        if (soloFavs)
+            return resultado;
+        for (Incidencia i : encontradas) {
+            // Filtros de tipo de incidencia
+            if (i.isOficial() && !conOficiales)
+                continue;
+            if (!i.isOficial() && !conUsuarios)
+                continue;
+            resultado.add(i);
+        }
+        return resultado;
+    }
 
-                            if (verSoloFavs && !esFavorita)
-                                continue;
+    // Zona que consultamos en el índice: lo que se ve más un margen, para poder desplazar el mapa un poco sin volver a consultar.
+    // Si hay un desplazamiento previsto {dLat, dLng}, la zona se alarga también hasta donde se verá entonces.
+    // Si el mapa aún no tiene tamaño (primer pintado) devolvemos null y se usan todos los datos.
+    private BoundingBox calcularZonaConsulta(double[] desplazamiento) {
+        if (visorMapa.getWidth() == 0 || visorMapa.getHeight() == 0)
+            return null;
+        BoundingBox visible = visorMapa.getBoundingBox();
+        double dLat = desplazamiento != null ? desplazamiento[0] : 0;
+        double dLng = desplazamiento != null ? desplazamiento[1] : 0;
+        double margenLat = visible.getLatitudeSpan() * MARGEN_ZONA;
+        double margenLng = visible.getLongitudeSpan() * MARGEN_ZONA;
+        return new BoundingBox(Math.min(visible.getLatNorth() + Math.max(dLat, 0) + margenLat, 85),
+                Math.min(visible.getLonEast() + Math.max(dLng, 0) + margenLng, 180),
+                Math.max(visible.getLatSouth() + Math.min(dLat, 0) - margenLat, -85),
+                Math.max(visible.getLonWest() + Math.min(dLng, 0) - margenLng, -180));
+    }
 
-                            dibujarMarcadorCamara(c, esFavorita);
-                        }
-                        visorMapa.invalidate();
-                    }
+    private boolean zonaCubreLoVisible() {
+        if (zonaConsultada == null)
+            return visorMapa.getWidth() == 0; // Si se consultó sin tamaño, en cuanto lo tenga hay que recortar a lo visible
+        BoundingBox visible = visorMapa.getBoundingBox();
+        return zonaConsultadaCubre(visible.getLatNorth(), visible.getLatSouth(), visible.getLonEast(), visible.getLonWest());
+    }
 
-                    @Override
-                    public void onError(String error) {
-                    }
-                });
+    private boolean zonaConsultadaCubre(double norte, double sur, double este, double oeste) {
+        return zonaConsultada != null && norte <= zonaConsultada.getLatNorth() && sur >= zonaConsultada.getLatSouth()
+                && este <= zonaConsultada.getLonEast() && oeste >= zonaConsultada.getLonWest();
+    }
+
+    // Al pulsar un punto de capaPuntos rellenamos la ventana de su tipo con sus datos y la abrimos justo encima del icono.
+    private void abrirDetalle(Object elemento, GeoPoint posicion, int altoIcono) {
+        InfoWindow ventana;
+        if (elemento instanceof Camara) {
+            Camara c = (Camara) elemento;
+            if (ventanaCamara == null)
+                ventanaCamara = new VentanaDetalleCamara(visorMapa); // Aquí se infla el layout, solo la primera vez
+            ventanaCamara.vincular(c, favoritos.contiene(c.getId()));
+            ventana = ventanaCamara;
+        } else {
+            if (ventanaIncidencia == null)
+                ventanaIncidencia = new VentanaDetalleIncidencia(visorMapa);
+            ventanaIncidencia.vincular((Incidencia) elemento);
+            ventana = ventanaIncidencia;
+        }
+        ventana.open(elemento, posicion, 0, -altoIcono);
     }
 
-    private void dibujarMarcadorCamara(Camara c, boolean esFavorita) {
-        Marker m = new Marker(visorMapa);
-        m.setPosition(new GeoPoint(c.getLatitud(), c.getLongitud()));
-        m.setIcon(ContextCompat.getDrawable(getContext(),
-                esFavorita ? R.drawable.ic_marker_favorite : R.drawable.ic_marker_camera));
-        m.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_BOTTOM);
-        m.setInfoWindow(new VentanaDetalleCamara(visorMapa, c, esFavorita));
-        visorMapa.getOverlays().add(m);
+    // Pasamos los puntos sueltos (grupos de un solo elemento) a arrays para capaPuntos, con el icono que le toca a cada uno.
+    private CapaPuntos.Lote prepararPuntos(List<Camara> camaras, List<AgrupadorMarcadores.Grupo> gruposCamaras,
+            List<Incidencia> incidencias, List<AgrupadorMarcadores.Grupo> gruposIncidencias) {
+        int total = 0;
+        for (AgrupadorMarcadores.Grupo g : gruposCamaras)
+            if (g.getIndiceUnico() >= 0)
+                total++;
+        for (AgrupadorMarcadores.Grupo g : gruposIncidencias)
+            if (g.getIndiceUnico() >= 0)
+                total++;
+
+        List<Object> elementos = new ArrayList<>(total);
+        double[] lat = new double[total], lng = new double[total];
+        int[] tiposIcono = new int[total];
+        for (AgrupadorMarcadores.Grupo g : gruposCamaras) {
+            if (g.getIndiceUnico() < 0)
+                continue;
+            Camara c = camaras.get(g.getIndiceUnico());
+            lat[elementos.size()] = c.getLatitud();
+            lng[elementos.size()] = c.getLongitud();
+            tiposIcono[elementos.size()] = favoritos.contiene(c.getId()) ? IconosMapa.FAVORITA : IconosMapa.CAMARA;
+            elementos.add(c);
+        }
+        for (AgrupadorMarcadores.Grupo g : gruposIncidencias) {
+            if (g.getIndiceUnico() < 0)
+                continue;
+            Incidencia i = incidencias.get(g.getIndiceUnico());
+            lat[elementos.size()] = i.getLatitud();
+            lng[elementos.size()] = i.getLongitud();
+            tiposIcono[elementos.size()] = i.isOficial() ? IconosMapa.INCIDENCIA : IconosMapa.INCIDENCIA_USUARIO;
+            elementos.add(i);
+        }
+        return new CapaPuntos.Lote(elementos, lat, lng, tiposIcono);
     }
 
-    private void traerIncidenciasServidor() {
-        if (verSoloFavs)
+    /*
+     * Lanza en segundo plano la consulta al índice espacial (solo la zona visible),
+     * el filtrado y el cálculo de grupos. Las capas indexadas no cambian nunca, así
+     * que basta con pasar la referencia actual. Si mientras tanto llega otra
+     * petición (más datos, un nuevo zoom o un desplazamiento), el resultado
+     * antiguo se descarta gracias al contador de generación.
+     */
+    private void reagruparCapas() {
+        reagruparCapas(null);
+    }
+
+    private void reagruparCapas(double[] desplazamientoPrevisto) {
+        if (hiloAgrupacion == null || hiloAgrupacion.isShutdown())
             return;
-        Usuario u = preferenciaSesion.obtenerUsuario();
-        Integer idU = (u != null) ? u.getId() : null;
 
-        InfocamServiceClient.obtenerInstancia().obtenerIncidencias(preferenciaSesion.getToken(), idU,
-                new ApiCallback<List<Incidencia>>() {
-                    @Override
-                    public void onSuccess(List<Incidencia> result) {
-                        for (Incidencia i : result) {
-                            // Si el filtro de cámaras está en "Solo Favoritos", ocultamos todas las
-                            // incidencias
-                            if (verSoloFavs)
-                                continue;
-
-                            // Filtros de tipo de incidencia
-                            if (i.isOficial() && !verIncidenciasG)
-                                continue;
-                            if (!i.isOficial() && !verIncidenciasU)
-                                continue;
-
-                            Marker m = new Marker(visorMapa);
-                            m.setPosition(new GeoPoint(i.getLatitud(), i.getLongitud()));
-                            m.setTitle(i.getNombre());
-
-                            // Lógica de iconos original
-                            int resIcono = i.isOficial() ? R.drawable.ic_marker_incident
-                                    : R.drawable.ic_marker_incident_user;
-                            m.setIcon(ContextCompat.getDrawable(getContext(), resIcono));
-
-                            m.setAnchor(Marker.ANCHOR_CENTER, Marker.ANCHOR_BOTTOM);
-                            m.setInfoWindow(new VentanaDetalleIncidencia(visorMapa, i));
-                            visorMapa.getOverlays().add(m);
-                        }
-                        visorMapa.invalidate();
-                    }
+        final double zoom = visorMapa.getZoomLevelDouble();
+        ultimoNivelAgrupado = (int) Math.floor(zoom);
+        final int generacion = ++generacionAgrupado;
+        final CapaIndexada<Camara> capaCamaras = datosMapa.getCamaras();
+        final CapaIndexada<Incidencia> capaIncidencias = datosMapa.getIncidencias();
+        final boolean conCamaras = verCamaras, conOficiales = verIncidenciasG, conUsuarios = verIncidenciasU,
+                conCalor = verMapaCalor, soloFavs = verSoloFavs;
+        final Corredor corredor = ruta.getCorredor();
+        final BoundingBox zona = calcularZonaConsulta(desplazamientoPrevisto);
+        zonaConsultada = zona;
+
+        hiloAgrupacion.execute(() -> {
+            // Con una ruta marcada solo interesa lo que queda cerca de ella (el corredor guarda su búsqueda para cada capa)
+            List<Camara> camaras = filtrarCamaras(corredor != null ? corredor.buscar(capaCamaras)
+                    : zona == null ? capaCamaras.getElementos()
+                            : capaCamaras.buscar(zona.getLatSouth(), zona.getLonWest(), zona.getLatNorth(), zona.getLonEast()),
+                    conCamaras, soloFavs);
+            // En modo mapa de calor las incidencias no se pintan como puntos, sino como una única imagen de toda la región
+            List<Incidencia> incidencias = conCalor ? new ArrayList<>()
+                    : filtrarIncidencias(corredor != null ? corredor.buscar(capaIncidencias)
+                            : zona == null ? capaIncidencias.getElementos()
+                                    : capaIncidencias.buscar(zona.getLatSouth(), zona.getLonWest(), zona.getLatNorth(),
+                                            zona.getLonEast()),
+                            conOficiales, conUsuarios, soloFavs);
+            MapaCalor.Resultado zonaCalor = null;
+            Bitmap imagenCalor = null;
+            if (conCalor && !soloFavs) {
+                zonaCalor = calorIncidencias.generar(capaIncidencias, conOficiales, conUsuarios, (int) Math.floor(zoom));
+                imagenCalor = calorIncidencias.obtenerImagen(zonaCalor);
+            }
 
-                    @Override
-                    public void onError(String error) {
-                    }
-                });
+            double[] latC = new double[camaras.size()], lngC = new double[camaras.size()];
+            for (int k = 0; k < camaras.size(); k++) {
+                latC[k] = camaras.get(k).getLatitud();
+                lngC[k] = camaras.get(k).getLongitud();
+            }
+            double[] latI = new double[incidencias.size()], lngI = new double[incidencias.size()];
+            for (int k = 0; k < incidencias.size(); k++) {
+                latI[k] = incidencias.get(k).getLatitud();
+                lngI[k] = incidencias.get(k).getLongitud();
+            }
+
+            List<AgrupadorMarcadores.Grupo> gruposCamaras = agrupador.agrupar(latC, lngC, latC.length, zoom);
+            List<AgrupadorMarcadores.Grupo> gruposIncidencias = agrupador.agrupar(latI, lngI, latI.length, zoom);
+            CapaPuntos.Lote puntos = prepararPuntos(camaras, gruposCamaras, incidencias, gruposIncidencias);
+            final MapaCalor.Resultado zonaImagenCalor = zonaCalor;
+            final Bitmap imagenCalorFinal = imagenCalor;
+
+            if (getActivity() == null)
+                return;
+            getActivity().runOnUiThread(() -> {
+                if (generacion != generacionAgrupado || getContext() == null)
+                    return;
+                pintarGrupos(gruposCamaras, gruposIncidencias, puntos, imagenCalorFinal, zonaImagenCalor);
+                if (corredor != null && corredor == ruta.getCorredor())
+                    ruta.mostrarLista(camaras, incidencias);
+            });
+        });
+    }
+
+    private void pintarGrupos(List<AgrupadorMarcadores.Grupo> gruposCamaras,
+            List<AgrupadorMarcadores.Grupo> gruposIncidencias, CapaPuntos.Lote puntos, Bitmap imagenCalor,
+            MapaCalor.Resultado zonaCalor) {
+        registroMarcadores.iniciarPasada();
+
+        // Los puntos sueltos ya van en el lote; aquí solo quedan las burbujas
+        for (AgrupadorMarcadores.Grupo g : gruposCamaras) {
+            if (g.getIndiceUnico() < 0)
+                dibujarGrupo(g, true);
+        }
+        for (AgrupadorMarcadores.Grupo g : gruposIncidencias) {
+            if (g.getIndiceUnico() < 0)
+                dibujarGrupo(g, false);
+        }
+        boolean cambianPuntos = capaPuntos.setLote(puntos);
+        boolean cambiaCalor = capaCalor.setImagen(imagenCalor, zonaCalor);
+        calorIncidencias.reciclarDescartadas(imagenCalor); // La imagen anterior ya no se pinta
+
+        // Solo redibujamos si algo ha cambiado realmente
+        if (registroMarcadores.finalizarPasada() > 0 || cambianPuntos || cambiaCalor)
+            visorMapa.invalidate();
+    }
+
+    // Sacamos un marcador de la reserva del registro (o creamos uno) y lo dejamos limpio, sin nada del uso anterior.
+    private Marker nuevoMarcador(float anclajeVertical) {
+        Marker m = registroMarcadores.reutilizar();
+        if (m == null) {
+            m = new Marker(visorMapa);
+        } else {
+            m.setTitle(null);
+            m.setOnMarkerClickListener(null);
+        }
+        m.setAnchor(Marker.ANCHOR_CENTER, anclajeVertical);
+        return m;
+    }
+
+    // Burbuja con el número de elementos. Al pulsarla acercamos el mapa hasta que se separan.
+    private void dibujarGrupo(AgrupadorMarcadores.Grupo g, boolean esCamara) {
+        String clave = String.format(Locale.US, "g%s%.6f,%.6f#%d", esCamara ? "c" : "i", g.getLatitud(),
+                g.getLongitud(), g.getCantidad());
+        if (registroMarcadores.conservar(clave))
+            return;
+
+        Marker m = nuevoMarcador(Marker.ANCHOR_CENTER);
+        m.setPosition(new GeoPoint(g.getLatitud(), g.getLongitud()));
+        m.setIcon(obtenerIconoGrupo(g.getCantidad(), esCamara));
+        m.setInfoWindow(null);
+        m.setOnMarkerClickListener((marcador, mapa) -> {
+            if (g.getLatMax() - g.getLatMin() > 1e-6 || g.getLngMax() - g.getLngMin() > 1e-6) {
+                mapa.zoomToBoundingBox(new BoundingBox(g.getLatMax(), g.getLngMax(), g.getLatMin(), g.getLngMin())
+                        .increaseByScale(1.3f), true);
+            } else {
+                mapa.getController().animateTo(marcador.getPosition(), mapa.getZoomLevelDouble() + 2, 400L);
+            }
+            return true;
+        });
+        registroMarcadores.registrar(clave, m);
+    }
+
+    // Los iconos de burbuja se dibujan una sola vez por tipo y cantidad y se reutilizan.
+    private Drawable obtenerIconoGrupo(int cantidad, boolean esCamara) {
+        int clave = esCamara ? cantidad : -cantidad;
+        Drawable icono = iconosGrupo.get(clave);
+        if (icono != null)
+            return icono;
+
+        float densidad = getResources().getDisplayMetrics().density;
+        int lado = (int) ((cantidad < 100 ? 36 : cantidad < 1000 ? 44 : 52) * densidad);
+        Bitmap b = Bitmap.createBitmap(lado, lado, Bitmap.Config.ARGB_8888);
+        Canvas lienzo = new Canvas(b);
+
+        Paint relleno = new Paint(Paint.ANTI_ALIAS_FLAG);
+        relleno.setColor(ContextCompat.getColor(getContext(), esCamara ? R.color.primary_green : R.color.action_red));
+        lienzo.drawCircle(lado / 2f, lado / 2f, lado / 2f, relleno);
+        relleno.setColor(0xFFFFFFFF);
+        relleno.setStyle(Paint.Style.STROKE);
+        relleno.setStrokeWidth(2 * densidad);
+        lienzo.drawCircle(lado / 2f, lado / 2f, lado / 2f - densidad, relleno);
+
+        Paint texto = new Paint(Paint.ANTI_ALIAS_FLAG);
+        texto.setColor(0xFFFFFFFF);
+        texto.setTextSize(13 * densidad);
+        texto.setTypeface(Typeface.DEFAULT_BOLD);
+        texto.setTextAlign(Paint.Align.CENTER);
+        float baseTexto = lado / 2f - (texto.descent() + texto.ascent()) / 2f;
+        lienzo.drawText(String.valueOf(cantidad), lado / 2f, baseTexto, texto);
+
+        icono = new BitmapDrawable(getResources(), b);
+        iconosGrupo.put(clave, icono);
+        return icono;
     }
 
     private void lanzarNuevaIncidencia(GeoPoint p) {
@@ -352,6 +863,7 @@ public class MapaFragment extends Fragment {
                 .setTitle("Reportar Incidencia")
                 .setMessage("¿Deseas informar de un incidente en este punto?")
                 .setPositiveButton("Crear", (d, w) -> {
+                    datosMapa.invalidar(); // Al volver queremos ver la incidencia nueva, así que forzamos la descarga
                     Intent i = new Intent(getContext(), CrearIncidenciaActivity.class);
                     i.putExtra("latitud", p.getLatitude());
                     i.putExtra("longitud", p.getLongitude());
@@ -361,16 +873,6 @@ public class MapaFragment extends Fragment {
                 .show();
     }
 
-    private Bitmap drawableToBitmap(Drawable d) {
-        if (d == null)
-            return null;
-        Bitmap b = Bitmap.createBitmap(d.getIntrinsicWidth(), d.getIntrinsicHeight(), Bitmap.Config.ARGB_8888);
-        Canvas c = new Canvas(b);
-        d.setBounds(0, 0, c.getWidth(), c.getHeight());
-        d.draw(c);
-        return b;
-    }
-
     private GeoPoint obtenerUltimaPosicionConocida() {
         if (getContext() == null || ContextCompat.checkSelfPermission(getContext(),
                 Manifest.permission.ACCESS_FINE_LOCATION) != PackageManager.PERMISSION_GRANTED)
@@ -382,13 +884,16 @@ public class MapaFragment extends Fragment {
         return (loc != null) ? new GeoPoint(loc.getLatitude(), loc.getLongitude()) : null;
     }
 
-    // Ventanas emergentes (InfoWindows) personalizadas
+    // Ventanas emergentes (InfoWindows) personalizadas. No pertenecen a ningún punto: antes de abrirlas se vinculan al pulsado
     private class VentanaDetalleCamara extends InfoWindow {
         private Camara cam;
         private boolean esFav;
 
-        public VentanaDetalleCamara(MapView mv, Camara cam, boolean esFav) {
+        public VentanaDetalleCamara(MapView mv) {
             super(R.layout.info_window_camera, mv);
+        }
+
+        public void vincular(Camara cam, boolean esFav) {
             this.cam = cam;
             this.esFav = esFav;
         }
@@ -410,36 +915,39 @@ public class MapaFragment extends Fragment {
                 startActivity(i);
             });
 
-            btn.setOnClickListener(c -> accionarFavorito(btn, (Marker) item));
+            btn.setOnClickListener(c -> accionarFavorito(btn));
         }
 
-        private void accionarFavorito(ImageButton btn, Marker m) {
+        private void accionarFavorito(ImageButton btn) {
             Usuario u = preferenciaSesion.obtenerUsuario();
             if (u == null)
                 return;
+            // La ventana se reutiliza: nos quedamos con la cámara de ahora por si al responder ya muestra otra
+            final Camara cam = this.cam;
 
             InfocamServiceClient.obtenerInstancia().conmutarFavorito(preferenciaSesion.getToken(), cam.getId(), u.getId(),
                     new ApiCallback<Void>() {
                         @Override
                         public void onSuccess(Void result) {
-                            esFav = !esFav;
-                            btn.setImageResource(esFav ? R.drawable.ic_star_filled : R.drawable.ic_star_border);
-                            m.setIcon(ContextCompat.getDrawable(getContext(),
-                                    esFav ? R.drawable.ic_marker_favorite : R.drawable.ic_marker_camera));
-                            visorMapa.invalidate();
+                            boolean ahoraFav = !favoritos.contiene(cam.getId());
+                            if (cam == VentanaDetalleCamara.this.cam) {
+                                esFav = ahoraFav;
+                                btn.setImageResource(esFav ? R.drawable.ic_star_filled : R.drawable.ic_star_border);
+                            }
+
+                            // El icono del mapa sale del conjunto en memoria: lo actualizamos y repintamos los puntos
+                            if (ahoraFav)
+                                favoritos.anadir(cam.getId());
+                            else
+                                favoritos.quitar(cam.getId());
+                            reagruparCapas();
 
-                            if (esFav) {
+                            if (ahoraFav) {
                                 Favorito fav = new Favorito(u.getId(), cam.getId(), cam.getNombre(),
                                         "Cámara de tráfico", cam.getLatitud(), cam.getLongitud(), cam.getImagen());
                                 databaseLocal.insertarFavorito(fav);
                             } else {
-                                List<Favorito> actuales = databaseLocal.obtenerFavoritosPorUsuario(u.getId());
-                                for (Favorito f : actuales) {
-                                    if (f.getIdCamara() == cam.getId()) {
-                                        databaseLocal.eliminarFavorito(f.getIdLocal());
-                                        break;
-                                    }
-                                }
+                                databaseLocal.eliminarFavoritoPorCamara(u.getId(), cam.getId());
                             }
                         }
 
@@ -458,8 +966,11 @@ public class MapaFragment extends Fragment {
     private class VentanaDetalleIncidencia extends InfoWindow {
         private Incidencia inci;
 
-        public VentanaDetalleIncidencia(MapView mv, Incidencia inci) {
+        public VentanaDetalleIncidencia(MapView mv) {
             super(R.layout.info_window_incident, mv);
+        }
+
+        public void vincular(Incidencia inci) {
             this.inci = inci;
         }
 
@@ -1,5 +1,7 @@
 package com.infocam.ui;
 
+import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.text.TextUtils;
@@ -14,11 +16,21 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import com.infocam.R;
+import com.infocam.data.ArchivoTeselas;
 import com.infocam.data.DataRepository;
 import com.infocam.data.SessionManager;
+import com.infocam.mapa.DescargadorTeselas;
 import com.infocam.model.Usuario;
 import com.infocam.network.ApiCallback;
 import com.infocam.network.InfocamServiceClient;
+import com.infocam.network.RetrofitClient;
+
+import org.osmdroid.tileprovider.tilesource.TileSourceFactory;
+import org.osmdroid.util.BoundingBox;
+
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * PerfilFragment: Información del usuario actual y cierre de sesión.
@@ -28,12 +40,17 @@ import com.infocam.network.InfocamServiceClient;
  * persistidos.
  * 2. Intents con Flags: Al cerrar sesión, limpiamos el historial para que no se
  * pueda volver atrás.
+ * 3. Mapa sin conexión: Descargamos las teselas de la zona de los favoritos a un
+ * archivo local (con tamaño máximo) que el mapa consulta antes que la red.
  */
 public class PerfilFragment extends Fragment {
+    private static final long ESPERA_DESCARGA_MS = 2000;
 
     private TextView txtNombreUsuario;
     private EditText etNombre, etEmail, etTelefono, etPassword;
-    private Button btnGuardar, btnLogout;
+    private Button btnGuardar, btnLogout, btnDescargarMapa;
+    private TextView txtProgresoDescarga;
+    private DescargadorTeselas descargador;
     private SessionManager preferenciaSesion;
     private DataRepository databaseLocal;
 
@@ -56,6 +73,8 @@ public class PerfilFragment extends Fragment {
         etPassword = vistaRaiz.findViewById(R.id.etPasswordPerfil);
         btnGuardar = vistaRaiz.findViewById(R.id.btnGuardarPerfil);
         btnLogout = vistaRaiz.findViewById(R.id.btnLogout);
+        btnDescargarMapa = vistaRaiz.findViewById(R.id.btnDescargarMapa);
+        txtProgresoDescarga = vistaRaiz.findViewById(R.id.tvProgresoDescarga);
 
         if (user != null) {
             txtNombreUsuario.setText(user.getUsername());
@@ -65,23 +84,100 @@ public class PerfilFragment extends Fragment {
         }
 
         btnGuardar.setOnClickListener(v -> ejecutarAccionActualizar());
+        btnDescargarMapa.setOnClickListener(v -> descargarMapaOffline(user));
+
+        btnLogout.setOnClickListener(v -> cerrarSesion(user));
+
+        return vistaRaiz;
+    }
 
-        btnLogout.setOnClickListener(v -> {
-            // Limpieza antes de salir
+    /* Limpieza antes de salir y navegación al Login. Borrar las tablas y los archivos, y sobre todo esperar a que pare la descarga del
+     * mapa (hasta ESPERA_DESCARGA_MS), bloquearía la interfaz, así que se hace en un hilo aparte y se navega al terminar. */
+    private void cerrarSesion(Usuario user) {
+        btnLogout.setEnabled(false);
+        btnDescargarMapa.setEnabled(false);
+        Activity actividad = requireActivity();
+        Context contextoApp = actividad.getApplicationContext();
+        DescargadorTeselas descargadorAbierto = descargador;
+        descargador = null; // Así onDestroyView no lo cierra sin esperar
+
+        ExecutorService hiloLimpieza = Executors.newSingleThreadExecutor();
+        hiloLimpieza.execute(() -> {
             if (user != null) {
                 databaseLocal.vaciarFavoritosDeUsuario(user.getId());
             }
+            databaseLocal.vaciarCacheMapa(); // Las incidencias propias del usuario no deben verse en la siguiente sesión
+            if (descargadorAbierto != null) {
+                // Hay que esperar a que pare: la tesela que se estaba bajando se guardaría en el archivo recién vaciado
+                descargadorAbierto.cerrarYEsperar(ESPERA_DESCARGA_MS);
+            }
+            ArchivoTeselas.obtenerInstancia(contextoApp).vaciar(); // La zona descargada delata dónde están sus favoritos
+            RetrofitClient.vaciarCache(); // Las respuestas guardadas son las de este usuario
             preferenciaSesion.cerrarSesion();
 
-            // Navegación segura al Login
-            Intent i = new Intent(getActivity(), LoginActivity.class);
-            i.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-            startActivity(i);
-            if (getActivity() != null)
-                getActivity().finish();
+            // Navegación segura al Login (aunque mientras tanto se haya cerrado la pantalla)
+            actividad.runOnUiThread(() -> {
+                Intent i = new Intent(contextoApp, LoginActivity.class);
+                i.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+                contextoApp.startActivity(i);
+                actividad.finish();
+            });
         });
+        hiloLimpieza.shutdown();
+    }
 
-        return vistaRaiz;
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (descargador != null) {
+            descargador.cerrar();
+            descargador = null;
+        }
+    }
+
+    // Descarga las teselas de la zona de los favoritos (o del centro de Madrid si no tiene ninguno). Si ya está descargando, la cancela.
+    private void descargarMapaOffline(Usuario user) {
+        if (descargador != null) {
+            descargador.cancelar();
+            return;
+        }
+
+        BoundingBox zona = user != null
+                ? DescargadorTeselas.zonaDeFavoritos(databaseLocal.obtenerFavoritosPorUsuario(user.getId()))
+                : null;
+        if (zona == null)
+            zona = new BoundingBox(40.4467, -3.6737, 40.3867, -3.7337);
+
+        descargador = new DescargadorTeselas(ArchivoTeselas.obtenerInstancia(getContext()), TileSourceFactory.MAPNIK);
+        btnDescargarMapa.setText("Cancelar descarga");
+        txtProgresoDescarga.setVisibility(View.VISIBLE);
+        txtProgresoDescarga.setText("Preparando descarga...");
+
+        int zoomHasta = descargador.descargar(zona, DescargadorTeselas.ZOOM_MINIMO_DEFECTO,
+                DescargadorTeselas.ZOOM_MAXIMO_DEFECTO, new DescargadorTeselas.Progreso() {
+                    @Override
+                    public void alAvanzar(int hechas, int total) {
+                        txtProgresoDescarga.setText(String.format(Locale.getDefault(), "Descargando mapa: %d de %d (%d%%)",
+                                hechas, total, total > 0 ? hechas * 100 / total : 100));
+                    }
+
+                    @Override
+                    public void alTerminar(int descargadas, int fallidas, boolean cancelada) {
+                        if (getContext() == null)
+                            return; // La vista ya no existe (onDestroyView ya cerró el descargador)
+                        if (descargador != null) {
+                            descargador.cerrar();
+                            descargador = null;
+                        }
+                        btnDescargarMapa.setText("Descargar mapa sin conexión");
+                        long ocupadoMb = ArchivoTeselas.obtenerInstancia(getContext()).getBytesOcupados() / (1024 * 1024);
+                        txtProgresoDescarga.setText(String.format(Locale.getDefault(),
+                                "%s: %d teselas nuevas, %d fallidas (%d MB ocupados)",
+                                cancelada ? "Descarga cancelada" : "Mapa descargado", descargadas, fallidas, ocupadoMb));
+                    }
+                });
+        if (zoomHasta < DescargadorTeselas.ZOOM_MAXIMO_DEFECTO)
+            Toast.makeText(getContext(), "Zona grande: se descarga hasta el zoom " + zoomHasta, Toast.LENGTH_SHORT).show();
     }
 
     private void ejecutarAccionActualizar() {
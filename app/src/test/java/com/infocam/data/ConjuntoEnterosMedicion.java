@@ -0,0 +1,118 @@
+package com.infocam.data;
+
+import com.infocam.model.Favorito;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+/* Medición de ConjuntoEnteros: lo que hace el mapa al pintar, preguntar por cada una de 10.000 cámaras si está entre 1.000 favoritas.
+ * Se compara con recorrer la lista de favoritos (como se hacía antes) y con un HashSet<Integer>, y se saca el tiempo por consulta, la
+ * memoria asignada por pasada y la que se asigna al llenar cada conjunto. No es una prueba (no lleva @Test), así que no alarga ./gradlew test: se lanza a mano ejecutando main()
+ * desde el IDE. La memoria se mide con el ThreadMXBean de HotSpot, por eso va en las pruebas de la JVM y no en las del dispositivo. */
+public class ConjuntoEnterosMedicion {
+    private static final int CAMARAS = 10000;
+    private static final int FAVORITOS = 1000;
+    private static final int CALENTAMIENTO = 200;
+    private static final int REPETICIONES = 200;
+    private static final int RONDAS = 3;
+
+    public static void main(String[] args) {
+        // Ids como los de la API: consecutivos desde 1, y los favoritos son 1.000 de ellos al azar
+        int[] camaras = new int[CAMARAS];
+        for (int i = 0; i < CAMARAS; i++)
+            camaras[i] = i + 1;
+        Random azar = new Random(5);
+        List<Favorito> favoritos = new ArrayList<>();
+        Set<Integer> conjuntoJava = new HashSet<>();
+        ConjuntoEnteros conjunto = new ConjuntoEnteros(FAVORITOS);
+        while (favoritos.size() < FAVORITOS) {
+            int id = 1 + azar.nextInt(CAMARAS);
+            if (conjunto.anadir(id)) {
+                conjuntoJava.add(id);
+                favoritos.add(new Favorito(1, id, "Cámara " + id, "", 40.4, -3.7, ""));
+            }
+        }
+
+        String[] nombres = { "lista", "HashSet", "ConjuntoEnteros" };
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long hilo = Thread.currentThread().getId();
+
+        // Lo que se asigna al llenar cada conjunto (los arrays que se quedan pequeños al crecer también cuentan)
+        for (int i = 0; i < CALENTAMIENTO; i++)
+            llenar(favoritos);
+        long bytesAntes = hilos.getThreadAllocatedBytes(hilo);
+        Set<Integer> llenoJava = new HashSet<>();
+        for (Favorito f : favoritos)
+            llenoJava.add(f.getIdCamara());
+        long bytesJava = hilos.getThreadAllocatedBytes(hilo) - bytesAntes;
+        bytesAntes = hilos.getThreadAllocatedBytes(hilo);
+        ConjuntoEnteros lleno = new ConjuntoEnteros();
+        for (Favorito f : favoritos)
+            lleno.anadir(f.getIdCamara());
+        long bytesConjunto = hilos.getThreadAllocatedBytes(hilo) - bytesAntes;
+        System.out.println(String.format(Locale.ROOT, "al llenar con %d favoritos: HashSet %d B, ConjuntoEnteros %d B", FAVORITOS,
+                bytesJava, bytesConjunto));
+
+        // Se alternan varias rondas para que el JIT y el GC no favorezcan al que va primero
+        for (int ronda = 0; ronda < RONDAS; ronda++) {
+            for (int k = 0; k < nombres.length; k++) {
+                // La lista es unas mil veces más lenta: con menos pasadas basta
+                int calentamiento = k == 0 ? CALENTAMIENTO / 20 : CALENTAMIENTO, repeticiones = k == 0 ? REPETICIONES / 20 : REPETICIONES;
+                int encontradas = 0;
+                for (int i = 0; i < calentamiento; i++)
+                    encontradas += pasada(k, camaras, favoritos, conjuntoJava, conjunto);
+                bytesAntes = hilos.getThreadAllocatedBytes(hilo);
+                long antes = System.nanoTime();
+                for (int i = 0; i < repeticiones; i++)
+                    encontradas += pasada(k, camaras, favoritos, conjuntoJava, conjunto);
+                long ns = (System.nanoTime() - antes) / repeticiones;
+                long bytes = (hilos.getThreadAllocatedBytes(hilo) - bytesAntes) / repeticiones;
+                if (encontradas != FAVORITOS * (calentamiento + repeticiones))
+                    throw new IllegalStateException(nombres[k] + " no encuentra todas las favoritas");
+                System.out.println(String.format(Locale.ROOT, "%-15s %9.1f us/pasada, %7.2f ns/consulta, %7d B asignados/pasada",
+                        nombres[k], ns / 1e3, (double) ns / CAMARAS, bytes));
+            }
+        }
+    }
+
+    // Para calentar el código de llenado antes de medirlo.
+    private static int llenar(List<Favorito> favoritos) {
+        Set<Integer> conjuntoJava = new HashSet<>();
+        ConjuntoEnteros conjunto = new ConjuntoEnteros();
+        for (Favorito f : favoritos) {
+            conjuntoJava.add(f.getIdCamara());
+            conjunto.anadir(f.getIdCamara());
+        }
+        return conjuntoJava.size() + conjunto.tamano();
+    }
+
+    /* Cuántas de las cámaras son favoritas, con la forma número "forma" de nombres. Cada una tiene su propio bucle: con una interfaz
+     * común, la llamada a través de ella costaba más que la propia consulta. */
+    private static int pasada(int forma, int[] camaras, List<Favorito> favoritos, Set<Integer> conjuntoJava, ConjuntoEnteros conjunto) {
+        int encontradas = 0;
+        if (forma == 0) {
+            for (int idCamara : camaras) {
+                for (Favorito f : favoritos) {
+                    if (f.getIdCamara() == idCamara) {
+                        encontradas++;
+                        break;
+                    }
+                }
+            }
+        } else if (forma == 1) {
+            for (int idCamara : camaras)
+                if (conjuntoJava.contains(idCamara))
+                    encontradas++;
+        } else {
+            for (int idCamara : camaras)
+                if (conjunto.contiene(idCamara))
+                    encontradas++;
+        }
+        return encontradas;
+    }
+}
@@ -0,0 +1,143 @@
+package com.infocam.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+public class ConjuntoEnterosTest {
+
+    @Test
+    public void anadirContieneYQuitar() {
+        ConjuntoEnteros conjunto = new ConjuntoEnteros();
+        assertTrue(conjunto.anadir(15));
+        assertFalse(conjunto.anadir(15));
+        assertTrue(conjunto.contiene(15));
+        assertFalse(conjunto.contiene(16));
+        assertEquals(1, conjunto.tamano());
+
+        assertTrue(conjunto.quitar(15));
+        assertFalse(conjunto.quitar(15));
+        assertFalse(conjunto.contiene(15));
+        assertEquals(0, conjunto.tamano());
+    }
+
+    @Test
+    public void elCeroSeGuardaAparte() {
+        ConjuntoEnteros conjunto = new ConjuntoEnteros();
+        assertFalse(conjunto.contiene(0));
+        assertTrue(conjunto.anadir(0));
+        assertFalse(conjunto.anadir(0));
+        assertTrue(conjunto.contiene(0));
+        assertEquals(1, conjunto.tamano());
+        assertTrue(conjunto.quitar(0));
+        assertFalse(conjunto.contiene(0));
+        assertEquals(0, conjunto.tamano());
+    }
+
+    @Test
+    public void admiteNegativos() {
+        ConjuntoEnteros conjunto = new ConjuntoEnteros();
+        conjunto.anadir(-1);
+        conjunto.anadir(Integer.MIN_VALUE);
+        assertTrue(conjunto.contiene(-1));
+        assertTrue(conjunto.contiene(Integer.MIN_VALUE));
+        assertFalse(conjunto.contiene(1));
+    }
+
+    // Tres valores con la misma casilla preferida: al borrar el primero, los otros dos deben retroceder y seguir encontrándose.
+    @Test
+    public void alQuitarSeDesplazanHaciaAtrasLosQueColisionaron() {
+        List<Integer> mismaCasilla = valoresConCasilla(5, 3);
+        ConjuntoEnteros conjunto = new ConjuntoEnteros();
+        for (int v : mismaCasilla)
+            conjunto.anadir(v);
+
+        assertTrue(conjunto.quitar(mismaCasilla.get(0)));
+        assertFalse(conjunto.contiene(mismaCasilla.get(0)));
+        assertTrue(conjunto.contiene(mismaCasilla.get(1)));
+        assertTrue(conjunto.contiene(mismaCasilla.get(2)));
+
+        assertTrue(conjunto.quitar(mismaCasilla.get(2)));
+        assertTrue(conjunto.contiene(mismaCasilla.get(1)));
+        assertEquals(1, conjunto.tamano());
+    }
+
+    // Colisiones en la última casilla: la cadena da la vuelta al principio del array y el desplazamiento también.
+    @Test
+    public void elDesplazamientoDaLaVueltaAlFinalDelArray() {
+        List<Integer> ultima = valoresConCasilla(31, 3);
+        List<Integer> primera = valoresConCasilla(0, 1);
+        ConjuntoEnteros conjunto = new ConjuntoEnteros();
+        for (int v : ultima)
+            conjunto.anadir(v); // Ocupan las casillas 31, 0 y 1
+        conjunto.anadir(primera.get(0)); // Su casilla (0) está ocupada: acaba en la 2
+
+        assertTrue(conjunto.quitar(ultima.get(0)));
+        for (int i = 1; i < ultima.size(); i++)
+            assertTrue(conjunto.contiene(ultima.get(i)));
+        assertTrue(conjunto.contiene(primera.get(0)));
+
+        assertTrue(conjunto.quitar(ultima.get(1)));
+        assertTrue(conjunto.contiene(ultima.get(2)));
+        assertTrue(conjunto.contiene(primera.get(0)));
+    }
+
+    @Test
+    public void creceSinPerderValores() {
+        ConjuntoEnteros conjunto = new ConjuntoEnteros(2);
+        for (int i = 1; i <= 10000; i++)
+            conjunto.anadir(i);
+        assertEquals(10000, conjunto.tamano());
+        for (int i = 1; i <= 10000; i++)
+            assertTrue(conjunto.contiene(i));
+        assertFalse(conjunto.contiene(10001));
+    }
+
+    @Test
+    public void vaciarLoDejaComoNuevo() {
+        ConjuntoEnteros conjunto = new ConjuntoEnteros();
+        conjunto.anadir(0);
+        conjunto.anadir(7);
+        conjunto.vaciar();
+        assertEquals(0, conjunto.tamano());
+        assertFalse(conjunto.contiene(0));
+        assertFalse(conjunto.contiene(7));
+    }
+
+    // Operaciones al azar sobre pocos valores (muchas colisiones y borrados) comparadas con un HashSet.
+    @Test
+    public void secuenciaAleatoriaCoincideConHashSet() {
+        Random azar = new Random(42);
+        ConjuntoEnteros conjunto = new ConjuntoEnteros();
+        Set<Integer> referencia = new HashSet<>();
+        for (int paso = 0; paso < 200000; paso++) {
+            int valor = azar.nextInt(300) - 20;
+            if (azar.nextInt(3) == 0)
+                assertEquals(referencia.remove(valor), conjunto.quitar(valor));
+            else
+                assertEquals(referencia.add(valor), conjunto.anadir(valor));
+            assertEquals(referencia.size(), conjunto.tamano());
+        }
+        for (int valor = -20; valor < 280; valor++)
+            assertEquals(referencia.contains(valor), conjunto.contiene(valor));
+    }
+
+    // Misma mezcla que ConjuntoEnteros.posicion(), con las 32 casillas que reserva el constructor por defecto.
+    private static List<Integer> valoresConCasilla(int casilla, int cuantos) {
+        List<Integer> valores = new ArrayList<>();
+        for (int v = 1; valores.size() < cuantos; v++) {
+            int h = v * 0x9E3779B9;
+            if (((h ^ (h >>> 16)) & 31) == casilla)
+                valores.add(v);
+        }
+        return valores;
+    }
+}
@@ -0,0 +1,49 @@
+package com.infocam.mapa;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Random;
+
+/* Medición de AgrupadorMarcadores con 20.000 puntos: lo que tarda agrupar() en cada zoom (desde toda la Península hasta el zoom en el que
+ * ya no se agrupa), cuántos grupos salen y la memoria asignada por llamada. La mitad de los puntos están repartidos por toda la
+ * Península y la otra mitad alrededor de Madrid, Barcelona, Valencia y Sevilla, como las cámaras reales. No es una prueba (no lleva
+ * @Test), así que no alarga ./gradlew test: se lanza a mano ejecutando main() desde el IDE. La memoria se mide con el ThreadMXBean de
+ * HotSpot, por eso va en las pruebas de la JVM y no en las del dispositivo. */
+public class AgrupadorMarcadoresMedicion {
+    private static final int PUNTOS = 20000;
+    private static final double[] ZOOMS = { 6, 9, 12, 15, 17 };
+    private static final double[][] CIUDADES = { { 40.42, -3.70 }, { 41.39, 2.17 }, { 39.47, -0.38 }, { 37.39, -5.98 } };
+    private static final int CALENTAMIENTO = 100;
+    private static final int REPETICIONES = 100;
+
+    public static void main(String[] args) {
+        Random azar = new Random(1);
+        double[] lat = new double[PUNTOS], lng = new double[PUNTOS];
+        for (int i = 0; i < PUNTOS; i++) {
+            if (i % 2 == 0) {
+                lat[i] = 36 + azar.nextDouble() * 7.5;
+                lng[i] = -9 + azar.nextDouble() * 12;
+            } else {
+                double[] ciudad = CIUDADES[azar.nextInt(CIUDADES.length)];
+                lat[i] = ciudad[0] + azar.nextGaussian() * 0.1;
+                lng[i] = ciudad[1] + azar.nextGaussian() * 0.1;
+            }
+        }
+
+        AgrupadorMarcadores agrupador = new AgrupadorMarcadores();
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long hilo = Thread.currentThread().getId();
+        for (double zoom : ZOOMS) {
+            for (int i = 0; i < CALENTAMIENTO; i++)
+                agrupador.agrupar(lat, lng, PUNTOS, zoom);
+            int grupos = 0;
+            long bytesAntes = hilos.getThreadAllocatedBytes(hilo), antes = System.nanoTime();
+            for (int i = 0; i < REPETICIONES; i++)
+                grupos = agrupador.agrupar(lat, lng, PUNTOS, zoom).size();
+            long ns = (System.nanoTime() - antes) / REPETICIONES;
+            long bytes = (hilos.getThreadAllocatedBytes(hilo) - bytesAntes) / REPETICIONES;
+            System.out.println(String.format(Locale.ROOT, "zoom %2.0f: %5d grupos, %.2f ms/agrupación, %.2f MB asignados", zoom, grupos,
+                    ns / 1e6, bytes / 1e6));
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.infocam.mapa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+
+public class AgrupadorMarcadoresTest {
+    private final AgrupadorMarcadores agrupador = new AgrupadorMarcadores();
+
+    @Test
+    public void sinPuntosDevuelveListaVacia() {
+        assertTrue(agrupador.agrupar(new double[0], new double[0], 0, 10).isEmpty());
+    }
+
+    @Test
+    public void puntosDeLaMismaCeldaFormanUnGrupoCentradoEnSuMedia() {
+        double[] lat = { 43.2630, 43.2632, 43.2634 };
+        double[] lng = { -2.9350, -2.9352, -2.9354 };
+
+        List<AgrupadorMarcadores.Grupo> grupos = agrupador.agrupar(lat, lng, 3, 10);
+
+        assertEquals(1, grupos.size());
+        AgrupadorMarcadores.Grupo g = grupos.get(0);
+        assertEquals(3, g.getCantidad());
+        assertEquals(-1, g.getIndiceUnico());
+        assertEquals(43.2632, g.getLatitud(), 1e-9);
+        assertEquals(-2.9352, g.getLongitud(), 1e-9);
+        assertEquals(43.2630, g.getLatMin(), 1e-9);
+        assertEquals(43.2634, g.getLatMax(), 1e-9);
+        assertEquals(-2.9354, g.getLngMin(), 1e-9);
+        assertEquals(-2.9350, g.getLngMax(), 1e-9);
+    }
+
+    @Test
+    public void puntosLejanosQuedanEnGruposDistintosEnOrdenDeAparicion() {
+        // Bilbao, Donostia y otra vez Bilbao
+        double[] lat = { 43.263, 43.318, 43.264 };
+        double[] lng = { -2.935, -1.981, -2.934 };
+
+        List<AgrupadorMarcadores.Grupo> grupos = agrupador.agrupar(lat, lng, 3, 12);
+
+        assertEquals(2, grupos.size());
+        assertEquals(2, grupos.get(0).getCantidad());
+        assertEquals(1, grupos.get(1).getCantidad());
+        assertEquals(1, grupos.get(1).getIndiceUnico());
+    }
+
+    @Test
+    public void soloCuentaLaParteEnteraDelZoom() {
+        double[] lat = { 43.263, 43.270, 43.300, 43.100 };
+        double[] lng = { -2.935, -2.920, -2.800, -2.500 };
+
+        assertEquals(agrupador.agrupar(lat, lng, 4, 11.0).size(), agrupador.agrupar(lat, lng, 4, 11.9).size());
+    }
+
+    @Test
+    public void conMuchoZoomCadaPuntoEsSuPropioGrupo() {
+        double[] lat = { 43.2630, 43.2630, 43.2631 };
+        double[] lng = { -2.9350, -2.9350, -2.9351 };
+
+        List<AgrupadorMarcadores.Grupo> grupos = agrupador.agrupar(lat, lng, 3, AgrupadorMarcadores.ZOOM_SIN_AGRUPAR);
+
+        assertEquals(3, grupos.size());
+        for (int i = 0; i < 3; i++)
+            assertEquals(i, grupos.get(i).getIndiceUnico());
+    }
+
+    @Test
+    public void soloSeUsanLosPrimerosTotalPuntos() {
+        double[] lat = { 43.263, 40.0, 50.0 };
+        double[] lng = { -2.935, 0.0, 10.0 };
+
+        List<AgrupadorMarcadores.Grupo> grupos = agrupador.agrupar(lat, lng, 1, 8);
+
+        assertEquals(1, grupos.size());
+        assertEquals(0, grupos.get(0).getIndiceUnico());
+    }
+
+    @Test
+    public void ningunPuntoSePierdeNiSeRepite() {
+        int total = 2000;
+        double[] lat = new double[total];
+        double[] lng = new double[total];
+        java.util.Random r = new java.util.Random(7);
+        for (int i = 0; i < total; i++) {
+            lat[i] = 42.5 + r.nextDouble();
+            lng[i] = -3.5 + r.nextDouble() * 2;
+        }
+        for (int zoom = 5; zoom <= 17; zoom++) {
+            int suma = 0;
+            for (AgrupadorMarcadores.Grupo g : agrupador.agrupar(lat, lng, total, zoom))
+                suma += g.getCantidad();
+            assertEquals(total, suma);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.infocam.mapa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class CorredorTest {
+
+    // Una calle de norte a sur con dos elementos a unos 50 m y uno a unos 500 m.
+    private static CapaIndexada<String> capa() {
+        List<String> elementos = Arrays.asList("cerca", "tambien", "lejos");
+        return new CapaIndexada<>(elementos, new double[] { 40.40, 40.41, 40.40 },
+                new double[] { -3.7006, -3.6994, -3.706 });
+    }
+
+    private static Corredor corredor() {
+        return new Corredor(new double[] { 40.39, 40.42 }, new double[] { -3.7, -3.7 }, 150);
+    }
+
+    @Test
+    public void soloDevuelveLoQueQuedaDentro() {
+        List<String> encontrados = new ArrayList<>(corredor().buscar(capa()));
+        Collections.sort(encontrados);
+        assertEquals(Arrays.asList("cerca", "tambien"), encontrados);
+        assertEquals(2, corredor().getVertices());
+    }
+
+    @Test
+    public void laMismaCapaNoSeVuelveABuscar() {
+        Corredor corredor = corredor();
+        CapaIndexada<String> capa = capa();
+        List<String> primera = corredor.buscar(capa);
+        assertSame(primera, corredor.buscar(capa));
+        assertNotSame(primera, corredor.buscar(capa())); // Datos nuevos: otra capa, otra búsqueda
+    }
+
+    // Al pasar de MAXIMO_CAPAS_GUARDADAS se olvidan las búsquedas antiguas, pero el resultado sigue siendo el mismo.
+    @Test
+    public void muchasCapasSiguenDandoElMismoResultado() {
+        Corredor corredor = corredor();
+        CapaIndexada<String> primera = capa();
+        List<String> inicial = corredor.buscar(primera);
+        for (int i = 0; i < 10; i++)
+            assertEquals(2, corredor.buscar(capa()).size());
+        List<String> otraVez = corredor.buscar(primera);
+        assertNotSame(inicial, otraVez);
+        assertEquals(inicial, otraVez);
+    }
+}
@@ -0,0 +1,89 @@
+package com.infocam.mapa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.infocam.model.Camara;
+import com.infocam.model.Incidencia;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class DatosMapaTest {
+
+    private static List<Camara> camaras(int cuantas) {
+        List<Camara> lista = new ArrayList<>();
+        for (int i = 0; i < cuantas; i++)
+            lista.add(new Camara(i, "Cámara " + i, 40.4, -3.7, null, true));
+        return lista;
+    }
+
+    private static List<Incidencia> incidencias() {
+        return Collections.singletonList(new Incidencia(1, "Obras", "Obras", "Obras", null, null, 40.4, -3.7, null));
+    }
+
+    @Test
+    public void sinDescargarEstaCaducado() {
+        assertTrue(new DatosMapa().estaCaducado());
+    }
+
+    @Test
+    public void caducaSegunLaVigenciaIndicada() throws InterruptedException {
+        DatosMapa porDefecto = new DatosMapa(), corta = new DatosMapa(20);
+        for (DatosMapa datos : new DatosMapa[] { porDefecto, corta }) {
+            datos.setCamaras(camaras(2));
+            datos.setIncidencias(incidencias());
+            assertFalse(datos.estaCaducado());
+        }
+        Thread.sleep(40);
+        assertFalse(porDefecto.estaCaducado()); // VIGENCIA_MS son minutos
+        assertTrue(corta.estaCaducado());
+    }
+
+    // Basta con que caduque una de las dos capas para tener que volver a pedir.
+    @Test
+    public void lasCapasCaducanPorSeparado() {
+        DatosMapa datos = new DatosMapa();
+        datos.setCamaras(camaras(2));
+        assertTrue(datos.estaCaducado());
+        datos.setIncidencias(incidencias());
+        assertFalse(datos.estaCaducado());
+        datos.invalidar();
+        assertTrue(datos.estaCaducado());
+    }
+
+    // Las cámaras parciales se pintan, pero no cuentan como descarga.
+    @Test
+    public void lasCamarasParcialesNoRenuevanLaVigencia() {
+        DatosMapa datos = new DatosMapa();
+        datos.setIncidencias(incidencias());
+        datos.setCamarasParciales(camaras(3));
+        assertEquals(3, datos.getCamaras().getElementos().size());
+        assertTrue(datos.estaCaducado());
+    }
+
+    @Test
+    public void laCopiaGuardadaNoPisaUnaDescargaMasReciente() {
+        DatosMapa datos = new DatosMapa();
+        long haceUnMinuto = System.currentTimeMillis() - 60 * 1000;
+        datos.cargarDesdeCache(camaras(5), haceUnMinuto, incidencias(), haceUnMinuto);
+        assertEquals(5, datos.getCamaras().getElementos().size());
+        assertFalse(datos.estaCaducado());
+
+        datos.setCamaras(camaras(2));
+        datos.cargarDesdeCache(camaras(5), haceUnMinuto, new ArrayList<>(), haceUnMinuto);
+        assertEquals(2, datos.getCamaras().getElementos().size());
+        assertEquals(1, datos.getIncidencias().getElementos().size()); // Mismo momento: tampoco se sustituye
+
+        // Una copia más antigua que la vigencia se carga, pero hay que revalidarla
+        DatosMapa otra = new DatosMapa();
+        long antigua = System.currentTimeMillis() - DatosMapa.VIGENCIA_MS - 1000;
+        otra.cargarDesdeCache(camaras(5), antigua, incidencias(), antigua);
+        assertEquals(5, otra.getCamaras().getElementos().size());
+        assertTrue(otra.estaCaducado());
+    }
+}
@@ -0,0 +1,99 @@
+package com.infocam.mapa;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/* Medición de IndiceEspacial con 50.000 puntos: latencia de buscar() frente a recorrer todos los puntos comprobando si caen en el
+ * rectángulo, con 1.000 rectángulos del tamaño de la pantalla (1080 x 1920 píxeles) en tres zooms, centrados en puntos al azar. También
+ * saca lo que tarda construir el índice. La mitad de los puntos están repartidos por toda la Península y la otra mitad alrededor de
+ * cuatro ciudades. No es una prueba (no lleva @Test), así que no alarga ./gradlew test: se lanza a mano ejecutando main() desde el IDE. */
+public class IndiceEspacialMedicion {
+    private static final int PUNTOS = 50000;
+    private static final int CONSULTAS = 1000;
+    private static final int[] ZOOMS = { 8, 11, 14 };
+    private static final int ANCHO_PX = 1080, ALTO_PX = 1920;
+    private static final double[][] CIUDADES = { { 40.42, -3.70 }, { 41.39, 2.17 }, { 39.47, -0.38 }, { 37.39, -5.98 } };
+    private static final int CALENTAMIENTO = 20;
+    private static final int REPETICIONES = 20;
+
+    public static void main(String[] args) {
+        Random azar = new Random(10);
+        double[] lat = new double[PUNTOS], lng = new double[PUNTOS];
+        for (int i = 0; i < PUNTOS; i++) {
+            if (i % 2 == 0) {
+                lat[i] = 36 + azar.nextDouble() * 7.5;
+                lng[i] = -9 + azar.nextDouble() * 12;
+            } else {
+                double[] ciudad = CIUDADES[azar.nextInt(CIUDADES.length)];
+                lat[i] = ciudad[0] + azar.nextGaussian() * 0.1;
+                lng[i] = ciudad[1] + azar.nextGaussian() * 0.1;
+            }
+        }
+
+        for (int i = 0; i < CALENTAMIENTO; i++)
+            new IndiceEspacial(lat, lng, PUNTOS);
+        long antes = System.nanoTime();
+        IndiceEspacial indice = null;
+        for (int i = 0; i < REPETICIONES; i++)
+            indice = new IndiceEspacial(lat, lng, PUNTOS);
+        System.out.println(String.format(Locale.ROOT, "construir el índice: %.2f ms", (System.nanoTime() - antes) / 1e6 / REPETICIONES));
+
+        for (int zoom : ZOOMS) {
+            // Rectángulos {sur, oeste, norte, este} del tamaño de la pantalla; a la latitud de España un grado de latitud mide unos
+            // 1,3 grados de longitud en el mapa
+            double anchoGrados = ANCHO_PX * 360.0 / (256 << zoom), altoGrados = ALTO_PX * 360.0 / (256 << zoom) / 1.3;
+            double[][] rectangulos = new double[CONSULTAS][];
+            for (int q = 0; q < CONSULTAS; q++) {
+                int centro = azar.nextInt(PUNTOS);
+                rectangulos[q] = new double[] { lat[centro] - altoGrados / 2, lng[centro] - anchoGrados / 2,
+                        lat[centro] + altoGrados / 2, lng[centro] + anchoGrados / 2 };
+            }
+
+            long encontradosIndice = 0, encontradosLista = 0;
+            for (int i = 0; i < CALENTAMIENTO; i++) {
+                encontradosIndice += consultarIndice(indice, rectangulos);
+                encontradosLista += recorrerTodos(lat, lng, rectangulos);
+            }
+            if (encontradosIndice != encontradosLista)
+                throw new IllegalStateException("el índice y el recorrido no encuentran lo mismo");
+
+            antes = System.nanoTime();
+            for (int i = 0; i < REPETICIONES; i++)
+                encontradosIndice = consultarIndice(indice, rectangulos);
+            double usIndice = (System.nanoTime() - antes) / 1e3 / REPETICIONES / CONSULTAS;
+            antes = System.nanoTime();
+            for (int i = 0; i < REPETICIONES; i++)
+                recorrerTodos(lat, lng, rectangulos);
+            double usLista = (System.nanoTime() - antes) / 1e3 / REPETICIONES / CONSULTAS;
+            System.out.println(String.format(Locale.ROOT,
+                    "zoom %2d: %6.0f puntos por consulta, índice %8.2f us/consulta, recorrido %8.2f us/consulta (%.0f veces más rápido)",
+                    zoom, (double) encontradosIndice / CONSULTAS, usIndice, usLista, usLista / usIndice));
+        }
+    }
+
+    private static long consultarIndice(IndiceEspacial indice, double[][] rectangulos) {
+        long encontrados = 0;
+        for (double[] r : rectangulos)
+            encontrados += indice.buscar(r[0], r[1], r[2], r[3]).length;
+        return encontrados;
+    }
+
+    // Lo que se hacía sin índice: mirar todos los puntos, con un array que crece como el de buscar().
+    private static long recorrerTodos(double[] lat, double[] lng, double[][] rectangulos) {
+        long encontrados = 0;
+        for (double[] r : rectangulos) {
+            int[] dentro = new int[16];
+            int cuantos = 0;
+            for (int i = 0; i < lat.length; i++) {
+                if (lat[i] >= r[0] && lat[i] <= r[2] && lng[i] >= r[1] && lng[i] <= r[3]) {
+                    if (cuantos == dentro.length)
+                        dentro = Arrays.copyOf(dentro, cuantos * 2);
+                    dentro[cuantos++] = i;
+                }
+            }
+            encontrados += Arrays.copyOf(dentro, cuantos).length;
+        }
+        return encontrados;
+    }
+}
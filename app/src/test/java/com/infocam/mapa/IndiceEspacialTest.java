@@ -0,0 +1,231 @@
+package com.infocam.mapa;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class IndiceEspacialTest {
+
+    @Test
+    public void indiceVacioNoDevuelveNada() {
+        IndiceEspacial indice = new IndiceEspacial(new double[0], new double[0], 0);
+        assertEquals(0, indice.tamano());
+        assertEquals(0, indice.buscar(-90, -180, 90, 180).length);
+    }
+
+    @Test
+    public void unSoloPunto() {
+        IndiceEspacial indice = new IndiceEspacial(new double[] { 43.26 }, new double[] { -2.93 }, 1);
+        assertArrayEquals(new int[] { 0 }, indice.buscar(43, -3, 44, -2));
+        assertEquals(0, indice.buscar(44, -3, 45, -2).length);
+    }
+
+    @Test
+    public void losBordesDelRectanguloCuentan() {
+        double[] lat = { 1, 2, 3 };
+        double[] lng = { 1, 2, 3 };
+        IndiceEspacial indice = new IndiceEspacial(lat, lng, 3);
+        assertArrayEquals(new int[] { 0, 1, 2 }, ordenados(indice.buscar(1, 1, 3, 3)));
+        assertArrayEquals(new int[] { 1 }, ordenados(indice.buscar(2, 2, 2, 2)));
+    }
+
+    @Test
+    public void puntosRepetidosSeDevuelvenTodos() {
+        double[] lat = new double[40];
+        double[] lng = new double[40];
+        Arrays.fill(lat, 40.4);
+        Arrays.fill(lng, -3.7);
+        IndiceEspacial indice = new IndiceEspacial(lat, lng, 40);
+        assertEquals(40, indice.buscar(40, -4, 41, -3).length);
+    }
+
+    @Test
+    public void soloSeIndexanLosPrimerosTotalPuntos() {
+        double[] lat = { 10, 20, 30 };
+        double[] lng = { 10, 20, 30 };
+        IndiceEspacial indice = new IndiceEspacial(lat, lng, 2);
+        assertEquals(2, indice.tamano());
+        assertArrayEquals(new int[] { 0, 1 }, ordenados(indice.buscar(0, 0, 40, 40)));
+    }
+
+    // Con varios niveles de nodos, cada búsqueda debe devolver exactamente lo mismo que recorrer todos los puntos.
+    @Test
+    public void buscarCoincideConRecorrerTodo() {
+        Random azar = new Random(3);
+        int total = 20000;
+        double[] lat = new double[total], lng = new double[total];
+        for (int i = 0; i < total; i++) {
+            lat[i] = 36 + azar.nextDouble() * 8;
+            lng[i] = -9 + azar.nextDouble() * 12;
+        }
+        IndiceEspacial indice = new IndiceEspacial(lat, lng, total);
+
+        for (int consulta = 0; consulta < 300; consulta++) {
+            double sur = 35 + azar.nextDouble() * 9, oeste = -10 + azar.nextDouble() * 13;
+            double norte = sur + azar.nextDouble() * 2, este = oeste + azar.nextDouble() * 2;
+            int[] esperados = new int[total];
+            int n = 0;
+            for (int i = 0; i < total; i++)
+                if (lat[i] >= sur && lat[i] <= norte && lng[i] >= oeste && lng[i] <= este)
+                    esperados[n++] = i;
+            assertArrayEquals(Arrays.copyOf(esperados, n), ordenados(indice.buscar(sur, oeste, norte, este)));
+        }
+    }
+
+    @Test
+    public void cercanosDevuelveDelMasCercanoAlMasLejano() {
+        double[] lat = { 40.0, 40.3, 40.1, 40.2 };
+        double[] lng = { -3.0, -3.0, -3.0, -3.0 };
+        IndiceEspacial indice = new IndiceEspacial(lat, lng, 4);
+        assertArrayEquals(new int[] { 0, 2, 3 }, indice.cercanos(39.9, -3.0, 3));
+        assertArrayEquals(new int[] { 1 }, indice.cercanos(41, -3.0, 1));
+    }
+
+    @Test
+    public void cercanosConKMayorQueElTotalDevuelveTodos() {
+        IndiceEspacial indice = new IndiceEspacial(new double[] { 1, 2, 3 }, new double[] { 1, 2, 3 }, 3);
+        assertArrayEquals(new int[] { 0, 1, 2 }, indice.cercanos(0, 0, 10));
+        assertEquals(0, indice.cercanos(0, 0, 0).length);
+        assertEquals(0, new IndiceEspacial(new double[0], new double[0], 0).cercanos(0, 0, 5).length);
+    }
+
+    // Cuatro puntos a la misma distancia: da igual cuáles salgan, pero tienen que ser distintos y no colarse uno más lejano.
+    @Test
+    public void cercanosConEmpates() {
+        double[] lat = { 1, -1, 0, 0, 0, 5 };
+        double[] lng = { 0, 0, 1, -1, 0, 5 };
+        IndiceEspacial indice = new IndiceEspacial(lat, lng, 6);
+        int[] tres = indice.cercanos(0, 0, 3);
+        assertEquals(4, tres[0]);
+        assertTrue(tres[1] >= 0 && tres[1] <= 3 && tres[2] >= 0 && tres[2] <= 3 && tres[1] != tres[2]);
+        assertArrayEquals(new int[] { 0, 1, 2, 3, 4 }, ordenados(indice.cercanos(0, 0, 5)));
+
+        // Muchos puntos repetidos en el mismo sitio, repartidos por varios nodos
+        double[] latIguales = new double[100], lngIguales = new double[100];
+        Arrays.fill(latIguales, 40.4);
+        Arrays.fill(lngIguales, -3.7);
+        int[] iguales = new IndiceEspacial(latIguales, lngIguales, 100).cercanos(40, -3, 30);
+        assertEquals(30, iguales.length);
+        assertEquals(30, Arrays.stream(iguales).distinct().count());
+    }
+
+    // Las distancias de los k devueltos deben ser exactamente las k menores (con la misma métrica que usa el índice).
+    @Test
+    public void cercanosCoincideConRecorrerTodo() {
+        Random azar = new Random(7);
+        int total = 20000;
+        double[] lat = new double[total], lng = new double[total];
+        for (int i = 0; i < total; i++) {
+            // Coordenadas redondeadas para que haya empates de verdad
+            lat[i] = 40 + azar.nextInt(2000) / 1000.0;
+            lng[i] = -4 + azar.nextInt(2000) / 1000.0;
+        }
+        IndiceEspacial indice = new IndiceEspacial(lat, lng, total);
+
+        for (int consulta = 0; consulta < 200; consulta++) {
+            double latC = 39.5 + azar.nextDouble() * 3, lngC = -4.5 + azar.nextDouble() * 3;
+            int k = 1 + azar.nextInt(40);
+            double cosLat = Math.cos(Math.toRadians(latC));
+            double[] todas = new double[total];
+            for (int i = 0; i < total; i++)
+                todas[i] = distancia2(lat[i], lng[i], latC, lngC, cosLat);
+            Arrays.sort(todas);
+
+            int[] cercanos = indice.cercanos(latC, lngC, k);
+            assertEquals(k, cercanos.length);
+            assertEquals(k, Arrays.stream(cercanos).distinct().count());
+            for (int i = 0; i < k; i++)
+                assertEquals(todas[i], distancia2(lat[cercanos[i]], lng[cercanos[i]], latC, lngC, cosLat), 0);
+        }
+    }
+
+    @Test
+    public void cercaDeLineaSinVerticesOSinPuntos() {
+        IndiceEspacial indice = new IndiceEspacial(new double[] { 40 }, new double[] { -3 }, 1);
+        assertEquals(0, indice.buscarCercaDeLinea(new double[0], new double[0], 0, 100).length);
+        assertEquals(0, new IndiceEspacial(new double[0], new double[0], 0)
+                .buscarCercaDeLinea(new double[] { 40, 41 }, new double[] { -3, -3 }, 2, 100).length);
+    }
+
+    // Con un solo vértice el "corredor" es un círculo alrededor de él.
+    @Test
+    public void cercaDeUnSoloVertice() {
+        double[] lat = { 40.4, 40.4009, 40.4011, 40.4, 40.4 };
+        double[] lng = { -3.7, -3.7, -3.7, -3.7005, -3.71 };
+        IndiceEspacial indice = new IndiceEspacial(lat, lng, lat.length);
+        // 0,0009 grados de latitud son unos 100 m; 0,0005 de longitud a esta latitud, unos 42 m
+        assertArrayEquals(new int[] { 0, 1, 3 },
+                ordenados(indice.buscarCercaDeLinea(new double[] { 40.4 }, new double[] { -3.7 }, 1, 110)));
+    }
+
+    /* Rutas de varios tramos de hasta 30 km con un radio de 150 m, así que cada tramo se parte en decenas de trozos. Se compara con la
+     * distancia de cada punto a cada tramo entero; los puntos a menos de un metro del borde no se cuentan, porque cada trozo corrige la
+     * longitud con el coseno de su propia latitud y ahí el resultado puede variar por centímetros. */
+    @Test
+    public void cercaDeLineaCoincideConRecorrerTodo() {
+        Random azar = new Random(11);
+        int total = 30000;
+        double[] lat = new double[total], lng = new double[total];
+        for (int i = 0; i < total; i++) {
+            lat[i] = 40.2 + azar.nextDouble() * 0.4;
+            lng[i] = -4 + azar.nextDouble() * 0.6;
+        }
+        IndiceEspacial indice = new IndiceEspacial(lat, lng, total);
+        double metros = 150;
+
+        for (int ruta = 0; ruta < 30; ruta++) {
+            int vertices = 2 + azar.nextInt(5);
+            double[] latLinea = new double[vertices], lngLinea = new double[vertices];
+            for (int v = 0; v < vertices; v++) {
+                latLinea[v] = 40.2 + azar.nextDouble() * 0.4;
+                lngLinea[v] = -4 + azar.nextDouble() * 0.6;
+            }
+            boolean[] encontrado = new boolean[total];
+            int[] resultado = indice.buscarCercaDeLinea(latLinea, lngLinea, vertices, metros);
+            assertEquals(resultado.length, Arrays.stream(resultado).distinct().count());
+            for (int p : resultado)
+                encontrado[p] = true;
+
+            int dentro = 0;
+            for (int p = 0; p < total; p++) {
+                double d = Double.MAX_VALUE;
+                for (int v = 0; v + 1 < vertices; v++)
+                    d = Math.min(d, distanciaASegmento(lat[p], lng[p], latLinea[v], lngLinea[v], latLinea[v + 1],
+                            lngLinea[v + 1]));
+                if (d < metros - 1) {
+                    assertTrue("ruta " + ruta + ", punto " + p + " a " + d + " m", encontrado[p]);
+                    dentro++;
+                } else if (d > metros + 1) {
+                    assertTrue("ruta " + ruta + ", punto " + p + " a " + d + " m", !encontrado[p]);
+                }
+            }
+            assertTrue(dentro > 0);
+        }
+    }
+
+    // Misma cuenta que IndiceEspacial (plano equirectangular centrado en el primer extremo), pero con el tramo entero.
+    private static double distanciaASegmento(double lat, double lng, double lat1, double lng1, double lat2, double lng2) {
+        double cosLat = Math.cos(Math.toRadians(lat1));
+        double px = (lng - lng1) * cosLat, py = lat - lat1;
+        double sx = (lng2 - lng1) * cosLat, sy = lat2 - lat1;
+        double t = Math.max(0, Math.min(1, (px * sx + py * sy) / (sx * sx + sy * sy)));
+        double dx = px - t * sx, dy = py - t * sy;
+        return Math.toRadians(Math.sqrt(dx * dx + dy * dy)) * 6371008.8;
+    }
+
+    private static double distancia2(double lat, double lng, double latC, double lngC, double cosLat) {
+        double dLng = (lng - lngC) * cosLat, dLat = lat - latC;
+        return dLng * dLng + dLat * dLat;
+    }
+
+    private static int[] ordenados(int[] posiciones) {
+        int[] copia = posiciones.clone();
+        Arrays.sort(copia);
+        return copia;
+    }
+}
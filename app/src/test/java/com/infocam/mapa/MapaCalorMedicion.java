@@ -0,0 +1,50 @@
+package com.infocam.mapa;
+
+import java.util.Locale;
+import java.util.Random;
+
+/* Medición de MapaCalor con 100.000, 200.000 y 400.000 incidencias repartidas por la Península: tiempo de crearlo (pasar las coordenadas
+ * a Web Mercator) y de generar la imagen de tres zooms (el de toda la región, uno intermedio y uno de ciudad, que ya llega al máximo de
+ * celdas). Crearlo debería crecer en proporción al número de incidencias; generar tiene una parte fija (desenfocar y colorear la
+ * rejilla, que no depende de cuántas haya) y otra lineal (contarlas). No es una prueba (no lleva @Test), así que no alarga
+ * ./gradlew test: se lanza a mano ejecutando main() desde el IDE. */
+public class MapaCalorMedicion {
+    private static final int[] INCIDENCIAS = { 100000, 200000, 400000 };
+    private static final int[] ZOOMS = { 6, 10, 14 };
+    private static final int CALENTAMIENTO = 20;
+    private static final int REPETICIONES = 20;
+
+    public static void main(String[] args) {
+        for (int cuantas : INCIDENCIAS) {
+            Random azar = new Random(18);
+            double[] lat = new double[cuantas], lng = new double[cuantas];
+            for (int i = 0; i < cuantas; i++) {
+                lat[i] = 36 + azar.nextDouble() * 7.5;
+                lng[i] = -9 + azar.nextDouble() * 12;
+            }
+
+            for (int i = 0; i < CALENTAMIENTO; i++)
+                medir(lat, lng, cuantas);
+            long creacion = 0, generacion = 0;
+            for (int i = 0; i < REPETICIONES; i++) {
+                long[] tiempos = medir(lat, lng, cuantas);
+                creacion += tiempos[0];
+                generacion += tiempos[1];
+            }
+            double msCreacion = creacion / 1e6 / REPETICIONES, msGeneracion = generacion / 1e6 / REPETICIONES;
+            System.out.println(String.format(Locale.ROOT,
+                    "%6d incidencias: crear %.1f ms (%.1f ms por cada 100.000) + generar %d zooms %.1f ms = %.1f ms", cuantas,
+                    msCreacion, msCreacion * 100000 / cuantas, ZOOMS.length, msGeneracion, msCreacion + msGeneracion));
+        }
+    }
+
+    // {ns en crear el MapaCalor, ns en generar todos los zooms}. Cada vez uno nuevo, porque guarda lo que ya ha generado.
+    private static long[] medir(double[] lat, double[] lng, int cuantas) {
+        long antes = System.nanoTime();
+        MapaCalor calor = new MapaCalor(lat, lng, cuantas);
+        long creado = System.nanoTime();
+        for (int zoom : ZOOMS)
+            calor.generar(zoom);
+        return new long[] { creado - antes, System.nanoTime() - creado };
+    }
+}
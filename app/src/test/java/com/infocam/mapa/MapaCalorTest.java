@@ -0,0 +1,128 @@
+package com.infocam.mapa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class MapaCalorTest {
+
+    @Test
+    public void sinPuntosNoHayImagen() {
+        assertNull(new MapaCalor(new double[0], new double[0], 0).generar(12));
+    }
+
+    // Incidencias repartidas por toda la Península: a partir de cierto zoom la rejilla llega al máximo de celdas y ya no cambia.
+    @Test
+    public void losZoomsConLaRejillaAlMaximoCompartenResultado() {
+        MapaCalor calor = new MapaCalor(new double[] { 36.5, 43.5, 40.4 }, new double[] { -9, 3, -3.7 }, 3);
+        MapaCalor.Resultado z12 = calor.generar(12);
+        assertTrue(z12.getAncho() <= 512 && z12.getAlto() <= 512);
+        assertSame(z12, calor.generar(16));
+        assertSame(z12, calor.generar(22));
+        assertSame(z12, calor.generar(40)); // Se recorta a ZOOM_MAXIMO
+
+        assertNotSame(calor.generar(3), calor.generar(4));
+        assertTrue(calor.generar(3).getAncho() < z12.getAncho());
+    }
+
+    @Test
+    public void cadaZoomSeCalculaUnaSolaVez() {
+        MapaCalor calor = new MapaCalor(new double[] { 40.40, 40.41 }, new double[] { -3.70, -3.69 }, 2);
+        assertSame(calor.generar(10), calor.generar(10));
+        assertNotSame(calor.generar(10), calor.generar(11));
+    }
+
+    // Dos desenfoques de caja de radio 2 seguidos reparten cada punto en un triángulo de 9 celdas por lado: 1, 2, 3, 4, 5, 4, 3, 2, 1 / 25.
+    private static final float[] TRIANGULO = { 1 / 25f, 2 / 25f, 3 / 25f, 4 / 25f, 5 / 25f, 4 / 25f, 3 / 25f, 2 / 25f, 1 / 25f };
+    private static final double CELDA = 0.01;
+
+    // Centro de la celda (x, y) de una rejilla con la esquina en 0.
+    private static double centro(int celda) {
+        return (celda + 0.5) * CELDA;
+    }
+
+    @Test
+    public void unPuntoSeRepartePorSusVecinas() {
+        float[] rejilla = MapaCalor.densidades(new double[] { centro(4) }, new double[] { centro(4) }, 1, 0, 0, CELDA, 9, 9);
+        float suma = 0;
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                assertEquals("celda " + x + "," + y, TRIANGULO[x] * TRIANGULO[y], rejilla[y * 9 + x], 1e-6);
+                suma += rejilla[y * 9 + x];
+            }
+        }
+        assertEquals(1, suma, 1e-5); // Lejos del borde no se pierde nada
+    }
+
+    // Dos puntos en la misma celda valen el doble que uno solo, y entre dos zonas separadas más de 8 celdas no queda nada.
+    @Test
+    public void lasDensidadesSeSuman() {
+        double[] mx = { centro(4), centro(4), centro(14) }, my = { centro(4), centro(4), centro(4) };
+        float[] rejilla = MapaCalor.densidades(mx, my, 3, 0, 0, CELDA, 19, 9);
+        float pico = TRIANGULO[4] * TRIANGULO[4];
+        assertEquals(2 * pico, rejilla[4 * 19 + 4], 1e-6);
+        assertEquals(pico, rejilla[4 * 19 + 14], 1e-6);
+        assertEquals(2 * TRIANGULO[3] * TRIANGULO[4], rejilla[4 * 19 + 3], 1e-6);
+        assertEquals(TRIANGULO[8] * TRIANGULO[4], rejilla[4 * 19 + 10], 1e-6); // Solo llega el de la derecha
+        assertEquals(0, rejilla[4 * 19 + 9], 0);
+    }
+
+    /* En la esquina, lo que el desenfoque empujaría fuera de la rejilla se pierde: cada pasada suma solo las vecinas que existen y
+     * queda 3, 3, 3, 2, 1 / 25 en cada dirección. */
+    @Test
+    public void enElBordeSePierdeLoQueQuedaFuera() {
+        float[] rejilla = MapaCalor.densidades(new double[] { centro(0) }, new double[] { centro(0) }, 1, 0, 0, CELDA, 9, 9);
+        float[] borde = { 3 / 25f, 3 / 25f, 3 / 25f, 2 / 25f, 1 / 25f, 0, 0, 0, 0 };
+        float suma = 0;
+        for (int y = 0; y < 9; y++) {
+            for (int x = 0; x < 9; x++) {
+                assertEquals("celda " + x + "," + y, borde[x] * borde[y], rejilla[y * 9 + x], 1e-6);
+                suma += rejilla[y * 9 + x];
+            }
+        }
+        assertEquals(144 / 625f, suma, 1e-5);
+    }
+
+    /* Nueve incidencias en Madrid y una en Sevilla: la celda de Madrid es la más densa y sale del color más alto de la paleta; la de
+     * Sevilla tiene la novena parte de densidad, así que su color es el de un tercio de la escala (por la raíz cuadrada); entre las
+     * dos, transparente. */
+    @Test
+    public void elColorDependeDeLaDensidad() {
+        double[] lat = new double[10], lng = new double[10];
+        for (int i = 0; i < 9; i++) {
+            lat[i] = 40.4;
+            lng[i] = -3.7;
+        }
+        lat[9] = 37.4;
+        lng[9] = -6.0;
+        MapaCalor.Resultado calor = new MapaCalor(lat, lng, lat.length).generar(8);
+
+        assertEquals(0xC8FF0000, opaco(calor, 40.4, -3.7)); // Alfa 200, rojo puro
+        assertEquals(40 + 85 * 160 / 255, opaco(calor, 37.4, -6.0) >>> 24); // Nivel 85 de 255
+        assertEquals(0, opaco(calor, 38.9, -4.85));
+    }
+
+    // El color más opaco alrededor del píxel de esa coordenada (el punto puede caer justo en el borde de dos celdas).
+    private static int opaco(MapaCalor.Resultado calor, double lat, double lng) {
+        int x = (int) ((lng - calor.getOeste()) / (calor.getEste() - calor.getOeste()) * calor.getAncho());
+        int y = (int) ((mercator(lat) - mercator(calor.getNorte())) / (mercator(calor.getSur()) - mercator(calor.getNorte()))
+                * calor.getAlto());
+        int mejor = 0;
+        for (int dy = -1; dy <= 1; dy++)
+            for (int dx = -1; dx <= 1; dx++) {
+                int color = calor.getPixeles()[(y + dy) * calor.getAncho() + x + dx];
+                if ((color >>> 24) > (mejor >>> 24))
+                    mejor = color;
+            }
+        return mejor;
+    }
+
+    private static double mercator(double lat) {
+        double seno = Math.sin(Math.toRadians(lat));
+        return 0.5 - Math.log((1 + seno) / (1 - seno)) / (4 * Math.PI);
+    }
+}
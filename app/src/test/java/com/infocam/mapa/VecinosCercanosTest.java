@@ -0,0 +1,118 @@
+package com.infocam.mapa;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class VecinosCercanosTest {
+    private static final int K = 5;
+
+    @Test
+    public void laPrimeraVezDevuelveLosKMasCercanosEnOrden() {
+        CapaIndexada<Integer> capa = capa(new double[] { 40.00, 40.01, 40.02, 40.03, 40.04, 40.05, 40.06 },
+                new double[] { -3.7, -3.7, -3.7, -3.7, -3.7, -3.7, -3.7 });
+        List<VecinosCercanos.Vecino<Integer>> vecinos = new VecinosCercanos<Integer>(K).actualizar(capa, 40.061, -3.7);
+        assertNotNull(vecinos);
+        assertEquals(K, vecinos.size());
+        for (int i = 0; i < K; i++)
+            assertEquals(Integer.valueOf(6 - i), vecinos.get(i).getElemento());
+        assertEquals(111, vecinos.get(0).getMetros(), 1);
+    }
+
+    @Test
+    public void conMenosDeKElementosDevuelveTodos() {
+        CapaIndexada<Integer> capa = capa(new double[] { 40.0, 40.1 }, new double[] { -3.7, -3.7 });
+        assertEquals(2, new VecinosCercanos<Integer>(K).actualizar(capa, 40.0, -3.7).size());
+        assertEquals(0, new VecinosCercanos<Integer>(K).actualizar(capa(new double[0], new double[0]), 40, -3).size());
+    }
+
+    @Test
+    public void sinMoverseNoHayNadaQueRepintar() {
+        CapaIndexada<Integer> capa = capaAleatoria(new Random(1), 2000);
+        VecinosCercanos<Integer> vecinos = new VecinosCercanos<>(K);
+        assertNotNull(vecinos.actualizar(capa, 40.4, -3.7));
+        assertNull(vecinos.actualizar(capa, 40.4, -3.7));
+        assertNull(vecinos.actualizar(capa, 40.40003, -3.7)); // Unos 3 m: ruido del GPS
+    }
+
+    @Test
+    public void otraCapaOReiniciarVuelvenADevolverResultado() {
+        Random azar = new Random(2);
+        CapaIndexada<Integer> capa = capaAleatoria(azar, 2000);
+        VecinosCercanos<Integer> vecinos = new VecinosCercanos<>(K);
+        vecinos.actualizar(capa, 40.4, -3.7);
+
+        vecinos.reiniciar();
+        assertNotNull(vecinos.actualizar(capa, 40.4, -3.7));
+        assertNotNull(vecinos.actualizar(capaAleatoria(azar, 2000), 40.4, -3.7));
+    }
+
+    /* Un paseo al azar: tras cada paso, lo que se está mostrando (el último resultado distinto de null) debe ser lo mismo que buscar los
+     * K más cercanos recorriendo todos los puntos, reutilice los candidatos o vuelva a consultar el índice. Se comparan las distancias
+     * (con el metro de redondeo que usa VecinosCercanos) para no depender del orden de los empates. */
+    @Test
+    public void alMoverseCoincideConRecorrerTodo() {
+        Random azar = new Random(3);
+        CapaIndexada<Integer> capa = capaAleatoria(azar, 3000);
+        VecinosCercanos<Integer> vecinos = new VecinosCercanos<>(K);
+        double lat = 40.4, lng = -3.7;
+        List<VecinosCercanos.Vecino<Integer>> mostrado = null;
+
+        for (int paso = 0; paso < 500; paso++) {
+            // Pasos de entre 15 y 400 m, siempre por encima del ruido que se ignora
+            double metros = 15 + azar.nextDouble() * 385, rumbo = azar.nextDouble() * 2 * Math.PI;
+            lat += Math.cos(rumbo) * metros / 111_195;
+            lng += Math.sin(rumbo) * metros / (111_195 * Math.cos(Math.toRadians(lat)));
+
+            List<VecinosCercanos.Vecino<Integer>> resultado = vecinos.actualizar(capa, lat, lng);
+            if (resultado != null)
+                mostrado = resultado;
+            assertNotNull(mostrado);
+
+            double[] esperadas = distanciasMasCortas(capa, lat, lng);
+            double[] mostradas = new double[mostrado.size()];
+            for (int i = 0; i < mostradas.length; i++) {
+                int p = mostrado.get(i).getElemento();
+                mostradas[i] = IndiceEspacial.distanciaMetros(lat, lng, capa.getLatitud(p), capa.getLongitud(p));
+            }
+            Arrays.sort(mostradas);
+            assertEquals(K, mostradas.length);
+            for (int i = 0; i < K; i++)
+                assertEquals("paso " + paso, esperadas[i], mostradas[i], 1);
+        }
+    }
+
+    private static double[] distanciasMasCortas(CapaIndexada<Integer> capa, double lat, double lng) {
+        int total = capa.getElementos().size();
+        double[] todas = new double[total];
+        for (int p = 0; p < total; p++)
+            todas[p] = IndiceEspacial.distanciaMetros(lat, lng, capa.getLatitud(p), capa.getLongitud(p));
+        Arrays.sort(todas);
+        return Arrays.copyOf(todas, K);
+    }
+
+    // Unos 20 x 20 km alrededor de Madrid.
+    private static CapaIndexada<Integer> capaAleatoria(Random azar, int total) {
+        double[] lat = new double[total], lng = new double[total];
+        for (int i = 0; i < total; i++) {
+            lat[i] = 40.3 + azar.nextDouble() * 0.2;
+            lng[i] = -3.82 + azar.nextDouble() * 0.24;
+        }
+        return capa(lat, lng);
+    }
+
+    // Cada elemento es su propia posición, para poder volver a sus coordenadas.
+    private static CapaIndexada<Integer> capa(double[] lat, double[] lng) {
+        List<Integer> elementos = new ArrayList<>(lat.length);
+        for (int i = 0; i < lat.length; i++)
+            elementos.add(i);
+        return new CapaIndexada<>(elementos, lat, lng);
+    }
+}
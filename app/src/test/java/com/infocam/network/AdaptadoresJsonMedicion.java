@@ -0,0 +1,65 @@
+package com.infocam.network;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.infocam.model.Incidencia;
+
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Type;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/* Medición de AdaptadoresJson frente al Gson por reflexión: lee una lista de 50.000 incidencias como las de la API y saca el tiempo y la
+ * memoria asignada por lista. No es una prueba (no lleva @Test), así que no alarga ./gradlew test: se lanza a mano ejecutando main()
+ * desde el IDE. La memoria se mide con el ThreadMXBean de HotSpot, por eso va en las pruebas de la JVM y no en las del dispositivo. */
+public class AdaptadoresJsonMedicion {
+    private static final int INCIDENCIAS = 50000;
+    private static final int CALENTAMIENTO = 15;
+    private static final int REPETICIONES = 20;
+    private static final int RONDAS = 5;
+
+    public static void main(String[] args) {
+        String json = generarLista(INCIDENCIAS, new Random(1));
+        Type tipo = new TypeToken<List<Incidencia>>() {}.getType();
+        Gson reflexion = new Gson(), adaptadores = AdaptadoresJson.obtenerGson();
+        com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long hilo = Thread.currentThread().getId();
+
+        // Se alternan varias rondas para que el JIT y el GC no favorezcan al que va primero
+        for (int ronda = 0; ronda < RONDAS; ronda++) {
+            for (Gson gson : new Gson[] { reflexion, adaptadores }) {
+                for (int i = 0; i < CALENTAMIENTO; i++)
+                    gson.fromJson(json, tipo);
+                long bytesAntes = hilos.getThreadAllocatedBytes(hilo), antes = System.nanoTime();
+                for (int i = 0; i < REPETICIONES; i++)
+                    gson.fromJson(json, tipo);
+                long ns = (System.nanoTime() - antes) / REPETICIONES;
+                long bytes = (hilos.getThreadAllocatedBytes(hilo) - bytesAntes) / REPETICIONES;
+                System.out.println(String.format(Locale.ROOT,
+                        "%-11s %.1f ms/lista, %.0f mil incidencias/s, %.1f MB asignados/lista (%d B/incidencia)",
+                        gson == reflexion ? "reflexión" : "adaptadores", ns / 1e6, INCIDENCIAS / (ns / 1e9) / 1000,
+                        bytes / 1e6, bytes / INCIDENCIAS));
+            }
+        }
+    }
+
+    // Misma forma que devuelve la API: usuario anidado, fechas con guion bajo e id externa.
+    static String generarLista(int cuantas, Random azar) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < cuantas; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append("{\"id\":").append(i)
+                    .append(",\"usuario\":{\"id\":").append(azar.nextInt(100)).append('}')
+                    .append(",\"externalId\":\"E").append(i).append('"')
+                    .append(",\"nombre\":\"Incidencia ").append(i).append('"')
+                    .append(",\"tipoIncidencia\":\"Obras\",\"causa\":\"Mantenimiento\"")
+                    .append(",\"fecha_inicio\":\"2024-05-01T08:00:00\",\"fecha_fin\":\"2024-05-02T08:00:00\"")
+                    .append(",\"latitud\":").append(43 + azar.nextDouble())
+                    .append(",\"longitud\":").append(-2 - azar.nextDouble())
+                    .append('}');
+        }
+        return sb.append(']').toString();
+    }
+}
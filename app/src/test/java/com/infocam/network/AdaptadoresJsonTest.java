@@ -0,0 +1,161 @@
+package com.infocam.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.infocam.model.Camara;
+import com.infocam.model.Favorito;
+import com.infocam.model.Incidencia;
+import com.infocam.model.LoginRequest;
+import com.infocam.model.Usuario;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+/* Lee cada JSON con el Gson por reflexión (el que había antes) y con el de AdaptadoresJson, y comprueba que al volver a escribirlos salen
+ * iguales. Se comparan los árboles JSON, así que el orden de los campos no cuenta. */
+public class AdaptadoresJsonTest {
+    private final Gson reflexion = new Gson();
+    private final Gson adaptadores = AdaptadoresJson.obtenerGson();
+
+    private void igual(Class<?> clase, String json) {
+        JsonElement esperado = reflexion.toJsonTree(reflexion.fromJson(json, clase));
+        JsonElement obtenido = adaptadores.toJsonTree(adaptadores.fromJson(json, clase));
+        assertEquals(json, esperado, obtenido);
+    }
+
+    @Test
+    public void camara() {
+        igual(Camara.class, "{\"id\":3,\"nombre\":\"A\",\"latitud\":43.1,\"longitud\":-2.5,\"imagen\":\"https://example.org/3.jpg\","
+                + "\"activa\":true}");
+        // Números como texto, nulos y campos que no existen en el modelo
+        igual(Camara.class, "{\"id\":\"4\",\"nombre\":null,\"latitud\":\"43.1\",\"longitud\":-2,\"imagen\":null,\"activa\":\"true\","
+                + "\"extra\":[1,{\"a\":null}],\"otro\":{}}");
+        igual(Camara.class, "{}");
+    }
+
+    @Test
+    public void incidenciaConLasDosFormasDeLasFechas() {
+        igual(Incidencia.class, "{\"id\":7,\"idUsuario\":5,\"fecha_inicio\":\"2024-01-01T10:00\",\"fecha_fin\":\"2024-01-02T10:00\","
+                + "\"latitud\":1,\"longitud\":2,\"externalId\":null}");
+        igual(Incidencia.class, "{\"id\":7,\"idUsuario\":5,\"fechaInicio\":\"2024-01-01T10:00\",\"fechaFin\":\"2024-01-02T10:00\"}");
+        igual(Incidencia.class, "{\"fecha_inicio\":\"a\",\"fechaFin\":\"b\",\"externalId\":\"E1\",\"latitud\":null}");
+
+        // Las dos leen igual y se escriben con el nombre principal
+        Incidencia conGuion = adaptadores.fromJson("{\"fecha_inicio\":\"a\",\"fecha_fin\":\"b\"}", Incidencia.class);
+        Incidencia camel = adaptadores.fromJson("{\"fechaInicio\":\"a\",\"fechaFin\":\"b\"}", Incidencia.class);
+        assertEquals("a", camel.getFechaInicio());
+        assertEquals("b", camel.getFechaFin());
+        assertEquals(adaptadores.toJson(conGuion), adaptadores.toJson(camel));
+    }
+
+    @Test
+    public void incidenciaConUsuarioAnidado() {
+        // Con los dos, se respeta idUsuario
+        igual(Incidencia.class, "{\"idUsuario\":9,\"usuario\":{\"id\":3,\"username\":\"x\"},\"nombre\":\"n\",\"causa\":\"c\","
+                + "\"tipoIncidencia\":\"t\"}");
+        igual(Incidencia.class, "{\"usuario\":null,\"nombre\":\"n\"}");
+        igual(Incidencia.class, "{\"usuario\":{},\"nombre\":\"n\"}");
+        igual(Incidencia.class, "{\"usuario\":{\"username\":\"x\"},\"nombre\":\"n\"}"); // Anidado sin id: se escribe con 0
+
+        // Solo el anidado: getIdUsuario() lo usa en los dos casos
+        String soloAnidado = "{\"id\":7,\"usuario\":{\"id\":5,\"username\":\"x\",\"incidencias\":[]},\"fecha_inicio\":\"a\"}";
+        assertEquals(5, reflexion.fromJson(soloAnidado, Incidencia.class).getIdUsuario());
+        assertEquals(5, adaptadores.fromJson(soloAnidado, Incidencia.class).getIdUsuario());
+        igual(Incidencia.class, soloAnidado);
+    }
+
+    // Lo que se manda al crear una incidencia desde la aplicación tiene que salir igual que antes.
+    @Test
+    public void incidenciaQueSeEnvia() {
+        Incidencia nueva = new Incidencia(5, "Obras en la M-30", "Obras", "Mantenimiento", "2024-05-01T08:00:00", null,
+                40.4, -3.7, null);
+        assertEquals(reflexion.toJson(nueva), adaptadores.toJson(nueva));
+
+        Incidencia vacia = new Incidencia();
+        vacia.setIdUsuario(5);
+        vacia.setNombre("n");
+        assertEquals(reflexion.toJson(vacia), adaptadores.toJson(vacia));
+    }
+
+    @Test
+    public void usuarioConSusListas() {
+        igual(Usuario.class, "{\"id\":1,\"is_admin\":false,\"username\":\"u\",\"password\":\"p\",\"nombre\":\"N\",\"apellido\":\"A\","
+                + "\"email\":\"u@example.org\",\"telefono\":600000000,\"token\":\"t\",\"incidencias\":[],\"favoritos\":[]}");
+        // Nombres alternativos y listas con incidencias que solo traen el usuario anidado
+        igual(Usuario.class, "{\"id\":1,\"admin\":true,\"firstName\":\"N\",\"lastName\":\"A\",\"telefono\":600000000,"
+                + "\"incidencias\":[{\"id\":2,\"usuario\":{\"id\":1}},{\"id\":3,\"idUsuario\":4,\"fechaInicio\":\"a\"}],"
+                + "\"favoritos\":[{\"id\":4,\"nombre\":\"M-30\",\"activa\":true},null]}");
+        igual(Usuario.class, "{\"username\":\"u\",\"incidencias\":null,\"favoritos\":null}");
+
+        Usuario usuario = adaptadores.fromJson("{\"incidencias\":[{\"id\":2,\"usuario\":{\"id\":1}}]}", Usuario.class);
+        assertEquals(1, usuario.getIncidencias().get(0).getIdUsuario());
+    }
+
+    @Test
+    public void favorito() {
+        igual(Favorito.class, "{\"idLocal\":1,\"idUsuario\":2,\"idCamara\":3,\"nombre\":\"n\",\"direccion\":\"d\",\"latitud\":40.4,"
+                + "\"longitud\":-3.7,\"imagen\":\"i\"}");
+        igual(Favorito.class, "{\"idCamara\":3,\"imagen\":null}");
+
+        Favorito favorito = new Favorito(2, 3, "n", "d", 40.4, -3.7, "i");
+        assertEquals(reflexion.toJson(favorito), adaptadores.toJson(favorito));
+    }
+
+    @Test
+    public void loginRequest() {
+        LoginRequest login = new LoginRequest("usuario", "contraseña \"con\" comillas");
+        assertEquals(reflexion.toJson(login), adaptadores.toJson(login));
+        igual(LoginRequest.class, "{\"username\":\"u\",\"password\":\"p\"}");
+    }
+
+    // Listas de incidencias generadas al azar, con campos que faltan, nulos y las dos formas de cada nombre.
+    @Test
+    public void incidenciasAlAzar() {
+        Random azar = new Random(25);
+        for (int vuelta = 0; vuelta < 200; vuelta++) {
+            JsonArray lista = new JsonArray();
+            for (int i = 0; i < 5; i++) {
+                JsonObject incidencia = new JsonObject();
+                if (azar.nextBoolean())
+                    incidencia.addProperty("id", azar.nextInt(1000));
+                if (azar.nextBoolean())
+                    incidencia.addProperty("idUsuario", azar.nextInt(3));
+                if (azar.nextBoolean()) {
+                    JsonObject usuario = new JsonObject();
+                    if (azar.nextBoolean())
+                        usuario.addProperty("id", azar.nextInt(3));
+                    usuario.addProperty("username", "u");
+                    incidencia.add("usuario", usuario);
+                }
+                if (azar.nextBoolean())
+                    incidencia.addProperty(azar.nextBoolean() ? "fecha_inicio" : "fechaInicio", "2024-05-0" + (1 + azar.nextInt(9)));
+                if (azar.nextBoolean())
+                    incidencia.addProperty(azar.nextBoolean() ? "fecha_fin" : "fechaFin", "2024-06-0" + (1 + azar.nextInt(9)));
+                if (azar.nextBoolean())
+                    incidencia.addProperty("externalId", azar.nextBoolean() ? "E" + i : null);
+                if (azar.nextBoolean())
+                    incidencia.addProperty("nombre", "Incidencia " + i);
+                incidencia.addProperty("tipoIncidencia", azar.nextBoolean() ? "Obras" : null);
+                incidencia.addProperty("causa", "Causa");
+                incidencia.addProperty("latitud", 43 + azar.nextDouble());
+                incidencia.addProperty("longitud", -2 - azar.nextDouble());
+                lista.add(incidencia);
+            }
+            igual(Incidencia[].class, lista.toString());
+        }
+    }
+
+    // Comprueba que la comparación de verdad mira los valores (y no que ambos árboles salgan vacíos, por ejemplo).
+    @Test
+    public void laComparacionDistingueValores() {
+        JsonElement uno = adaptadores.toJsonTree(adaptadores.fromJson("{\"id\":1,\"nombre\":\"A\"}", Camara.class));
+        JsonElement otro = adaptadores.toJsonTree(adaptadores.fromJson("{\"id\":1,\"nombre\":\"B\"}", Camara.class));
+        assertNotEquals(uno, otro);
+    }
+}
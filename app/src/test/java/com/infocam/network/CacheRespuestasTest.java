@@ -0,0 +1,132 @@
+package com.infocam.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import com.infocam.model.Camara;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.List;
+
+import okhttp3.Cache;
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+/* Monta el mismo cliente que RetrofitClient (caché en disco, interceptor y conversor de CacheRespuestas y después Gson) contra un
+ * MockWebServer. Los contadores de CacheRespuestas son globales, así que se comparan con su valor al empezar cada prueba. */
+public class CacheRespuestasTest {
+    private static final String CAMARAS = "[{\"id\":1,\"nombre\":\"M-30\",\"latitud\":40.4,\"longitud\":-3.7,"
+            + "\"imagen\":\"https://example.org/1.jpg\",\"activa\":true}]";
+
+    interface Api {
+        @GET("camaras")
+        Call<List<Camara>> camaras();
+    }
+
+    @Rule
+    public TemporaryFolder carpeta = new TemporaryFolder();
+
+    private MockWebServer servidor;
+    private Cache cache;
+    private Api api;
+
+    @Before
+    public void preparar() throws IOException {
+        CacheRespuestas.olvidarConvertidos();
+        servidor = new MockWebServer();
+        servidor.start();
+        cache = CacheRespuestas.crearCache(carpeta.getRoot());
+        OkHttpClient cliente = new OkHttpClient.Builder()
+                .addInterceptor(CacheRespuestas.interceptor())
+                .cache(cache)
+                .build();
+        api = new Retrofit.Builder()
+                .baseUrl(servidor.url("/api/"))
+                .addConverterFactory(CacheRespuestas.conversor())
+                .addConverterFactory(GsonConverterFactory.create(AdaptadoresJson.obtenerGson()))
+                .client(cliente)
+                .build()
+                .create(Api.class);
+    }
+
+    @After
+    public void terminar() throws IOException {
+        servidor.shutdown();
+        cache.close();
+    }
+
+    // "no-cache": OkHttp la guarda, pero tiene que preguntar al servidor cada vez (como hace la API con las cámaras).
+    private static MockResponse conEtag(String etag) {
+        return new MockResponse().setBody(CAMARAS).setHeader("Content-Type", "application/json")
+                .setHeader("ETag", etag).setHeader("Cache-Control", "no-cache");
+    }
+
+    @Test
+    public void un304DevuelveLaMismaListaSinConvertirla() throws Exception {
+        servidor.enqueue(conEtag("\"v1\""));
+        servidor.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+        int revalidaciones = CacheRespuestas.getRevalidaciones(), reutilizadas = CacheRespuestas.getReutilizadas();
+
+        List<Camara> primera = api.camaras().execute().body();
+        assertNull(servidor.takeRequest().getHeader("If-None-Match"));
+        List<Camara> segunda = api.camaras().execute().body();
+        RecordedRequest revalidacion = servidor.takeRequest();
+
+        assertEquals("\"v1\"", revalidacion.getHeader("If-None-Match"));
+        assertSame(primera, segunda);
+        assertEquals("M-30", segunda.get(0).getNombre());
+        assertEquals(revalidaciones + 1, CacheRespuestas.getRevalidaciones());
+        assertEquals(reutilizadas + 1, CacheRespuestas.getReutilizadas());
+    }
+
+    @Test
+    public void unEtagNuevoSeVuelveAConvertir() throws Exception {
+        servidor.enqueue(conEtag("\"v1\""));
+        servidor.enqueue(conEtag("\"v2\""));
+        int fallos = CacheRespuestas.getFallos(), reutilizadas = CacheRespuestas.getReutilizadas();
+
+        List<Camara> primera = api.camaras().execute().body();
+        List<Camara> segunda = api.camaras().execute().body();
+
+        assertNotSame(primera, segunda);
+        assertEquals(fallos + 2, CacheRespuestas.getFallos());
+        assertEquals(reutilizadas, CacheRespuestas.getReutilizadas());
+    }
+
+    @Test
+    public void sinEtagNiLastModifiedNoSeReutilizaNada() throws Exception {
+        servidor.enqueue(new MockResponse().setBody(CAMARAS).setHeader("Content-Type", "application/json"));
+        servidor.enqueue(new MockResponse().setBody(CAMARAS).setHeader("Content-Type", "application/json"));
+        int reutilizadas = CacheRespuestas.getReutilizadas();
+
+        assertNotSame(api.camaras().execute().body(), api.camaras().execute().body());
+        assertEquals(reutilizadas, CacheRespuestas.getReutilizadas());
+    }
+
+    @Test
+    public void olvidarConvertidosObligaAConvertirDeNuevo() throws Exception {
+        servidor.enqueue(conEtag("\"v1\""));
+        servidor.enqueue(new MockResponse().setResponseCode(304).setHeader("ETag", "\"v1\""));
+
+        List<Camara> primera = api.camaras().execute().body();
+        CacheRespuestas.olvidarConvertidos(); // Como al cerrar sesión
+        List<Camara> segunda = api.camaras().execute().body();
+
+        assertNotSame(primera, segunda);
+        assertEquals(primera.get(0).getId(), segunda.get(0).getId());
+    }
+}
@@ -0,0 +1,191 @@
+package com.infocam.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.infocam.model.Camara;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import retrofit2.Call;
+import retrofit2.Callback;
+import retrofit2.Response;
+import retrofit2.Retrofit;
+import retrofit2.converter.gson.GsonConverterFactory;
+import retrofit2.http.GET;
+
+/* Lanza la misma petición desde varios hilos a la vez contra un MockWebServer que no contesta hasta que todos se han apuntado, y
+ * comprueba que al servidor solo llega una y que la respuesta (o el error) se reparte a todos. */
+public class PeticionesCompartidasTest {
+    private static final int HILOS = 8;
+    private static final String CAMARAS = "[{\"id\":1,\"nombre\":\"M-30\",\"latitud\":40.4,\"longitud\":-3.7}]";
+
+    interface Api {
+        @GET("camaras")
+        Call<List<Camara>> camaras();
+    }
+
+    private MockWebServer servidor;
+    private Api api;
+    private final PeticionesCompartidas compartidas = new PeticionesCompartidas();
+    private volatile CountDownLatch puedeContestar = new CountDownLatch(0);
+    private volatile int codigo = 200;
+
+    @Before
+    public void preparar() throws IOException {
+        servidor = new MockWebServer();
+        servidor.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest peticion) throws InterruptedException {
+                puedeContestar.await(5, TimeUnit.SECONDS);
+                return codigo == 200 ? new MockResponse().setBody(CAMARAS) : new MockResponse().setResponseCode(codigo);
+            }
+        });
+        servidor.start();
+        api = new Retrofit.Builder()
+                .baseUrl(servidor.url("/api/"))
+                .addConverterFactory(GsonConverterFactory.create(AdaptadoresJson.obtenerGson()))
+                .build()
+                .create(Api.class);
+    }
+
+    @After
+    public void terminar() throws IOException {
+        servidor.shutdown();
+    }
+
+    // Igual que hace InfocamServiceClient: traduce la respuesta de Retrofit al ApiCallback que reparte.
+    private void pedirCamaras(String clave, ApiCallback<List<Camara>> callback) {
+        compartidas.ejecutar(clave, callback, repartidor -> api.camaras().enqueue(new Callback<List<Camara>>() {
+            @Override
+            public void onResponse(Call<List<Camara>> call, Response<List<Camara>> response) {
+                if (response.isSuccessful() && response.body() != null)
+                    repartidor.onSuccess(response.body());
+                else
+                    repartidor.onError("Error " + response.code());
+            }
+
+            @Override
+            public void onFailure(Call<List<Camara>> call, Throwable t) {
+                repartidor.onError(t.getMessage());
+            }
+        }));
+    }
+
+    // Recoge lo que recibe cada callback.
+    private static class Recogida implements ApiCallback<List<Camara>> {
+        final ConcurrentLinkedQueue<Object> recibido = new ConcurrentLinkedQueue<>();
+        final CountDownLatch pendientes;
+
+        Recogida(int esperados) {
+            pendientes = new CountDownLatch(esperados);
+        }
+
+        @Override
+        public void onSuccess(List<Camara> result) {
+            recibido.add(result);
+            pendientes.countDown();
+        }
+
+        @Override
+        public void onError(String error) {
+            recibido.add(error);
+            pendientes.countDown();
+        }
+
+        void esperar() throws InterruptedException {
+            assertTrue("no han llegado todas las respuestas", pendientes.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    // Todos los hilos piden a la vez y el servidor no contesta hasta que todos han vuelto de ejecutar().
+    private Recogida pedirDesdeVariosHilos(String clave) throws InterruptedException {
+        puedeContestar = new CountDownLatch(1);
+        Recogida recogida = new Recogida(HILOS);
+        CountDownLatch salida = new CountDownLatch(1), apuntados = new CountDownLatch(HILOS);
+        for (int h = 0; h < HILOS; h++) {
+            new Thread(() -> {
+                try {
+                    salida.await();
+                    pedirCamaras(clave, recogida);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                apuntados.countDown();
+            }).start();
+        }
+        salida.countDown();
+        assertTrue(apuntados.await(5, TimeUnit.SECONDS));
+        puedeContestar.countDown();
+        recogida.esperar();
+        return recogida;
+    }
+
+    @Test
+    public void variasPeticionesIgualesVanAlServidorUnaSolaVez() throws Exception {
+        Recogida recogida = pedirDesdeVariosHilos("camaras|token");
+
+        assertEquals(1, servidor.getRequestCount());
+        assertEquals(HILOS, recogida.recibido.size());
+        Object primera = recogida.recibido.peek();
+        assertTrue(primera instanceof List);
+        for (Object r : recogida.recibido)
+            assertSame(primera, r); // Todos reciben el mismo objeto
+    }
+
+    @Test
+    public void elErrorTambienSeReparteATodos() throws Exception {
+        codigo = 500;
+        Recogida recogida = pedirDesdeVariosHilos("camaras|token");
+
+        assertEquals(1, servidor.getRequestCount());
+        assertEquals(HILOS, recogida.recibido.size());
+        for (Object r : recogida.recibido)
+            assertEquals("Error 500", r);
+    }
+
+    @Test
+    public void alTerminarLaClaveQuedaLibre() throws Exception {
+        pedirDesdeVariosHilos("camaras|token");
+        Recogida otraVez = new Recogida(1);
+        pedirCamaras("camaras|token", otraVez);
+        otraVez.esperar();
+        assertEquals(2, servidor.getRequestCount());
+
+        // Y también después de un error
+        codigo = 500;
+        Recogida conError = new Recogida(1);
+        pedirCamaras("camaras|token", conError);
+        conError.esperar();
+        codigo = 200;
+        Recogida despuesDelError = new Recogida(1);
+        pedirCamaras("camaras|token", despuesDelError);
+        despuesDelError.esperar();
+        assertEquals(4, servidor.getRequestCount());
+        assertTrue(despuesDelError.recibido.peek() instanceof List);
+    }
+
+    @Test
+    public void clavesDistintasNoSeJuntan() throws Exception {
+        puedeContestar = new CountDownLatch(1);
+        Recogida recogida = new Recogida(2);
+        pedirCamaras("camaras|token1", recogida);
+        pedirCamaras("camaras|token2", recogida);
+        puedeContestar.countDown();
+        recogida.esperar();
+        assertEquals(2, servidor.getRequestCount());
+    }
+}
@@ -0,0 +1,127 @@
+package com.infocam.network;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.infocam.model.Incidencia;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TimeZone;
+
+/* Las fechas sin zona horaria se leen en la del dispositivo: la fijamos a Madrid para que el resultado no dependa de la máquina. */
+public class VigenciaIncidenciasTest {
+    // 2025-01-27 10:20:00 en Madrid (UTC+1 en invierno)
+    private static final long AHORA = 1737969600000L;
+
+    private TimeZone zonaOriginal;
+    private VigenciaIncidencias vigencia;
+
+    @Before
+    public void preparar() {
+        zonaOriginal = TimeZone.getDefault();
+        TimeZone.setDefault(TimeZone.getTimeZone("Europe/Madrid"));
+        vigencia = new VigenciaIncidencias(); // Los formatos toman la zona al crearse
+    }
+
+    @After
+    public void restaurar() {
+        TimeZone.setDefault(zonaOriginal);
+    }
+
+    private static Incidencia incidencia(int id, String inicio, String fin) {
+        Incidencia i = new Incidencia(1, "Incidencia " + id, "Obras", "Obras", inicio, fin, 40.4, -3.7, null);
+        i.setId(id);
+        return i;
+    }
+
+    private List<Incidencia> activas(Incidencia... incidencias) {
+        return vigencia.activasEn(AHORA, Collections.singletonList(Arrays.asList(incidencias)));
+    }
+
+    @Test
+    public void todosLosFormatosSeLeenIgual() {
+        String[][] antesYDespues = {
+                { "2025-01-27T10:17:00+01:00", "2025-01-27T10:28:00+01:00" },
+                { "2025-01-27T09:17:00Z", "2025-01-27T09:28:00Z" },
+                { "2025-01-27T10:17:00.000+01:00", "2025-01-27T10:28:00.500+01:00" },
+                { "2025-01-27T09:17:00.123Z", "2025-01-27T09:28:00.999Z" },
+                { "2025-01-27T10:17:00.123", "2025-01-27T10:28:00.000" },
+                { "2025-01-27T10:17:00", "2025-01-27T10:28:00" },
+                { "2025-01-27T10:17", "2025-01-27T10:28" },
+                { "2025-01-27 10:17:00", "2025-01-27 10:28:00" },
+        };
+        for (String[] fechas : antesYDespues) {
+            assertEquals(fechas[0], 1, activas(incidencia(1, fechas[0], fechas[1])).size());
+            // Si no hubiera entendido las fechas, la conservaría: comprobamos también que la descarta cuando ya ha terminado
+            assertEquals(fechas[0], 0, activas(incidencia(1, fechas[0].replace("10:17", "08:17").replace("09:17", "07:17"),
+                    fechas[1].replace("10:28", "08:28").replace("09:28", "07:28"))).size());
+        }
+    }
+
+    @Test
+    public void laZonaHorariaCuenta() {
+        // A las 10:20 de Madrid, en UTC son las 09:20: una que empieza a las 10:17 UTC aún no ha empezado
+        assertEquals(0, activas(incidencia(1, "2025-01-27T10:17:00Z", null)).size());
+        assertEquals(1, activas(incidencia(1, "2025-01-27T10:17:00+01:00", null)).size());
+    }
+
+    @Test
+    public void filtraPorInicioYFin() {
+        List<Incidencia> resultado = activas(
+                incidencia(1, "2025-01-27T10:21:00+01:00", null),                          // Aún no ha empezado
+                incidencia(2, "2025-01-27T09:00:00+01:00", "2025-01-27T10:19:59+01:00"),   // Ya terminó
+                incidencia(3, "2025-01-27T10:20:00+01:00", "2025-01-27T10:20:00+01:00"),   // Los extremos cuentan
+                incidencia(4, "2025-01-20T00:00:00+01:00", null),                          // Sin fin: sigue abierta
+                incidencia(5, "2025-01-20T00:00:00+01:00", ""));
+        assertEquals(Arrays.asList(3, 4, 5), ids(resultado));
+    }
+
+    @Test
+    public void lasFechasQueNoSeEntiendenNoDescartanLaIncidencia() {
+        assertEquals(3, activas(incidencia(1, "ayer", "mañana"), incidencia(2, null, null),
+                incidencia(3, "27/01/2025 10:00", "2025-01-27T11:00:00+01:00")).size());
+        // Con milisegundos y texto detrás no encaja en ningún formato completo
+        assertEquals(1, activas(incidencia(1, "2025-01-27T10:00:00.000+01:00[Europe/Madrid]", null)).size());
+    }
+
+    @Test
+    public void juntaLasListasSinRepetir() {
+        Incidencia enAmbas = incidencia(1, "2025-01-27T10:00:00+01:00", null);
+        Incidencia soloEnLaSegunda = incidencia(2, "2025-01-27T10:17:00+01:00", "2025-01-27T10:28:00+01:00");
+        Incidencia oficial = new Incidencia(0, "Accidente", "Accidente", "Accidente", "2025-01-27T10:00:00+01:00", null,
+                43.2, -2.9, "GV-1");
+        Incidencia oficialOtraVez = new Incidencia(0, "Accidente", "Accidente", "Accidente", "2025-01-27T10:00:00+01:00",
+                null, 43.2, -2.9, "GV-1");
+
+        List<List<Incidencia>> listas = new ArrayList<>();
+        listas.add(Arrays.asList(enAmbas, oficial));
+        listas.add(Arrays.asList(incidencia(1, "2025-01-27T10:00:00+01:00", null), soloEnLaSegunda, oficialOtraVez));
+        List<Incidencia> resultado = vigencia.activasEn(AHORA, listas);
+
+        assertEquals(3, resultado.size());
+        assertEquals(Integer.valueOf(1), resultado.get(0).getId());
+        assertSame(oficialOtraVez, resultado.get(1)); // Se queda la última recibida
+        assertSame(soloEnLaSegunda, resultado.get(2));
+    }
+
+    @Test
+    public void listasVacias() {
+        assertTrue(vigencia.activasEn(AHORA, new ArrayList<>()).isEmpty());
+        assertTrue(vigencia.activasEn(AHORA, Collections.singletonList(Collections.emptyList())).isEmpty());
+    }
+
+    private static List<Integer> ids(List<Incidencia> incidencias) {
+        List<Integer> ids = new ArrayList<>();
+        for (Incidencia i : incidencias)
+            ids.add(i.getId());
+        return ids;
+    }
+}